@@ -76,7 +76,8 @@ public class SigningResultService {
 
         SignatureValidationContext ctx = signatureValidationContextBuilder.copy()
             .setDocumentName(signedDocumentFilename)
-            .setDocumentData(Base64.getDecoder().decode(document))
+            // Decode the document on the fly, while streaming it to the validation service
+            .setBase64DocumentData(document)
             .build();
         return signatureValidationService.validate(ctx);
     }
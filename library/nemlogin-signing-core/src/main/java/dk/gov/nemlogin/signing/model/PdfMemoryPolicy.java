@@ -0,0 +1,190 @@
+package dk.gov.nemlogin.signing.model;
+
+import dk.gov.nemlogin.signing.exceptions.TransformationException;
+import dk.gov.nemlogin.signing.service.TransformationContext;
+import dk.gov.nemlogin.signing.util.SigningUtils;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.Properties;
+
+import static dk.gov.nemlogin.signing.exceptions.ErrorCode.SDK007;
+
+/**
+ * Defines how PDF documents are buffered whilst being loaded, validated, transformed and signed.
+ * <p>
+ * The policy applies to all PDFBox documents of the pdf-validator, pdf-generator and PAdES modules:
+ * <ul>
+ *     <li>"main-memory": Buffer the PDF in main memory only. This is the default.</li>
+ *     <li>"mixed": Buffer up to "max-main-memory" bytes in main memory, and spill the rest to a temporary file.</li>
+ *     <li>"temp-file": Buffer the PDF in a temporary file only.</li>
+ * </ul>
+ * The policy may be defined per transformation, using the "nemlogin.signing.pdf-memory.mode",
+ * "nemlogin.signing.pdf-memory.max-main-memory" and "nemlogin.signing.pdf-memory.temp-dir" transformation
+ * properties. Otherwise, the default policy is used, which is defined by the same system properties, or
+ * by calling {@link #setDefault(PdfMemoryPolicy)}, e.g. from Spring configuration.
+ */
+public class PdfMemoryPolicy {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PdfMemoryPolicy.class);
+
+    public static final String KEY_PREFIX           = "nemlogin.signing.pdf-memory.";
+    public static final String KEY_MODE             = KEY_PREFIX + "mode";
+    public static final String KEY_MAX_MAIN_MEMORY  = KEY_PREFIX + "max-main-memory";
+    public static final String KEY_TEMP_DIR         = KEY_PREFIX + "temp-dir";
+
+    /** Default max number of bytes buffered in main memory in "mixed" mode **/
+    public static final long DEFAULT_MAX_MAIN_MEMORY = 16L * 1024 * 1024;
+
+    /** Buffer all PDFs in main memory **/
+    public static final PdfMemoryPolicy MAIN_MEMORY = new PdfMemoryPolicy(Mode.MAIN_MEMORY, -1, null);
+
+    private static volatile PdfMemoryPolicy defaultPolicy = fromSystemProperties();
+
+    /** The supported buffering modes **/
+    public enum Mode {
+        MAIN_MEMORY,
+        MIXED,
+        TEMP_FILE
+    }
+
+    private final Mode mode;
+    private final long maxMainMemoryBytes;
+    private final String tempDir;
+
+
+    /**
+     * Constructor
+     * @param mode the buffering mode
+     * @param maxMainMemoryBytes the max number of bytes buffered in main memory in "mixed" mode
+     * @param tempDir the directory of the temporary files. If null, the default temporary directory is used
+     */
+    public PdfMemoryPolicy(Mode mode, long maxMainMemoryBytes, String tempDir) {
+        this.mode = mode;
+        this.maxMainMemoryBytes = maxMainMemoryBytes;
+        this.tempDir = tempDir;
+    }
+
+
+    /**
+     * Returns the default policy, used when not overridden by the transformation properties
+     * @return the default policy
+     */
+    public static PdfMemoryPolicy getDefault() {
+        return defaultPolicy;
+    }
+
+
+    /**
+     * Sets the default policy, used when not overridden by the transformation properties
+     * @param policy the default policy
+     */
+    public static void setDefault(PdfMemoryPolicy policy) {
+        defaultPolicy = policy == null ? MAIN_MEMORY : policy;
+    }
+
+
+    /**
+     * Returns the policy defined by the transformation properties, or the default policy if not defined
+     * @param ctx the {@link TransformationContext}
+     * @return the policy to use for the transformation
+     * @throws TransformationException if the transformation properties define an invalid policy
+     */
+    public static PdfMemoryPolicy of(TransformationContext ctx) throws TransformationException {
+        var policy = getDefault();
+        if (ctx == null) {
+            return policy;
+        }
+        try {
+            return fromProperties(ctx.getTransformationProperties(), policy);
+        } catch (IllegalArgumentException e) {
+            throw new TransformationException(SDK007, ctx, "Invalid PDF memory policy: " + e.getMessage(), e);
+        }
+    }
+
+
+    /**
+     * Returns the policy defined by the system properties, or {@link #MAIN_MEMORY} if undefined or invalid.
+     * An invalid policy is logged rather than thrown, since this defines the initial default policy.
+     * @return the policy defined by the system properties
+     */
+    private static PdfMemoryPolicy fromSystemProperties() {
+        try {
+            return fromProperties(System.getProperties(), MAIN_MEMORY);
+        } catch (IllegalArgumentException e) {
+            LOG.error("Invalid \"{}\" system properties. Using the \"main-memory\" policy: {}", KEY_PREFIX, e.getMessage());
+            return MAIN_MEMORY;
+        }
+    }
+
+
+    /**
+     * Returns the policy defined by the given properties. Undefined properties are taken from the default policy
+     * @param properties the properties
+     * @param defaultPolicy the default policy
+     * @return the policy defined by the given properties
+     */
+    public static PdfMemoryPolicy fromProperties(Properties properties, PdfMemoryPolicy defaultPolicy) {
+        if (properties == null ||
+            (properties.getProperty(KEY_MODE) == null &&
+            properties.getProperty(KEY_MAX_MAIN_MEMORY) == null &&
+            properties.getProperty(KEY_TEMP_DIR) == null)) {
+            return defaultPolicy;
+        }
+        var mode = properties.getProperty(KEY_MODE);
+        var maxMainMemory = properties.getProperty(KEY_MAX_MAIN_MEMORY);
+        return new PdfMemoryPolicy(
+            SigningUtils.isEmpty(mode)
+                ? defaultPolicy.getMode()
+                : Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT).replace('-', '_')),
+            SigningUtils.isEmpty(maxMainMemory)
+                ? defaultPolicy.getMaxMainMemoryBytes()
+                : Long.parseLong(maxMainMemory.trim()),
+            properties.getProperty(KEY_TEMP_DIR, defaultPolicy.getTempDir()));
+    }
+
+
+    /**
+     * Returns the PDFBox {@link MemoryUsageSetting} corresponding to this policy.
+     * <p>
+     * NB: PDFBox is an optional dependency of the core module, so this is only available to the PDFBox modules.
+     * @return the corresponding PDFBox {@link MemoryUsageSetting}
+     */
+    public MemoryUsageSetting toMemoryUsageSetting() {
+        MemoryUsageSetting setting;
+        switch (mode) {
+            case MIXED:
+                setting = MemoryUsageSetting.setupMixed(getMaxMainMemoryBytes());
+                break;
+            case TEMP_FILE:
+                setting = MemoryUsageSetting.setupTempFileOnly();
+                break;
+            default:
+                return MemoryUsageSetting.setupMainMemoryOnly();
+        }
+        if (tempDir != null) {
+            setting.setTempDir(new File(tempDir));
+        }
+        return setting;
+    }
+
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Returns the max number of bytes buffered in main memory in "mixed" mode
+     * @return the max number of bytes buffered in main memory in "mixed" mode
+     */
+    public long getMaxMainMemoryBytes() {
+        return maxMainMemoryBytes > 0 ? maxMainMemoryBytes : DEFAULT_MAX_MAIN_MEMORY;
+    }
+
+    public String getTempDir() {
+        return tempDir;
+    }
+}
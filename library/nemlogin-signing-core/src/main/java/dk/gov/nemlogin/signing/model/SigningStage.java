@@ -0,0 +1,28 @@
+package dk.gov.nemlogin.signing.model;
+
+/**
+ * The steps of the signing pipeline, as reported to the {@code SigningMetrics} service
+ */
+public enum SigningStage {
+
+    /** Validation of the SD (Signer's Document) **/
+    VALIDATE,
+
+    /** Transformation of the SD to DTBS (Data-To-Be-Signed) **/
+    TRANSFORM,
+
+    /** Attaching source documents to the DTBS **/
+    ATTACH,
+
+    /** Pre-signing the DTBS **/
+    PRE_SIGN,
+
+    /** Computing the DTBS digest (SP flow only) **/
+    DTBS_DIGEST,
+
+    /** JWS-signing the signature parameters **/
+    SIGN,
+
+    /** The entire signing pipeline **/
+    PAYLOAD
+}
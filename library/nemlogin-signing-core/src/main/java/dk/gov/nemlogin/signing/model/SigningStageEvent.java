@@ -0,0 +1,112 @@
+package dk.gov.nemlogin.signing.model;
+
+import dk.gov.nemlogin.signing.exceptions.NemLogInException;
+
+/**
+ * Reports the timing, sizes and outcome of a single step of the signing pipeline
+ * to the {@code SigningMetrics} service.
+ * <p>
+ * Byte sizes are -1 if not applicable or unknown.
+ */
+@SuppressWarnings("unused")
+public class SigningStageEvent {
+
+    private final SigningStage stage;
+    private final ValidTransformation transformation;
+    private final FlowType flowType;
+    private final long durationNanos;
+    private final long inputBytes;
+    private final long outputBytes;
+    private final Throwable error;
+
+
+    /**
+     * Constructor
+     * @param stage the step of the signing pipeline
+     * @param transformation the transformation being performed
+     * @param flowType the flow type
+     * @param durationNanos the duration of the step in nanoseconds
+     * @param inputBytes the size of the input document of the step
+     * @param outputBytes the size of the output document of the step
+     * @param error the error, if the step failed, or null if it succeeded
+     */
+    public SigningStageEvent(
+        SigningStage stage,
+        ValidTransformation transformation,
+        FlowType flowType,
+        long durationNanos,
+        long inputBytes,
+        long outputBytes,
+        Throwable error) {
+        this.stage = stage;
+        this.transformation = transformation;
+        this.flowType = flowType;
+        this.durationNanos = durationNanos;
+        this.inputBytes = inputBytes;
+        this.outputBytes = outputBytes;
+        this.error = error;
+    }
+
+
+    public SigningStage getStage() {
+        return stage;
+    }
+
+    public ValidTransformation getTransformation() {
+        return transformation;
+    }
+
+    public FlowType getFlowType() {
+        return flowType;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public long getInputBytes() {
+        return inputBytes;
+    }
+
+    public long getOutputBytes() {
+        return outputBytes;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+
+    /**
+     * Returns the outcome of the step, i.e. "success", the error code for {@link NemLogInException} errors,
+     * or the simple class name of other errors
+     * @return the outcome of the step
+     */
+    public String getOutcome() {
+        if (error == null) {
+            return "success";
+        } else if (error instanceof NemLogInException && ((NemLogInException) error).getErrorCode() != null) {
+            return ((NemLogInException) error).getErrorCode().name();
+        }
+        return error.getClass().getSimpleName();
+    }
+
+
+    /** {@inheritDoc} **/
+    @Override
+    public String toString() {
+        return "SigningStageEvent{" +
+            "stage=" + stage +
+            ", transformation=" + transformation +
+            ", flowType=" + flowType +
+            ", durationNanos=" + durationNanos +
+            ", inputBytes=" + inputBytes +
+            ", outputBytes=" + outputBytes +
+            ", outcome=" + getOutcome() +
+            '}';
+    }
+}
@@ -0,0 +1,329 @@
+package dk.gov.nemlogin.signing.service;
+
+import dk.gov.nemlogin.signing.dto.SigningPayloadDTO;
+import dk.gov.nemlogin.signing.exceptions.ErrorCode;
+import dk.gov.nemlogin.signing.exceptions.NemLogInException;
+import dk.gov.nemlogin.signing.exceptions.ValidationException;
+import dk.gov.nemlogin.signing.model.SignersDocument.XmlSignersDocument;
+import dk.gov.nemlogin.signing.model.SigningPayload;
+import dk.gov.nemlogin.signing.model.SigningStage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous variant of the {@link SigningPayloadService}.
+ * <p>
+ * The steps of the signing pipeline are run on two dedicated, bounded executors, rather than on the caller thread:
+ * <ul>
+ *     <li>An I/O executor, which loads the SD (Signer's Document) and XSLT data.</li>
+ *     <li>A CPU executor, which validates, transforms, attaches, pre-signs and JWS-signs.</li>
+ * </ul>
+ * If an executor queue is full, the returned future fails with a {@link RejectedExecutionException}.
+ * <p>
+ * Each request has a deadline. If the deadline is exceeded, the returned future fails with a
+ * {@link java.util.concurrent.TimeoutException}. If the returned future is cancelled or times out, the remaining
+ * steps are skipped. Note that a step which is already running is not interrupted.
+ * <p>
+ * Instances should be created once using the {@link #builder()}, and closed when no longer used.
+ */
+public class AsyncSigningPayloadService implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncSigningPayloadService.class);
+
+    /** The steps run on the CPU executor prior to signing the signature parameters **/
+    private static final List<SigningStage> PRE_SIGNING_STAGES = List.of(
+        SigningStage.VALIDATE,
+        SigningStage.TRANSFORM,
+        SigningStage.ATTACH,
+        SigningStage.PRE_SIGN,
+        SigningStage.DTBS_DIGEST);
+
+    private final SigningPayloadService signingPayloadService;
+    private final ThreadPoolExecutor cpuExecutor;
+    private final ThreadPoolExecutor ioExecutor;
+    private final Duration defaultTimeout;
+
+
+    /** Constructor **/
+    private AsyncSigningPayloadService(Builder builder) {
+        this.signingPayloadService = builder.signingPayloadService;
+        this.cpuExecutor = newExecutor("nemlogin-signing-cpu-", builder.cpuThreads, builder.queueCapacity);
+        this.ioExecutor = newExecutor("nemlogin-signing-io-", builder.ioThreads, builder.queueCapacity);
+        this.defaultTimeout = builder.defaultTimeout;
+    }
+
+
+    /**
+     * Returns a new {@link Builder} for {@link AsyncSigningPayloadService} instances
+     * @return a new {@link Builder}
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+
+    /**
+     * Asynchronously performs the full instantiation of a {@link SigningPayload} based on the {@code ctx},
+     * using the default timeout.
+     *
+     * @param ctx the {@link TransformationContext} from which to instantiate the {@link SigningPayload}
+     * @return a future for the instantiated {@link SigningPayload}
+     * @see SigningPayloadService#produceSigningPayload(TransformationContext)
+     */
+    public CompletableFuture<SigningPayload> produceSigningPayload(TransformationContext ctx) {
+        return produceSigningPayload(ctx, defaultTimeout);
+    }
+
+
+    /**
+     * Asynchronously performs the full instantiation of a {@link SigningPayload} based on the {@code ctx}.
+     * <p>
+     * The returned future fails with the {@link NemLogInException} thrown by a failing step, with a
+     * {@link java.util.concurrent.TimeoutException} if the {@code timeout} is exceeded, or with a
+     * {@link RejectedExecutionException} if the service is overloaded.
+     *
+     * @param ctx the {@link TransformationContext} from which to instantiate the {@link SigningPayload}
+     * @param timeout the deadline of the request, measured from now
+     * @return a future for the instantiated {@link SigningPayload}
+     * @see SigningPayloadService#produceSigningPayload(TransformationContext)
+     */
+    public CompletableFuture<SigningPayload> produceSigningPayload(TransformationContext ctx, Duration timeout) {
+        var result = new CompletableFuture<SigningPayload>();
+        if (ctx == null) {
+            result.completeExceptionally(new ValidationException(ErrorCode.SDK010, null, "Transformation context is null"));
+            return result;
+        }
+
+        SigningMetrics metrics;
+        try {
+            metrics = ServiceLoaderFactory.getSigningMetrics();
+        } catch (NemLogInException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        var job = new Job(ctx, metrics, result);
+        try {
+            var future = CompletableFuture.runAsync(job::loadDocuments, ioExecutor);
+            for (var stage : PRE_SIGNING_STAGES) {
+                future = future.thenRunAsync(() -> job.runStage(stage), cpuExecutor);
+            }
+            future.thenApplyAsync(v -> job.sign(), cpuExecutor)
+                .whenComplete(job::complete);
+        } catch (RejectedExecutionException e) {
+            job.complete(null, e);
+        }
+
+        return result.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+
+    /**
+     * Variant of {@link #produceSigningPayload(TransformationContext)} that wraps the resulting
+     * signing payload as {@link SigningPayloadDTO}.
+     *
+     * @param ctx the {@link TransformationContext} from which to instantiate the {@link SigningPayloadDTO}
+     * @return a future for the instantiated {@link SigningPayloadDTO}
+     */
+    public CompletableFuture<SigningPayloadDTO> produceSigningPayloadDTO(TransformationContext ctx) {
+        return produceSigningPayloadDTO(ctx, defaultTimeout);
+    }
+
+
+    /**
+     * Variant of {@link #produceSigningPayload(TransformationContext, Duration)} that wraps the resulting
+     * signing payload as {@link SigningPayloadDTO}.
+     *
+     * @param ctx the {@link TransformationContext} from which to instantiate the {@link SigningPayloadDTO}
+     * @param timeout the deadline of the request, measured from now
+     * @return a future for the instantiated {@link SigningPayloadDTO}
+     */
+    public CompletableFuture<SigningPayloadDTO> produceSigningPayloadDTO(TransformationContext ctx, Duration timeout) {
+        var signingPayload = produceSigningPayload(ctx, timeout);
+        var result = signingPayload.thenApply(SigningPayloadDTO::new);
+        // Propagate cancellation of the returned future to the pipeline
+        result.whenComplete((dto, error) -> {
+            if (result.isCancelled()) {
+                signingPayload.cancel(false);
+            }
+        });
+        return result;
+    }
+
+
+    /** Shuts down the executors. Pending requests are completed **/
+    @Override
+    public void close() {
+        cpuExecutor.shutdown();
+        ioExecutor.shutdown();
+    }
+
+
+    /** Creates a new bounded executor with daemon threads **/
+    private static ThreadPoolExecutor newExecutor(String namePrefix, int threads, int queueCapacity) {
+        var threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = r -> {
+            var thread = new Thread(r, namePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        var executor = new ThreadPoolExecutor(
+            threads,
+            threads,
+            60L,
+            TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            threadFactory,
+            new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+
+    /**
+     * The state of a single asynchronous request
+     */
+    private class Job {
+
+        private final TransformationContext ctx;
+        private final SigningMetrics metrics;
+        private final CompletableFuture<SigningPayload> result;
+        private final long t0 = System.currentTimeMillis();
+        private final long nanos0 = System.nanoTime();
+        private long sdBytes = -1L;
+
+        /** Constructor **/
+        Job(TransformationContext ctx, SigningMetrics metrics, CompletableFuture<SigningPayload> result) {
+            this.ctx = ctx;
+            this.metrics = metrics;
+            this.result = result;
+        }
+
+        /** Loads the SD and XSLT data **/
+        void loadDocuments() {
+            checkActive();
+            try {
+                sdBytes = ctx.getSignersDocument().getData().length;
+                if (ctx.getSignersDocument() instanceof XmlSignersDocument) {
+                    ((XmlSignersDocument) ctx.getSignersDocument()).getXsltData();
+                }
+            } catch (NemLogInException e) {
+                throw new CompletionException(e);
+            }
+        }
+
+        /** Runs the given step of the pipeline **/
+        void runStage(SigningStage stage) {
+            checkActive();
+            try {
+                signingPayloadService.runStage(metrics, ctx, stage);
+            } catch (NemLogInException e) {
+                throw new CompletionException(e);
+            }
+        }
+
+        /** Validates and signs the signature parameters, and returns the signing payload **/
+        SigningPayload sign() {
+            checkActive();
+            try {
+                var signedSignatureParameters = signingPayloadService.signSignatureParameters(metrics, ctx);
+                return new SigningPayload(signedSignatureParameters, ctx.getDataToBeSigned());
+            } catch (NemLogInException e) {
+                throw new CompletionException(e);
+            }
+        }
+
+        /** Completes the request, once all steps have completed or one has failed **/
+        void complete(SigningPayload signingPayload, Throwable error) {
+            var cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            signingPayloadService.completePipeline(metrics, ctx, nanos0, sdBytes, cause);
+            if (cause == null) {
+                LOG.info("Produced signed payload asynchronously in {} ms", System.currentTimeMillis() - t0);
+                result.complete(signingPayload);
+            } else {
+                LOG.debug("Failed producing signed payload asynchronously in {} ms", System.currentTimeMillis() - t0, cause);
+                result.completeExceptionally(cause);
+            }
+        }
+
+        /** Aborts the remaining steps if the request has been cancelled or has timed out **/
+        private void checkActive() {
+            if (result.isDone()) {
+                throw new CancellationException("Signing payload request cancelled or timed out");
+            }
+        }
+    }
+
+
+    /**
+     * Builder for {@link AsyncSigningPayloadService} instances
+     */
+    public static class Builder {
+
+        private SigningPayloadService signingPayloadService = new SigningPayloadService();
+        private int cpuThreads = Runtime.getRuntime().availableProcessors();
+        private int ioThreads = 4;
+        private int queueCapacity = 1000;
+        private Duration defaultTimeout = Duration.ofSeconds(60);
+
+        /** Constructor **/
+        private Builder() {
+        }
+
+        /** Sets the {@link SigningPayloadService} used for running the pipeline steps **/
+        public Builder setSigningPayloadService(SigningPayloadService signingPayloadService) {
+            this.signingPayloadService = Objects.requireNonNull(signingPayloadService);
+            return this;
+        }
+
+        /** Sets the number of threads used for CPU-bound steps. Defaults to the number of available processors **/
+        public Builder setCpuThreads(int cpuThreads) {
+            this.cpuThreads = cpuThreads;
+            return this;
+        }
+
+        /** Sets the number of threads used for loading documents. Defaults to 4 **/
+        public Builder setIoThreads(int ioThreads) {
+            this.ioThreads = ioThreads;
+            return this;
+        }
+
+        /** Sets the max number of queued steps per executor. Defaults to 1000 **/
+        public Builder setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /** Sets the default deadline of requests. Defaults to 60 seconds **/
+        public Builder setDefaultTimeout(Duration defaultTimeout) {
+            this.defaultTimeout = Objects.requireNonNull(defaultTimeout);
+            return this;
+        }
+
+        /**
+         * Builds a new {@link AsyncSigningPayloadService}
+         * @return a new {@link AsyncSigningPayloadService}
+         */
+        public AsyncSigningPayloadService build() {
+            if (cpuThreads < 1 || ioThreads < 1 || queueCapacity < 1) {
+                throw new IllegalArgumentException(String.format(
+                    "Invalid executor configuration: cpuThreads=%d, ioThreads=%d, queueCapacity=%d",
+                    cpuThreads, ioThreads, queueCapacity));
+            }
+            return new AsyncSigningPayloadService(this);
+        }
+    }
+}
@@ -4,8 +4,18 @@ import dk.gov.nemlogin.signing.exceptions.ServiceUnavailableException;
 import dk.gov.nemlogin.signing.format.SignatureFormat;
 import dk.gov.nemlogin.signing.format.DocumentFormat;
 import dk.gov.nemlogin.signing.model.ValidTransformation;
+import dk.gov.nemlogin.signing.service.impl.CachingSignersDocumentValidationService;
+import dk.gov.nemlogin.signing.util.ValidationVerdictCache;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import static java.util.Comparator.comparingInt;
@@ -17,29 +27,51 @@ import static java.util.Comparator.comparingInt;
  * If, for instance, the service provider supports PDF SD or DTBS documents, they must either add
  * "nemlogin-signing-pades" as a dependency (including transitive dependencies) or provide their own implementation.
  * Otherwise, they can omit the "nemlogin-signing-pades" dependency.
+ * <p>
+ * The classpath is only scanned once per service class, and the matching service is only resolved once per
+ * service class and parameter, after which the same service instance is returned. Hence, services must be
+ * thread-safe. Use {@link #reload()} to re-scan the classpath, and {@link #register(NemLogInService)} to add
+ * services that are not loaded via the {@link ServiceLoader}, e.g. Spring beans.
+ * Registered services are retained across a {@link #reload()}, and must be removed using
+ * {@link #unregister(NemLogInService)} once they go out of use.
  */
 @SuppressWarnings("unused")
 public class ServiceLoaderFactory {
 
+    /** The current registry. Replaced as a whole upon {@link #reload()}, {@link #register(NemLogInService)} and {@link #unregister(NemLogInService)} **/
+    private static volatile Registry registry = new Registry(Collections.emptyList());
+
     private ServiceLoaderFactory() {
     }
 
     /**
-     * Returns a new {@link SignersDocumentValidationService} service that supports the validation of Signer's Documents.
+     * Returns the {@link SignersDocumentValidationService} service that supports the validation of Signer's Documents.
+     * Unless disabled, the service is decorated with the {@link ValidationVerdictCache}.
      *
      * @param sdFormat the {@link DocumentFormat}
-     * @return a new {@link SignersDocumentValidationService} service that supports validation of SD of the given {@code sdFormat}
+     * @return the {@link SignersDocumentValidationService} service that supports validation of SD of the given {@code sdFormat}
      * @throws ServiceUnavailableException if no implementation can be found
      */
     public static SignersDocumentValidationService getSignersDocumentValidationService(DocumentFormat sdFormat) throws ServiceUnavailableException {
-        return loadService(SignersDocumentValidationService.class, sdFormat);
+        var service = loadService(SignersDocumentValidationService.class, sdFormat);
+        if (!service.isCacheable() || !ValidationVerdictCache.isEnabled()) {
+            return service;
+        }
+        var decorators = registry.validationDecorators;
+        var decorator = decorators.get(service);
+        if (decorator == null) {
+            decorator = new CachingSignersDocumentValidationService(service, ValidationVerdictCache.getInstance());
+            var existing = decorators.putIfAbsent(service, decorator);
+            decorator = existing != null ? existing : decorator;
+        }
+        return decorator;
     }
 
 
     /**
-     * Returns a new {@link SignatureParameterSigningService} service.
+     * Returns the {@link SignatureParameterSigningService} service.
      *
-     * @return a new {@link SignatureParameterSigningService} service
+     * @return the {@link SignatureParameterSigningService} service
      * @throws ServiceUnavailableException if no implementation can be found
      */
     public static SignatureParameterSigningService getSignatureParameterSigningService() throws ServiceUnavailableException {
@@ -48,11 +80,11 @@ public class ServiceLoaderFactory {
 
 
     /**
-     * Returns a new {@link SourceAttachmentService} service that supports source file attachments for
+     * Returns the {@link SourceAttachmentService} service that supports source file attachments for
      * the transformation given by {@code ctx}.
      *
      * @param transformation the {@link ValidTransformation}
-     * @return a new {@link SourceAttachmentService} service that supports source file attachments for
+     * @return the {@link SourceAttachmentService} service that supports source file attachments for
      * the transformation given by {@code ctx}
      * @throws ServiceUnavailableException if no implementation can be found
      */
@@ -62,10 +94,10 @@ public class ServiceLoaderFactory {
 
 
     /**
-     * Returns a new {@link FormatTransformationService} service that supports the transformation given by {@code ctx}.
+     * Returns the {@link FormatTransformationService} service that supports the transformation given by {@code ctx}.
      *
      * @param transformation the {@link ValidTransformation}
-     * @return a new {@link FormatTransformationService} service that supports the transformation given by {@code ctx}
+     * @return the {@link FormatTransformationService} service that supports the transformation given by {@code ctx}
      * @throws ServiceUnavailableException if no implementation can be found
      */
     public static FormatTransformationService getFormatTransformationService(ValidTransformation transformation) throws ServiceUnavailableException {
@@ -74,10 +106,10 @@ public class ServiceLoaderFactory {
 
 
     /**
-     * Returns a new {@link SignatureStamperService} service that supports pre-signing a DTBS of the given {@code signatureFormat}
+     * Returns the {@link SignatureStamperService} service that supports pre-signing a DTBS of the given {@code signatureFormat}
      *
      * @param signatureFormat the {@link SignatureFormat}
-     * @return a new {@link SignatureStamperService} service that supports pre-signing a DTBS of the given {@code signatureFormat}
+     * @return the {@link SignatureStamperService} service that supports pre-signing a DTBS of the given {@code signatureFormat}
      * @throws ServiceUnavailableException if no implementation can be found
      */
     public static SignatureStamperService getSignatureStamperService(SignatureFormat signatureFormat) throws ServiceUnavailableException {
@@ -86,8 +118,22 @@ public class ServiceLoaderFactory {
 
 
     /**
-     * Loads a service that implements the give {@code serviceClass} and supports the given {@code params}.
+     * Returns the {@link SigningMetrics} service used for collecting metrics about the signing pipeline.
+     *
+     * @return the {@link SigningMetrics} service
+     * @throws ServiceUnavailableException if no implementation can be found
+     */
+    public static SigningMetrics getSigningMetrics() throws ServiceUnavailableException {
+        return loadService(SigningMetrics.class, null);
+    }
+
+
+    /**
+     * Returns the service that implements the give {@code serviceClass} and supports the given {@code params}.
      * If multiple matching services are found, the one with the highest priority is returned.
+     * <p>
+     * The result is cached, so subsequent look-ups with the same {@code serviceClass} and {@code params}
+     * do not scan the classpath.
      *
      * @param serviceClass the class of the service to load
      * @param params the parameters that the service must support
@@ -95,13 +141,136 @@ public class ServiceLoaderFactory {
      * @throws ServiceUnavailableException if no match is found.
      */
     static <P, T extends NemLogInService<P>> T loadService(Class<T> serviceClass, P params) throws  ServiceUnavailableException {
-        return StreamSupport.stream(ServiceLoader.load(serviceClass).spliterator(), false)
-            .filter(service -> service.supports(params))
-            .max(comparingInt(NemLogInService::getPriority))
-            .orElseThrow(() -> new ServiceUnavailableException(
-                serviceClass,
-                String.format("No matching %s service found in classpath."+
-                    " Add the proper dependency or implement your own.", serviceClass.getSimpleName())));
+        var current = registry;
+        var key = new ServiceKey(serviceClass, params);
+        var service = current.resolved.get(key);
+        if (service == null) {
+            service = current.providers(serviceClass).stream()
+                .map(serviceClass::cast)
+                .filter(s -> s.supports(params))
+                .findFirst()
+                .orElseThrow(() -> new ServiceUnavailableException(
+                    serviceClass,
+                    String.format("No matching %s service found in classpath."+
+                        " Add the proper dependency or implement your own.", serviceClass.getSimpleName())));
+            current.resolved.putIfAbsent(key, service);
+        }
+        return serviceClass.cast(service);
+    }
+
+
+    /**
+     * Discards all cached services and re-scans the classpath upon the next look-up.
+     * Services added via {@link #register(NemLogInService)} are retained, until removed via {@link #unregister(NemLogInService)}.
+     */
+    public static synchronized void reload() {
+        registry = new Registry(registry.registered);
+    }
+
+
+    /**
+     * Registers a service instance, which will be considered along with the services found in the classpath
+     * for all the {@link NemLogInService} sub-interfaces implemented by the service.
+     * <p>
+     * The service must be thread-safe, since the same instance is returned for all matching look-ups.
+     * Registering an already registered service has no effect.
+     *
+     * @param service the service to register
+     */
+    public static synchronized void register(NemLogInService<?> service) {
+        if (registry.registered.contains(service)) {
+            return;
+        }
+        var registered = new ArrayList<>(registry.registered);
+        registered.add(Objects.requireNonNull(service));
+        registry = new Registry(Collections.unmodifiableList(registered));
+    }
+
+
+    /**
+     * Unregisters a service instance previously added via {@link #register(NemLogInService)}.
+     * Subsequent look-ups are resolved anew, without the service.
+     * Unregistering a service that is not registered has no effect.
+     *
+     * @param service the service to unregister
+     */
+    public static synchronized void unregister(NemLogInService<?> service) {
+        if (!registry.registered.contains(service)) {
+            return;
+        }
+        var registered = new ArrayList<>(registry.registered);
+        registered.remove(service);
+        registry = new Registry(Collections.unmodifiableList(registered));
     }
 
+
+    /**
+     * Holds the services found in the classpath, along with the programmatically registered services,
+     * and the resolved service for each looked-up service class and parameter.
+     */
+    private static class Registry {
+
+        private final List<NemLogInService<?>> registered;
+        private final Map<Class<?>, List<NemLogInService<?>>> providers = new ConcurrentHashMap<>();
+        private final Map<ServiceKey, NemLogInService<?>> resolved = new ConcurrentHashMap<>();
+        private final Map<SignersDocumentValidationService, SignersDocumentValidationService> validationDecorators = new ConcurrentHashMap<>();
+
+        /** Constructor **/
+        Registry(List<NemLogInService<?>> registered) {
+            this.registered = registered;
+        }
+
+        /**
+         * Returns all services implementing the given service class, sorted by descending priority.
+         * NB: The classpath is scanned outside the map, since services may look up other services when instantiated.
+         */
+        List<NemLogInService<?>> providers(Class<? extends NemLogInService<?>> serviceClass) {
+            var result = providers.get(serviceClass);
+            if (result == null) {
+                result = Stream.concat(
+                        registered.stream().filter(serviceClass::isInstance),
+                        StreamSupport.stream(ServiceLoader.load(serviceClass).spliterator(), false))
+                    .sorted(comparingInt(NemLogInService<?>::getPriority).reversed())
+                    .collect(Collectors.toUnmodifiableList());
+                var existing = providers.putIfAbsent(serviceClass, result);
+                result = existing != null ? existing : result;
+            }
+            return result;
+        }
+    }
+
+
+    /**
+     * Cache key for resolved services
+     */
+    private static class ServiceKey {
+
+        private final Class<?> serviceClass;
+        private final Object params;
+
+        /** Constructor **/
+        ServiceKey(Class<?> serviceClass, Object params) {
+            this.serviceClass = serviceClass;
+            this.params = params;
+        }
+
+        /** {@inheritDoc} **/
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ServiceKey)) {
+                return false;
+            }
+            var that = (ServiceKey) o;
+            return serviceClass.equals(that.serviceClass) && Objects.equals(params, that.params);
+        }
+
+        /** {@inheritDoc} **/
+        @Override
+        public int hashCode() {
+            return Objects.hash(serviceClass, params);
+        }
+    }
 }
@@ -23,11 +23,37 @@ public interface SignersDocumentValidationService extends NemLogInService<Docume
     }
 
 
+    /**
+     * Returns the version of the validation rules applied by this service.
+     * Cached validation verdicts are only re-used for the same service class and version.
+     * Services whose verdicts depend on their configuration must include the configuration in the version.
+     *
+     * @return the version of the validation rules applied by this service
+     */
+    default String getVersion() {
+        var version = getClass().getPackage().getImplementationVersion();
+        return version != null ? version : "";
+    }
+
+
+    /**
+     * Flags if the validation verdicts of this service may be cached, i.e. if the verdict only depends on the
+     * SD and XSLT data. Services whose validation is cheaper than hashing the SD should return false.
+     *
+     * @return if the validation verdicts of this service may be cached
+     */
+    default boolean isCacheable() {
+        return true;
+    }
+
+
     /**
      * Validates the input document.
      *
      * @param ctx the {@link TransformationContext} containing the Signers document and other relevant transformation parameters
-     * @throws {@link ValidationException} if the validation of the input document fails
+     * @throws {@link ValidationException} if the validation of the input document fails. If the service is
+     *         cacheable, this is cached as the verdict of the SD, so errors not caused by the SD content, e.g. I/O
+     *         errors or invalid transformation properties, must be thrown as other {@link NemLogInException}s
      */
     void validate(TransformationContext ctx) throws NemLogInException;
 }
@@ -0,0 +1,23 @@
+package dk.gov.nemlogin.signing.service;
+
+import dk.gov.nemlogin.signing.model.SigningStageEvent;
+
+/**
+ * Defines the Service used for collecting metrics about the individual steps of the signing pipeline.
+ * <p>
+ * The {@link SigningPayloadService} reports a {@link SigningStageEvent} to the service for every step,
+ * including failed steps, along with an event for the entire pipeline.
+ * Implementations must be thread-safe and should return quickly, since they are called on the signing thread.
+ * <p>
+ * The actual implementation is loaded using the Java ServiceLoader via
+ * a call to {@link ServiceLoaderFactory}. The default implementation discards all events.
+ */
+public interface SigningMetrics extends NemLogInService<Void> {
+
+    /**
+     * Called when a step of the signing pipeline has completed, successfully or not
+     *
+     * @param event the {@link SigningStageEvent}
+     */
+    void stageCompleted(SigningStageEvent event);
+}
@@ -0,0 +1,70 @@
+package dk.gov.nemlogin.signing.service;
+
+import dk.gov.nemlogin.signing.dto.SigningPayloadDTO;
+import dk.gov.nemlogin.signing.model.SigningPayload;
+
+/**
+ * The result of producing a single {@link SigningPayload} as part of a batch.
+ * <p>
+ * Contains either the produced {@link SigningPayload} or the exception that caused the item to fail.
+ *
+ * @see SigningPayloadService#produceSigningPayloads(java.util.Collection, int, java.util.function.Consumer)
+ */
+@SuppressWarnings("unused")
+public class SigningPayloadResult {
+
+    private final int index;
+    private final TransformationContext ctx;
+    private final SigningPayload signingPayload;
+    private final Exception error;
+
+
+    /**
+     * Constructor
+     * @param index the position of the item in the batch
+     * @param ctx the {@link TransformationContext} of the item
+     * @param signingPayload the produced signing payload, or null if the item failed
+     * @param error the error, if the item failed, or null if it succeeded
+     */
+    public SigningPayloadResult(int index, TransformationContext ctx, SigningPayload signingPayload, Exception error) {
+        this.index = index;
+        this.ctx = ctx;
+        this.signingPayload = signingPayload;
+        this.error = error;
+    }
+
+
+    /**
+     * Returns if the signing payload was produced successfully
+     * @return if the signing payload was produced successfully
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+
+    /**
+     * Returns the produced signing payload wrapped as a {@link SigningPayloadDTO}, or null if the item failed
+     * @return the produced signing payload wrapped as a {@link SigningPayloadDTO}, or null
+     */
+    public SigningPayloadDTO getSigningPayloadDTO() {
+        return signingPayload != null ? new SigningPayloadDTO(signingPayload) : null;
+    }
+
+
+    public int getIndex() {
+        return index;
+    }
+
+    public TransformationContext getCtx() {
+        return ctx;
+    }
+
+    public SigningPayload getSigningPayload() {
+        return signingPayload;
+    }
+
+    public Exception getError() {
+        return error;
+    }
+}
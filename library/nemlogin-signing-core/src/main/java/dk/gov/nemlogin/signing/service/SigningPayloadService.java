@@ -5,16 +5,23 @@ import dk.gov.nemlogin.signing.exceptions.ErrorCode;
 import dk.gov.nemlogin.signing.exceptions.NemLogInException;
 import dk.gov.nemlogin.signing.exceptions.TransformationException;
 import dk.gov.nemlogin.signing.exceptions.ValidationException;
-import dk.gov.nemlogin.signing.model.FlowType;
 import dk.gov.nemlogin.signing.model.SigningPayload;
+import dk.gov.nemlogin.signing.model.SigningStage;
+import dk.gov.nemlogin.signing.model.SigningStageEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Base64;
-
-import static dk.gov.nemlogin.signing.exceptions.ErrorCode.SDK006;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
 
 /**
  * Performs a full instantiation of {@link SigningPayload}.
@@ -25,6 +32,9 @@ import static dk.gov.nemlogin.signing.exceptions.ErrorCode.SDK006;
  * Brokers should call the  {@link #produceSigningPayload(TransformationContext)} method
  * to produce a signing payload for further processing. The {@link SigningPayload#getSignatureParameters}
  * field is suitable for passing on to the {@code begin-sign-flow} Signing API endpoint.
+ * <p>
+ * Many signing payloads can be produced in parallel using the
+ * {@link #produceSigningPayloads(Collection, int, Consumer)} batch method.
  */
 public class SigningPayloadService {
 
@@ -52,36 +62,36 @@ public class SigningPayloadService {
         long t0 = System.currentTimeMillis();
         LOG.debug("Producing signed payload from context: {}", ctx);
 
-        // Step 1: Validate SD
-        ServiceLoaderFactory
-            .getSignersDocumentValidationService(ctx.getSignersDocument().getFormat())
-            .validate(ctx);
+        var metrics = ServiceLoaderFactory.getSigningMetrics();
+        long sdBytes = sdSize(ctx);
+        long nanos0 = System.nanoTime();
 
-        // Step 2: Transform SD to DTBS
-        ServiceLoaderFactory
-            .getFormatTransformationService(ctx.getTransformation())
-            .transform(ctx);
+        String signedSignatureParameters;
+        Throwable error = null;
+        try {
+            // Step 1: Validate SD
+            runStage(metrics, ctx, SigningStage.VALIDATE);
 
-        // Step 3: Attach source documents to DTBS (only applies to XML -> PAdES)
-        ServiceLoaderFactory
-            .getSourceAttachmentService(ctx.getTransformation())
-            .attachSourceFiles(ctx);
+            // Step 2: Transform SD to DTBS
+            runStage(metrics, ctx, SigningStage.TRANSFORM);
 
-        // Step 4: Pre-sign the DTBS
-        ServiceLoaderFactory
-            .getSignatureStamperService(ctx.getDataToBeSigned().getFormat())
-            .preSign(ctx);
+            // Step 3: Attach source documents to DTBS (only applies to XML -> PAdES)
+            runStage(metrics, ctx, SigningStage.ATTACH);
 
-        // Step 5: Compute Digest for DTBS - only used for SP flow
-        updateDtbsDigest(ctx);
+            // Step 4: Pre-sign the DTBS
+            runStage(metrics, ctx, SigningStage.PRE_SIGN);
 
-        // Step 6: Validate the signature parameters
-        ctx.getSignatureParameters().validate();
+            // Step 5: Compute Digest for DTBS - only used for SP flow
+            runStage(metrics, ctx, SigningStage.DTBS_DIGEST);
 
-        // Step 7: Sign the SignatureParameters
-        String signedSignatureParameters = ServiceLoaderFactory
-            .getSignatureParameterSigningService()
-            .jwsSign(ctx.getSignatureParameters(), ctx.getSignatureKeys());
+            // Step 6 + 7: Validate and sign the SignatureParameters
+            signedSignatureParameters = signSignatureParameters(metrics, ctx);
+        } catch (NemLogInException | RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            completePipeline(metrics, ctx, nanos0, sdBytes, error);
+        }
 
         // Finally, wrap as a singing payload
         var signingPayload = new SigningPayload(signedSignatureParameters, ctx.getDataToBeSigned());
@@ -114,22 +124,290 @@ public class SigningPayloadService {
     }
 
 
+    /**
+     * Produces a {@link SigningPayload} for each of the {@code contexts} in parallel, using at most
+     * {@code concurrency} threads. Process-wide resources, such as compiled XSLT stylesheets and service
+     * look-ups, are shared across the batch.
+     * <p>
+     * The results are passed on to the {@code consumer} on the calling thread, in the order they complete.
+     * A failing item does not affect the remaining items, but is reported as a {@link SigningPayloadResult}
+     * containing the error. If the {@code consumer} throws an exception, the remaining items are cancelled.
+     *
+     * @param contexts the {@link TransformationContext}s from which to instantiate the {@link SigningPayload}s
+     * @param concurrency the max number of signing payloads produced in parallel
+     * @param consumer the consumer of the results
+     */
+    public void produceSigningPayloads(
+        Collection<TransformationContext> contexts,
+        int concurrency,
+        Consumer<SigningPayloadResult> consumer) throws InterruptedException {
+
+        if (contexts.isEmpty()) {
+            return;
+        }
+
+        long t0 = System.currentTimeMillis();
+        int threads = Math.max(1, Math.min(concurrency, contexts.size()));
+        var threadCount = new AtomicInteger();
+        var executor = Executors.newFixedThreadPool(threads, r -> {
+            var thread = new Thread(r, "nemlogin-signing-batch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            var completionService = new ExecutorCompletionService<SigningPayloadResult>(executor);
+            var index = 0;
+            for (var ctx : contexts) {
+                final var i = index++;
+                completionService.submit(() -> produceSigningPayloadResult(i, ctx));
+            }
+            for (var n = 0; n < index; n++) {
+                consumer.accept(getResult(completionService.take()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        LOG.info("Produced {} signed payloads using {} threads in {} ms",
+            contexts.size(), threads, System.currentTimeMillis() - t0);
+    }
+
+
+    /**
+     * Variant of {@link #produceSigningPayloads(Collection, int, Consumer)} that returns the results
+     * in the order they completed.
+     *
+     * @param contexts the {@link TransformationContext}s from which to instantiate the {@link SigningPayload}s
+     * @param concurrency the max number of signing payloads produced in parallel
+     * @return the results, in the order they completed
+     */
+    public List<SigningPayloadResult> produceSigningPayloads(
+        Collection<TransformationContext> contexts,
+        int concurrency) throws InterruptedException {
+
+        List<SigningPayloadResult> results = new ArrayList<>(contexts.size());
+        produceSigningPayloads(contexts, concurrency, results::add);
+        return results;
+    }
+
+
+    /** Produces the signing payload of a single batch item, catching any error **/
+    private SigningPayloadResult produceSigningPayloadResult(int index, TransformationContext ctx) {
+        try {
+            return new SigningPayloadResult(index, ctx, produceSigningPayload(ctx), null);
+        } catch (NemLogInException | RuntimeException e) {
+            LOG.debug("Failed producing signed payload for batch item {}", index, e);
+            return new SigningPayloadResult(index, ctx, null, e);
+        }
+    }
+
+
+    /** Returns the result of a completed batch item **/
+    private static SigningPayloadResult getResult(Future<SigningPayloadResult> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            // Only errors escape produceSigningPayloadResult()
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+
     /**
      * For SP flow only.
      * Computes a digest for the entire DTBS document using the same algorithm as used for signing signature parameters
      * and updates the dtbsDigest field of the signature parameters.
+     * <p>
+     * Skipped if the digest has already been computed while the pre-signing step serialized the DTBS.
      *
      * @param ctx the {@link TransformationContext} to compute and update the DTBS digest for
      */
     void updateDtbsDigest(TransformationContext ctx) throws TransformationException {
-        if (ctx.getSignatureParameters().getFlowType() == FlowType.ServiceProvider) {
-            try {
-                var digester = MessageDigest.getInstance(ctx.getSignatureParameters().getDtbsDigestAlgorithm());
-                byte[] digest = digester.digest(ctx.getDataToBeSigned().getData());
-                ctx.updateDtbsDigest(Base64.getEncoder().encodeToString(digest));
-            } catch (NoSuchAlgorithmException e) {
-                throw new TransformationException(SDK006, ctx, "Error computing digest for DTBS", e);
-            }
+        if (ctx.isDtbsDigestUpToDate()) {
+            LOG.debug("DTBS digest computed during pre-signing");
+            return;
+        }
+        var digester = ctx.newDtbsDigester();
+        if (digester != null) {
+            byte[] digest = digester.digest(ctx.getDataToBeSigned().getData());
+            ctx.updateDtbsDigest(Base64.getEncoder().encodeToString(digest));
+        }
+    }
+
+
+    /**
+     * Runs the given step of the signing pipeline prior to signing the signature parameters,
+     * and reports it to the {@link SigningMetrics}
+     *
+     * @param metrics the {@link SigningMetrics} to report to
+     * @param ctx the {@link TransformationContext}
+     * @param stage the step of the signing pipeline. Must be one of VALIDATE, TRANSFORM, ATTACH, PRE_SIGN
+     *              or DTBS_DIGEST
+     */
+    void runStage(SigningMetrics metrics, TransformationContext ctx, SigningStage stage) throws NemLogInException {
+        switch (stage) {
+            case VALIDATE:
+                measureStage(metrics, ctx, stage, sdSize(ctx), () -> {
+                    ServiceLoaderFactory
+                        .getSignersDocumentValidationService(ctx.getSignersDocument().getFormat())
+                        .validate(ctx);
+                    return null;
+                }, r -> -1L);
+                break;
+            case TRANSFORM:
+                measureStage(metrics, ctx, stage, sdSize(ctx), () -> {
+                    ServiceLoaderFactory
+                        .getFormatTransformationService(ctx.getTransformation())
+                        .transform(ctx);
+                    return null;
+                }, r -> dtbsSize(ctx));
+                break;
+            case ATTACH:
+                measureStage(metrics, ctx, stage, dtbsSize(ctx), () -> {
+                    ServiceLoaderFactory
+                        .getSourceAttachmentService(ctx.getTransformation())
+                        .attachSourceFiles(ctx);
+                    return null;
+                }, r -> dtbsSize(ctx));
+                break;
+            case PRE_SIGN:
+                measureStage(metrics, ctx, stage, dtbsSize(ctx), () -> {
+                    ServiceLoaderFactory
+                        .getSignatureStamperService(ctx.getDataToBeSigned().getFormat())
+                        .preSign(ctx);
+                    return null;
+                }, r -> dtbsSize(ctx));
+                break;
+            case DTBS_DIGEST:
+                measureStage(metrics, ctx, stage, dtbsSize(ctx), () -> {
+                    updateDtbsDigest(ctx);
+                    return null;
+                }, r -> -1L);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported signing stage " + stage);
         }
     }
+
+
+    /**
+     * Validates the signature parameters and JWS-signs them, and reports it to the {@link SigningMetrics}
+     *
+     * @param metrics the {@link SigningMetrics} to report to
+     * @param ctx the {@link TransformationContext}
+     * @return the JWS-signed signature parameters
+     */
+    String signSignatureParameters(SigningMetrics metrics, TransformationContext ctx) throws NemLogInException {
+        ctx.getSignatureParameters().validate();
+
+        return measureStage(metrics, ctx, SigningStage.SIGN, -1L, () -> ServiceLoaderFactory
+                .getSignatureParameterSigningService()
+                .jwsSign(ctx.getSignatureParameters(), ctx.getSignatureKeys()),
+            String::length);
+    }
+
+
+    /**
+     * Releases the intermediate artifacts, such as open documents, passed between the steps,
+     * and reports the entire signing pipeline to the {@link SigningMetrics}
+     *
+     * @param metrics the {@link SigningMetrics} to report to
+     * @param ctx the {@link TransformationContext}
+     * @param nanos0 the {@link System#nanoTime()} when the pipeline was started
+     * @param sdBytes the size of the SD
+     * @param error the error, if the pipeline failed, or null if it succeeded
+     */
+    void completePipeline(SigningMetrics metrics, TransformationContext ctx, long nanos0, long sdBytes, Throwable error) {
+        ctx.clearAttributes();
+        reportStage(metrics, ctx, SigningStage.PAYLOAD, System.nanoTime() - nanos0,
+            sdBytes, error == null ? dtbsSize(ctx) : -1L, error);
+    }
+
+
+    /**
+     * Runs a step of the signing pipeline, and reports its timing, sizes and outcome to the {@link SigningMetrics}
+     *
+     * @param metrics the {@link SigningMetrics} to report to
+     * @param ctx the {@link TransformationContext}
+     * @param stage the step of the signing pipeline
+     * @param inputBytes the size of the input document of the step, or -1
+     * @param step the step to run
+     * @param outputBytes returns the size of the output document of the step, or -1
+     * @return the result of the step
+     */
+    private <T> T measureStage(
+        SigningMetrics metrics,
+        TransformationContext ctx,
+        SigningStage stage,
+        long inputBytes,
+        Step<T> step,
+        ToLongFunction<T> outputBytes) throws NemLogInException {
+
+        long t0 = System.nanoTime();
+        try {
+            T result = step.run();
+            reportStage(metrics, ctx, stage, System.nanoTime() - t0, inputBytes, outputBytes.applyAsLong(result), null);
+            return result;
+        } catch (NemLogInException | RuntimeException e) {
+            reportStage(metrics, ctx, stage, System.nanoTime() - t0, inputBytes, -1L, e);
+            throw e;
+        }
+    }
+
+
+    /**
+     * Reports a {@link SigningStageEvent} to the {@link SigningMetrics}.
+     * Errors thrown by the {@link SigningMetrics} are logged, but will not fail the signing pipeline.
+     */
+    private void reportStage(
+        SigningMetrics metrics,
+        TransformationContext ctx,
+        SigningStage stage,
+        long durationNanos,
+        long inputBytes,
+        long outputBytes,
+        Throwable error) {
+        try {
+            metrics.stageCompleted(new SigningStageEvent(
+                stage,
+                ctx.getTransformation(),
+                ctx.getSignatureParameters().getFlowType(),
+                durationNanos,
+                inputBytes,
+                outputBytes,
+                error));
+        } catch (RuntimeException e) {
+            LOG.warn("Error reporting signing metrics for stage {}", stage, e);
+        }
+    }
+
+
+    /** Returns the size of the SD, or -1 if it cannot be loaded **/
+    static long sdSize(TransformationContext ctx) {
+        try {
+            return ctx.getSignersDocument().getData().length;
+        } catch (NemLogInException e) {
+            return -1L;
+        }
+    }
+
+
+    /** Returns the size of the current DTBS, or -1 if not yet instantiated **/
+    private static long dtbsSize(TransformationContext ctx) {
+        return ctx.getDataToBeSigned() == null ? -1L : ctx.getDataToBeSigned().getData().length;
+    }
+
+
+    /**
+     * A step of the signing pipeline
+     * @param <T> the result of the step
+     */
+    @FunctionalInterface
+    private interface Step<T> {
+        T run() throws NemLogInException;
+    }
 }
@@ -1,14 +1,23 @@
 package dk.gov.nemlogin.signing.service;
 
 import dk.gov.nemlogin.signing.exceptions.ErrorCode;
+import dk.gov.nemlogin.signing.exceptions.TransformationException;
 import dk.gov.nemlogin.signing.exceptions.ValidationException;
 import dk.gov.nemlogin.signing.model.DataToBeSigned;
+import dk.gov.nemlogin.signing.model.FlowType;
 import dk.gov.nemlogin.signing.model.SignatureKeys;
 import dk.gov.nemlogin.signing.model.SignatureParameters;
 import dk.gov.nemlogin.signing.model.SignersDocument;
 import dk.gov.nemlogin.signing.model.ValidTransformation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 /**
@@ -20,6 +29,8 @@ public class TransformationContext implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    private static final Logger LOG = LoggerFactory.getLogger(TransformationContext.class);
+
     /** Signature keys used to JWS-sign the SigningPayload **/
     private final SignatureKeys signatureKeys;
 
@@ -35,6 +46,12 @@ public class TransformationContext implements Serializable {
     /** Transformation properties - may be used by customize behaviour of transformation services **/
     private final Properties transformationProperties = new Properties();
 
+    /** The DTBS that the dtbsDigest of the signature parameters was computed for, if computed while serializing it **/
+    private transient DataToBeSigned digestedDataToBeSigned;
+
+    /** Intermediate artifacts that transformation services may pass on to subsequent steps - not serialized **/
+    private transient Map<String, Object> attributes;
+
 
     /**
      * Designated Constructor
@@ -79,6 +96,52 @@ public class TransformationContext implements Serializable {
     }
 
 
+    /**
+     * For SP flow only, returns a new {@link MessageDigest} for computing the dtbsDigest while the DTBS is being
+     * serialized, using the same algorithm as used for signing signature parameters.
+     * Returns null if no dtbsDigest is needed, i.e. for the Broker flow.
+     *
+     * @return a new {@link MessageDigest} for computing the dtbsDigest, or null if not needed
+     */
+    public MessageDigest newDtbsDigester() throws TransformationException {
+        if (signatureParameters.getFlowType() != FlowType.ServiceProvider) {
+            return null;
+        }
+        try {
+            return MessageDigest.getInstance(signatureParameters.getDtbsDigestAlgorithm());
+        } catch (NoSuchAlgorithmException e) {
+            throw new TransformationException(ErrorCode.SDK006, this, "Error computing digest for DTBS", e);
+        }
+    }
+
+
+    /**
+     * Updates the DTBS along with the dtbsDigest of the signature parameters.
+     * The {@code dtbsDigester} must have been created by {@link #newDtbsDigester()},
+     * and must have digested exactly the DTBS data while it was serialized.
+     *
+     * @param dataToBeSigned the new DTBS
+     * @param dtbsDigester the digester that has digested the DTBS data. If null, only the DTBS is updated
+     */
+    public void setDataToBeSigned(DataToBeSigned dataToBeSigned, MessageDigest dtbsDigester) {
+        this.dataToBeSigned = dataToBeSigned;
+        if (dtbsDigester != null) {
+            updateDtbsDigest(Base64.getEncoder().encodeToString(dtbsDigester.digest()));
+            this.digestedDataToBeSigned = dataToBeSigned;
+        }
+    }
+
+
+    /**
+     * Returns if the dtbsDigest of the signature parameters has been computed for the current DTBS
+     * while it was serialized
+     * @return if the dtbsDigest is up-to-date
+     */
+    public boolean isDtbsDigestUpToDate() {
+        return digestedDataToBeSigned != null && digestedDataToBeSigned == dataToBeSigned;
+    }
+
+
     /**
      * Updates the signature parameters with the given dtbsSignedInfo
      * @param dtbsSignedInfo the DTBS Signed Info structure to set
@@ -99,6 +162,68 @@ public class TransformationContext implements Serializable {
     }
 
 
+    /**
+     * Stores an intermediate artifact, which may be picked up by subsequent transformation steps,
+     * e.g. to avoid re-parsing the DTBS. Setting a null value removes the attribute.
+     * <p>
+     * Attributes are transient, and not included if the context is serialized.
+     *
+     * @param name the attribute name
+     * @param value the attribute value
+     */
+    public void setAttribute(String name, Object value) {
+        if (value == null) {
+            removeAttribute(name);
+        } else {
+            if (attributes == null) {
+                attributes = new HashMap<>();
+            }
+            attributes.put(name, value);
+        }
+    }
+
+
+    /**
+     * Returns the intermediate artifact with the given name, or null if undefined or not of the given type
+     * @param name the attribute name
+     * @param type the attribute type
+     * @return the attribute value, or null if undefined
+     */
+    public <T> T getAttribute(String name, Class<T> type) {
+        Object value = attributes == null ? null : attributes.get(name);
+        return type.isInstance(value) ? type.cast(value) : null;
+    }
+
+
+    /**
+     * Removes the intermediate artifact with the given name
+     * @param name the attribute name
+     * @return the removed attribute value, or null if undefined
+     */
+    public Object removeAttribute(String name) {
+        return attributes == null ? null : attributes.remove(name);
+    }
+
+
+    /**
+     * Removes all intermediate artifacts. Artifacts that are {@link AutoCloseable}, e.g. open documents, are closed.
+     */
+    public void clearAttributes() {
+        if (attributes != null) {
+            for (Object value : attributes.values()) {
+                if (value instanceof AutoCloseable) {
+                    try {
+                        ((AutoCloseable) value).close();
+                    } catch (Exception e) {
+                        LOG.warn("Error closing transformation context attribute", e);
+                    }
+                }
+            }
+            attributes.clear();
+        }
+    }
+
+
     public SignatureKeys getSignatureKeys() {
         return signatureKeys;
     }
@@ -0,0 +1,126 @@
+package dk.gov.nemlogin.signing.service.impl;
+
+import dk.gov.nemlogin.signing.exceptions.NemLogInException;
+import dk.gov.nemlogin.signing.exceptions.ValidationException;
+import dk.gov.nemlogin.signing.format.DocumentFormat;
+import dk.gov.nemlogin.signing.model.SignersDocument.XmlSignersDocument;
+import dk.gov.nemlogin.signing.service.SignersDocumentValidationService;
+import dk.gov.nemlogin.signing.service.TransformationContext;
+import dk.gov.nemlogin.signing.util.SigningUtils;
+import dk.gov.nemlogin.signing.util.ValidationVerdictCache;
+import dk.gov.nemlogin.signing.util.ValidationVerdictCache.Verdict;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decorates a {@link SignersDocumentValidationService} with the process-wide {@link ValidationVerdictCache},
+ * so that an SD (Signer's Document) that has already been validated is not validated again.
+ * <p>
+ * Only verdicts of the delegate, i.e. successful validations and {@link ValidationException}s, are cached.
+ * A cached failed verdict is re-thrown as a new {@link ValidationException} for the current context.
+ * Hence, delegates must only throw {@link ValidationException}s for errors caused by the SD content, and report
+ * environmental or per-request errors, e.g. I/O errors or invalid transformation properties, as other
+ * {@link NemLogInException}s, which are not cached.
+ * For XML SDs, the HTML generated by the {@link XmlValidationService} is cached along with the verdict, and
+ * handed on to the {@link Xml2PdfFormatTransformationService} upon a cache hit, so the XSLT is not run again.
+ * <p>
+ * Returned by {@code ServiceLoaderFactory.getSignersDocumentValidationService()} unless disabled
+ * by the "nemlogin.signing.validation-cache.enabled" system property.
+ */
+public class CachingSignersDocumentValidationService implements SignersDocumentValidationService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CachingSignersDocumentValidationService.class);
+
+    private final SignersDocumentValidationService delegate;
+    private final ValidationVerdictCache cache;
+    private final byte[] delegateId;
+
+
+    /**
+     * Constructor
+     * @param delegate the validation service to decorate
+     * @param cache the cache of validation verdicts
+     */
+    public CachingSignersDocumentValidationService(SignersDocumentValidationService delegate, ValidationVerdictCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.delegateId = (delegate.getClass().getName() + ":" + delegate.getVersion()).getBytes(StandardCharsets.UTF_8);
+    }
+
+
+    /** {@inheritDoc} **/
+    @Override
+    public boolean supports(DocumentFormat sdFormat) {
+        return delegate.supports(sdFormat);
+    }
+
+
+    /** {@inheritDoc} **/
+    @Override
+    public int getPriority() {
+        return delegate.getPriority();
+    }
+
+
+    /** {@inheritDoc} **/
+    @Override
+    public String getVersion() {
+        return delegate.getVersion();
+    }
+
+
+    /** {@inheritDoc} **/
+    @Override
+    public boolean isCacheable() {
+        return false;
+    }
+
+
+    /** {@inheritDoc} **/
+    @Override
+    public void validate(TransformationContext ctx) throws NemLogInException {
+        var key = key(ctx);
+        var verdict = cache.get(key);
+        if (verdict == null) {
+            try {
+                delegate.validate(ctx);
+                cache.put(key, Verdict.valid(XmlValidationService.getGeneratedHtml(ctx)));
+            } catch (ValidationException e) {
+                cache.put(key, new Verdict(e.getErrorCode(), e.getMessage()));
+                throw e;
+            }
+        } else if (verdict.isValid()) {
+            LOG.debug("Using cached validation verdict for {}", ctx.getSignersDocument().getName());
+            XmlValidationService.setGeneratedHtml(ctx, verdict.getArtifact());
+        } else {
+            LOG.debug("Using cached failed validation verdict for {}", ctx.getSignersDocument().getName());
+            throw new ValidationException(verdict.getErrorCode(), ctx, verdict.getMessage());
+        }
+    }
+
+
+    /**
+     * Returns the decorated validation service
+     * @return the decorated validation service
+     */
+    public SignersDocumentValidationService getDelegate() {
+        return delegate;
+    }
+
+
+    /**
+     * Returns the content-addressed cache key of the SD format, the validator and the SD and XSLT data
+     * @param ctx the {@link TransformationContext}
+     * @return the cache key
+     */
+    private String key(TransformationContext ctx) throws NemLogInException {
+        var sd = ctx.getSignersDocument();
+        return SigningUtils.sha256(
+            sd.getFormat().name().getBytes(StandardCharsets.UTF_8),
+            delegateId,
+            sd.getData(),
+            sd instanceof XmlSignersDocument ? ((XmlSignersDocument) sd).getXsltData() : new byte[0]);
+    }
+}
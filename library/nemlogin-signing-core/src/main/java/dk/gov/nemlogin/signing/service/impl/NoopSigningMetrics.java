@@ -0,0 +1,23 @@
+package dk.gov.nemlogin.signing.service.impl;
+
+import dk.gov.nemlogin.signing.model.SigningStageEvent;
+import dk.gov.nemlogin.signing.service.SigningMetrics;
+
+/**
+ * Default {@link SigningMetrics} implementation that discards all events
+ */
+public class NoopSigningMetrics implements SigningMetrics {
+
+    /** {@inheritDoc} **/
+    @Override
+    public int getPriority() {
+        return Integer.MIN_VALUE;
+    }
+
+
+    /** {@inheritDoc} **/
+    @Override
+    public void stageCompleted(SigningStageEvent event) {
+        // Metrics are not collected
+    }
+}
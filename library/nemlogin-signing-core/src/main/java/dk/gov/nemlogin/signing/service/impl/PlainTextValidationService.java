@@ -21,6 +21,16 @@ public class PlainTextValidationService implements SignersDocumentValidationServ
         return DocumentFormat.TEXT == dsFormat;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Plain text is not validated, so there is nothing to cache.
+     **/
+    @Override
+    public boolean isCacheable() {
+        return false;
+    }
+
     /**
      * {@inheritDoc}
      **/
@@ -10,13 +10,11 @@ import dk.gov.nemlogin.signing.service.TransformationContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import javax.xml.transform.stream.StreamSource;
-import java.io.StringWriter;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 
 import static dk.gov.nemlogin.signing.exceptions.ErrorCode.SDK007;
 
@@ -28,6 +26,9 @@ public class Txt2PdfFormatTransformationService extends Abstract2PdfFormatTransf
 
     private static final Logger LOG = LoggerFactory.getLogger(Txt2PdfFormatTransformationService.class);
 
+    /** Length of the HTML surrounding the lines **/
+    private static final int HTML_LENGTH = 64;
+
     /** {@inheritDoc} **/
     @Override
     public boolean supports(ValidTransformation transformation) {
@@ -43,39 +44,17 @@ public class Txt2PdfFormatTransformationService extends Abstract2PdfFormatTransf
         long t0 = System.currentTimeMillis();
 
         PlainTextSignersDocument sd = (PlainTextSignersDocument)ctx.getSignersDocument();
-        String html;
         try {
-            // Create a simple XML containing the plain text lines.
-            // Example: <data><line>line 1</line><line>line 2</line></data>
-            final var documentBuilderFactory = DocumentBuilderFactory.newInstance();
-            // XML parsers should not be vulnerable to XXE attacks
-            documentBuilderFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
-            documentBuilderFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
-
-            var docBuilder = documentBuilderFactory.newDocumentBuilder();
-            var doc = docBuilder.newDocument();
-            var root = doc.createElement("data");
-            doc.appendChild(root);
-            sd.dataAsText().lines()
-                .forEach(line -> {
-                    var e = doc.createElement("line");
-                    e.appendChild(doc.createTextNode(line));
-                    root.appendChild(e);
-                });
-
-            // Transform the xml to html
-            var xsltSource = new StreamSource(getClass().getResourceAsStream("/xslt/txt-to-html.xsl"));
-            var xmlSource = new DOMSource(doc);
-            var writer = new StringWriter();
-            var transformer = TransformerFactory.newDefaultInstance()
-                .newTransformer(xsltSource);
-            transformer.setParameter("useMonoSpaceFont", String.valueOf(sd.isUseMonoSpaceFont()));
-            transformer.transform(xmlSource, new StreamResult(writer));
-            html = writer.toString();
+            // The lines are read and escaped one at a time, rather than building a DOM of the full text
+            byte[] data = sd.getData();
+            var html = new StringBuilder(data.length + HTML_LENGTH);
+            try (var text = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8))) {
+                writeHtml(text, sd.isUseMonoSpaceFont(), html);
+            }
 
             LOG.debug("Initially transformed {} from TXT to HTML in {} ms", sd.getName(), System.currentTimeMillis() - t0);
 
-            return html;
+            return html.toString();
 
         } catch (Exception e) {
             throw new TransformationException(
@@ -84,4 +63,50 @@ public class Txt2PdfFormatTransformationService extends Abstract2PdfFormatTransf
                 "Error initially transforming " + sd.getName() + " from TXT to HTML: " + e.getMessage(), e);
         }
     }
+
+
+    /**
+     * Writes the lines of the plain text as HTML, one line at a time.
+     * <p>
+     * Each line is followed by a &lt;br> element, and the lines are wrapped in a &lt;pre> element if a monospace
+     * font should be used, and in a &lt;div> element otherwise.
+     * Example: &lt;html lang="da">&lt;body>&lt;pre>line 1&lt;br>line 2&lt;br>&lt;/pre>&lt;/body>&lt;/html>
+     *
+     * @param text the plain text
+     * @param useMonoSpaceFont whether to use a monospace font
+     * @param html the HTML to write to
+     */
+    public static void writeHtml(BufferedReader text, boolean useMonoSpaceFont, Appendable html) throws IOException {
+        var element = useMonoSpaceFont ? "pre" : "div";
+        html.append("<html lang=\"da\"><body><").append(element).append('>');
+        String line;
+        while ((line = text.readLine()) != null) {
+            appendEscaped(line, html);
+            html.append("<br>");
+        }
+        html.append("</").append(element).append("></body></html>");
+    }
+
+
+    /**
+     * Appends the line to the HTML, escaping the HTML special characters
+     *
+     * @param line the line to append
+     * @param html the HTML to append to
+     */
+    private static void appendEscaped(String line, Appendable html) throws IOException {
+        var start = 0;
+        for (var x = 0; x < line.length(); x++) {
+            String entity;
+            switch (line.charAt(x)) {
+                case '&': entity = "&amp;"; break;
+                case '<': entity = "&lt;"; break;
+                case '>': entity = "&gt;"; break;
+                default: continue;
+            }
+            html.append(line, start, x).append(entity);
+            start = x + 1;
+        }
+        html.append(line, start, line.length());
+    }
 }
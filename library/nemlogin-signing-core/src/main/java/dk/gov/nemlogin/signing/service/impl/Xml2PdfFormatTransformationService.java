@@ -7,14 +7,14 @@ import dk.gov.nemlogin.signing.model.SignersDocument.XmlSignersDocument;
 import dk.gov.nemlogin.signing.model.ValidTransformation;
 import dk.gov.nemlogin.signing.service.FormatTransformationService;
 import dk.gov.nemlogin.signing.service.TransformationContext;
+import dk.gov.nemlogin.signing.util.XsltTemplatesCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
-import java.io.StringReader;
+import java.io.ByteArrayInputStream;
 import java.io.StringWriter;
 
 import static dk.gov.nemlogin.signing.exceptions.ErrorCode.SDK007;
@@ -44,9 +44,14 @@ public class Xml2PdfFormatTransformationService extends Abstract2PdfFormatTransf
         XmlSignersDocument sd = (XmlSignersDocument)ctx.getSignersDocument();
         String html;
         try {
-            String xml = sd.dataAsText();
-            String xslt = sd.xsltAsText();
-            html = xslt(xslt, xml);
+            // Re-use the HTML generated when the SD was validated, if the SD has not changed since
+            html = XmlValidationService.consumeGeneratedHtml(ctx);
+            if (html != null) {
+                LOG.debug("Re-used validated HTML for {}", sd.getName());
+                return html;
+            }
+
+            html = xslt(sd.getXsltData(), sd.getData());
 
             LOG.debug("Initially transformed {} from XML to HTML in {} ms", sd.getName(), System.currentTimeMillis() - t0);
 
@@ -65,16 +70,17 @@ public class Xml2PdfFormatTransformationService extends Abstract2PdfFormatTransf
     /**
      * Performs an XSLT of the SD XML document. Should yield HTML.
      *
+     * The compiled XSLT is cached by the {@link XsltTemplatesCache}.
+     *
      * @param xslt the actual XSLT
      * @param xml the actual XML
      * @return the result of the XSLT transformation
      */
-    private String xslt(String xslt, String xml) throws TransformerException {
-        var xsltSource = new StreamSource(new StringReader(xslt));
-        var xmlSource = new StreamSource(new StringReader(xml));
+    private String xslt(byte[] xslt, byte[] xml) throws TransformerException {
+        var xmlSource = new StreamSource(new ByteArrayInputStream(xml));
         var writer = new StringWriter();
-        TransformerFactory.newDefaultInstance()
-            .newTransformer(xsltSource)
+        XsltTemplatesCache.getInstance()
+            .newTransformer(xslt)
             .transform(xmlSource, new StreamResult(writer));
         return writer.toString();
     }
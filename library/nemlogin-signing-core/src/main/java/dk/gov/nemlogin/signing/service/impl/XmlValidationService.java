@@ -11,6 +11,7 @@ import dk.gov.nemlogin.signing.service.ServiceLoaderFactory;
 import dk.gov.nemlogin.signing.service.SignersDocumentValidationService;
 import dk.gov.nemlogin.signing.service.TransformationContext;
 import dk.gov.nemlogin.signing.util.SigningUtils;
+import dk.gov.nemlogin.signing.util.XsltTemplatesCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.Attributes;
@@ -25,12 +26,12 @@ import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.Source;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -47,6 +48,9 @@ public class XmlValidationService implements SignersDocumentValidationService {
     static final String XSL_IMPORT = "import";
     static final String XSL_INCLUDE = "include";
 
+    /** Transformation context attribute holding the HTML generated from the XML SD during validation **/
+    static final String GENERATED_HTML_ATTRIBUTE = XmlValidationService.class.getName() + ".generatedHtml";
+
 
     /** {@inheritDoc} **/
     @Override
@@ -67,38 +71,116 @@ public class XmlValidationService implements SignersDocumentValidationService {
 
 
     /**
-     * Checks that the HTML generated from the XSLT is valid SignHTML
+     * Checks that the HTML generated from the XSLT is valid SignHTML.
+     * <p>
+     * The generated HTML is recorded in the {@link TransformationContext}, so that it can be re-used by the
+     * {@link Xml2PdfFormatTransformationService} rather than running the XSLT again.
+     *
      * @param ctx the {@link TransformationContext}
      */
     public void checkHTML(TransformationContext ctx) throws NemLogInException {
         XmlSignersDocument sd = (XmlSignersDocument) ctx.getSignersDocument();
-        Source xslInputSource =  new StreamSource(new ByteArrayInputStream(sd.getXsltData()));
         Source xmlInputSource = new StreamSource(new ByteArrayInputStream(sd.getData()));
 
-        var htmlResultStream = new ByteArrayOutputStream();
+        var htmlResultWriter = new StringWriter();
         try {
-            final var transformerFactory = TransformerFactory.newDefaultInstance();
-            // XML parsers should not be vulnerable to XXE attacks java:S2755
-            transformerFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
-            transformerFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
-
-            transformerFactory
-                .newTransformer(xslInputSource)
-                .transform(xmlInputSource, new StreamResult(htmlResultStream));
+            // The XSLT is compiled by a factory that is not vulnerable to XXE attacks java:S2755
+            XsltTemplatesCache.getInstance()
+                .newTransformer(sd.getXsltData())
+                .transform(xmlInputSource, new StreamResult(htmlResultWriter));
         } catch (TransformerException e) {
             throw new ValidationException(ErrorCode.SDK010, ctx, "Error while transforming XML to HTML", e);
         }
+        var html = htmlResultWriter.toString();
 
         SignersDocumentFile htmlResult = SignersDocumentFile.builder()
             .setName(SigningUtils.fileName(ctx.getSignersDocument().getName(), "html"))
-            .setData(htmlResultStream.toByteArray())
+            .setData(html.getBytes(StandardCharsets.UTF_8))
             .build();
 
         var htmlValidator = ServiceLoaderFactory.getSignersDocumentValidationService(DocumentFormat.HTML);
         htmlValidator.validate(new TransformationContext(new HtmlSignersDocument(htmlResult), null, ctx.getSignatureParameters(), null));
+
+        ctx.setAttribute(GENERATED_HTML_ATTRIBUTE, new GeneratedHtml(digest(sd), html));
+    }
+
+
+    /**
+     * Removes and returns the validated HTML generated from the XML SD by {@link #checkHTML(TransformationContext)}.
+     * Returns null if undefined, or if the SD XML or XSLT has changed since the HTML was generated.
+     *
+     * @param ctx the {@link TransformationContext}
+     * @return the generated HTML, or null if not available
+     */
+    static String consumeGeneratedHtml(TransformationContext ctx) {
+        var generatedHtml = ctx.getAttribute(GENERATED_HTML_ATTRIBUTE, GeneratedHtml.class);
+        ctx.removeAttribute(GENERATED_HTML_ATTRIBUTE);
+        if (generatedHtml != null && ctx.getSignersDocument() instanceof XmlSignersDocument
+            && generatedHtml.digest.equals(digest((XmlSignersDocument) ctx.getSignersDocument()))) {
+            return generatedHtml.html;
+        }
+        return null;
+    }
+
+
+    /**
+     * Returns the validated HTML generated from the XML SD, as recorded in the {@link TransformationContext}
+     * by {@link #checkHTML(TransformationContext)}, without removing it. Returns null if undefined.
+     * <p>
+     * The returned value is immutable, and may be restored for other contexts of the same SD XML and XSLT
+     * using {@link #setGeneratedHtml(TransformationContext, Object)}.
+     *
+     * @param ctx the {@link TransformationContext}
+     * @return the generated HTML, or null if not available
+     */
+    static Object getGeneratedHtml(TransformationContext ctx) {
+        return ctx.getAttribute(GENERATED_HTML_ATTRIBUTE, GeneratedHtml.class);
+    }
+
+
+    /**
+     * Records the validated HTML generated from the XML SD, as returned by {@link #getGeneratedHtml(TransformationContext)}
+     * for another context of the same SD XML and XSLT. Values that are not generated HTML are ignored.
+     *
+     * @param ctx the {@link TransformationContext}
+     * @param generatedHtml the generated HTML
+     */
+    static void setGeneratedHtml(TransformationContext ctx, Object generatedHtml) {
+        if (generatedHtml instanceof GeneratedHtml) {
+            ctx.setAttribute(GENERATED_HTML_ATTRIBUTE, generatedHtml);
+        }
     }
 
 
+    /**
+     * Returns a digest of the SD XML and XSLT
+     * @param sd the XML SD
+     * @return a digest of the SD XML and XSLT
+     */
+    private static String digest(XmlSignersDocument sd) {
+        try {
+            return SigningUtils.sha256(sd.getData(), sd.getXsltData());
+        } catch (NemLogInException e) {
+            // Will not match any recorded digest
+            return "";
+        }
+    }
+
+
+    /**
+     * HTML generated from an XML SD, along with a digest of the SD XML and XSLT it was generated from
+     */
+    private static class GeneratedHtml {
+        private final String digest;
+        private final String html;
+
+        /** Constructor **/
+        GeneratedHtml(String digest, String html) {
+            this.digest = digest;
+            this.html = html;
+        }
+    }
+
 
     /**
      * Simple error handler to be used in SAX parser
@@ -0,0 +1,196 @@
+package dk.gov.nemlogin.signing.util;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simple thread-safe cache with a bounded size, LRU eviction and an optional time-to-live.
+ * <p>
+ * Values are loaded outside the cache lock, so concurrent misses for the same key may load the value
+ * more than once, in which case the last loaded value wins.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class BoundedCache<K, V> {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final Map<K, Entry<V>> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+
+    /**
+     * Constructor
+     * @param maxSize the max number of cached entries
+     * @param ttl the time-to-live of cached entries. If null or zero, entries never expire
+     */
+    public BoundedCache(int maxSize, Duration ttl) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Invalid max cache size: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl == null || ttl.isNegative() ? 0L : ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > BoundedCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+
+    /**
+     * Returns the cached value for the given key, or null if not cached or expired
+     * @param key the key
+     * @return the cached value, or null if not cached or expired
+     */
+    public V get(K key) {
+        synchronized (entries) {
+            var entry = entries.get(key);
+            if (entry != null && isExpired(entry)) {
+                entries.remove(key);
+                evictions.incrementAndGet();
+                entry = null;
+            }
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return entry.value;
+        }
+    }
+
+
+    /**
+     * Returns the cached value for the given key. If not cached or expired, the value is loaded and cached.
+     * @param key the key
+     * @param loader loads the value if not cached
+     * @return the cached or loaded value
+     */
+    public <E extends Exception> V get(K key, Loader<V, E> loader) throws E {
+        var value = get(key);
+        if (value == null) {
+            value = loader.load();
+            put(key, value);
+        }
+        return value;
+    }
+
+
+    /**
+     * Caches the value for the given key
+     * @param key the key
+     * @param value the value. Null values are not cached
+     */
+    public void put(K key, V value) {
+        if (value != null) {
+            synchronized (entries) {
+                entries.put(key, new Entry<>(value, System.nanoTime()));
+            }
+        }
+    }
+
+
+    /**
+     * Removes the cached value for the given key
+     * @param key the key
+     */
+    public void remove(K key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+
+    /** Removes all cached values **/
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+
+    /** Returns the number of cached entries, including expired entries not yet evicted **/
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+
+    /** Returns the number of cache hits **/
+    public long getHitCount() {
+        return hits.get();
+    }
+
+
+    /** Returns the number of cache misses **/
+    public long getMissCount() {
+        return misses.get();
+    }
+
+
+    /** Returns the number of entries evicted because of the size bound or time-to-live **/
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+
+    /** Returns the ratio of cache hits to cache look-ups, or 0.0 if the cache has not been used **/
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+
+    /** {@inheritDoc} **/
+    @Override
+    public String toString() {
+        return String.format("size=%d, hits=%d, misses=%d, evictions=%d",
+            size(), getHitCount(), getMissCount(), getEvictionCount());
+    }
+
+
+    /** Returns if the entry has expired **/
+    private boolean isExpired(Entry<V> entry) {
+        return ttlNanos > 0 && System.nanoTime() - entry.created > ttlNanos;
+    }
+
+
+    /**
+     * Loads a value that is not cached
+     * @param <V> the value type
+     * @param <E> the exception thrown when loading the value
+     */
+    @FunctionalInterface
+    public interface Loader<V, E extends Exception> {
+        V load() throws E;
+    }
+
+
+    /**
+     * A cached value along with its creation time
+     */
+    private static class Entry<V> {
+        private final V value;
+        private final long created;
+
+        /** Constructor **/
+        Entry(V value, long created) {
+            this.value = value;
+            this.created = created;
+        }
+    }
+}
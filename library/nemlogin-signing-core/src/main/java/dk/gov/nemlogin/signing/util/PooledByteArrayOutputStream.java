@@ -0,0 +1,212 @@
+package dk.gov.nemlogin.signing.util;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Output buffer used when serializing large DTBS documents.
+ * <p>
+ * Unlike a {@link java.io.ByteArrayOutputStream}, the data is stored in fixed-size chunks, so growing the buffer
+ * never copies the data written so far. Chunks are borrowed from a process-wide pool, and returned to the pool
+ * once the buffer has been drained via {@link #toByteArray()}, {@link #toInputStream()} or {@link #close()}.
+ * <p>
+ * The max number of pooled chunks can be configured using the "nemlogin.signing.output-buffer-pool-size"
+ * system property.
+ * <p>
+ * Instances are not thread-safe, and can only be drained once.
+ */
+public class PooledByteArrayOutputStream extends OutputStream {
+
+    public static final String POOL_SIZE_PROPERTY = "nemlogin.signing.output-buffer-pool-size";
+    public static final int CHUNK_SIZE = 256 * 1024;
+
+    private static final BlockingQueue<byte[]> POOL = new ArrayBlockingQueue<>(
+        Math.max(1, Integer.getInteger(POOL_SIZE_PROPERTY, 64)));
+
+    private final List<byte[]> chunks = new ArrayList<>();
+    private byte[] current;
+    private int position;
+    private long size;
+    private boolean drained;
+
+
+    /** {@inheritDoc} **/
+    @Override
+    public void write(int b) {
+        ensureCapacity();
+        current[position++] = (byte) b;
+        size++;
+    }
+
+
+    /** {@inheritDoc} **/
+    @Override
+    public void write(byte[] b, int off, int len) {
+        while (len > 0) {
+            ensureCapacity();
+            int n = Math.min(len, CHUNK_SIZE - position);
+            System.arraycopy(b, off, current, position, n);
+            position += n;
+            size += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+
+    /**
+     * Returns the number of bytes written
+     * @return the number of bytes written
+     */
+    public long size() {
+        return size;
+    }
+
+
+    /**
+     * Returns the written data as an exact-size byte array, and releases the buffer.
+     * Each chunk is returned to the pool as soon as it has been copied.
+     *
+     * @return the written data
+     */
+    public byte[] toByteArray() {
+        checkNotDrained();
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Buffer too large: " + size);
+        }
+        var result = new byte[(int) size];
+        var offset = 0;
+        for (var i = 0; i < chunks.size(); i++) {
+            var n = (int) Math.min(CHUNK_SIZE, size - offset);
+            System.arraycopy(chunks.get(i), 0, result, offset, n);
+            offset += n;
+            release(i);
+        }
+        close();
+        return result;
+    }
+
+
+    /**
+     * Returns an {@link InputStream} for reading the written data without copying it.
+     * The buffer is released once the returned stream is closed.
+     *
+     * @return an {@link InputStream} for reading the written data
+     */
+    public InputStream toInputStream() {
+        checkNotDrained();
+        drained = true;
+        return new ChunkInputStream();
+    }
+
+
+    /** Releases the buffer **/
+    @Override
+    public void close() {
+        drained = true;
+        for (var i = 0; i < chunks.size(); i++) {
+            release(i);
+        }
+        chunks.clear();
+        current = null;
+    }
+
+
+    /** Ensures that there is room for at least one more byte in the current chunk **/
+    private void ensureCapacity() {
+        checkNotDrained();
+        if (current == null || position == CHUNK_SIZE) {
+            var chunk = POOL.poll();
+            current = chunk != null ? chunk : new byte[CHUNK_SIZE];
+            chunks.add(current);
+            position = 0;
+        }
+    }
+
+
+    /** Returns the chunk with the given index to the pool **/
+    private void release(int index) {
+        var chunk = chunks.get(index);
+        if (chunk != null) {
+            chunks.set(index, null);
+            // If the pool is full, the chunk is simply discarded
+            POOL.offer(chunk);
+        }
+    }
+
+
+    /** Throws an exception if the buffer has already been drained **/
+    private void checkNotDrained() {
+        if (drained) {
+            throw new IllegalStateException("Buffer has already been drained");
+        }
+    }
+
+
+    /**
+     * Reads the chunks of the enclosing buffer
+     */
+    private class ChunkInputStream extends InputStream {
+
+        private int chunkIndex;
+        private int chunkPosition;
+        private long remaining = size;
+
+
+        /** {@inheritDoc} **/
+        @Override
+        public int read() {
+            if (remaining <= 0) {
+                return -1;
+            }
+            var b = chunks.get(chunkIndex)[chunkPosition++] & 0xff;
+            advance(1);
+            return b;
+        }
+
+
+        /** {@inheritDoc} **/
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            } else if (remaining <= 0) {
+                return -1;
+            }
+            var n = (int) Math.min(Math.min(len, CHUNK_SIZE - chunkPosition), remaining);
+            System.arraycopy(chunks.get(chunkIndex), chunkPosition, b, off, n);
+            chunkPosition += n;
+            advance(n);
+            return n;
+        }
+
+
+        /** {@inheritDoc} **/
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, remaining);
+        }
+
+
+        /** {@inheritDoc} **/
+        @Override
+        public void close() {
+            remaining = 0;
+            PooledByteArrayOutputStream.this.close();
+        }
+
+
+        /** Updates the remaining count, and releases fully read chunks **/
+        private void advance(int n) {
+            remaining -= n;
+            if (chunkPosition == CHUNK_SIZE) {
+                release(chunkIndex++);
+                chunkPosition = 0;
+            }
+        }
+    }
+}
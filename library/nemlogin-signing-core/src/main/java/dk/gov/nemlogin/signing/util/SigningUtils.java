@@ -8,11 +8,15 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.Security;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.Objects;
 import java.util.Properties;
 
@@ -213,4 +217,27 @@ public class SigningUtils {
         }
         return versionProperties;
     }
+
+
+    /**
+     * Returns the Base64-encoded SHA-256 hash of the given data.
+     * Null elements are skipped, and each element is prefixed with its length,
+     * so that e.g. ("ab", "c") and ("a", "bc") yield different hashes.
+     * @param data the data to hash
+     * @return the Base64-encoded SHA-256 hash of the data
+     */
+    public static String sha256(byte[]... data) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            for (byte[] d : data) {
+                if (d != null) {
+                    digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(d.length).array());
+                    digest.update(d);
+                }
+            }
+            return Base64.getEncoder().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Unable to calculate SHA-256", e);
+        }
+    }
 }
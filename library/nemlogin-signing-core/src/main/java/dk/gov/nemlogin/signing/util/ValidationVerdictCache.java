@@ -0,0 +1,145 @@
+package dk.gov.nemlogin.signing.util;
+
+import dk.gov.nemlogin.signing.exceptions.ErrorCode;
+
+import java.time.Duration;
+
+/**
+ * Process-wide cache of SD (Signer's Document) validation verdicts.
+ * <p>
+ * The verdicts are cached by a SHA-256 hash of the SD format, the validation service class and version,
+ * and the SD and XSLT bytes, so the same SD template is only validated once, regardless of how many signers
+ * sign it. Both successful and failed validations are cached.
+ * Successful verdicts of XML SDs also hold the HTML generated from the SD, which counts towards the memory used by the cache.
+ * <p>
+ * The cache can be configured using the following system properties:
+ * <ul>
+ *     <li>"nemlogin.signing.validation-cache.enabled": Whether to cache validation verdicts. Default true.</li>
+ *     <li>"nemlogin.signing.validation-cache.max-size": Max number of cached verdicts. Default 1000.</li>
+ *     <li>"nemlogin.signing.validation-cache.ttl-seconds": Time-to-live of cached verdicts. Default 3600.
+ *         A value of 0 disables expiry.</li>
+ * </ul>
+ */
+public class ValidationVerdictCache {
+
+    public static final String ENABLED_PROPERTY = "nemlogin.signing.validation-cache.enabled";
+    public static final String MAX_SIZE_PROPERTY = "nemlogin.signing.validation-cache.max-size";
+    public static final String TTL_SECONDS_PROPERTY = "nemlogin.signing.validation-cache.ttl-seconds";
+
+    private static final ValidationVerdictCache INSTANCE = new ValidationVerdictCache(
+        Integer.getInteger(MAX_SIZE_PROPERTY, 1000),
+        Duration.ofSeconds(Long.getLong(TTL_SECONDS_PROPERTY, 3600L)));
+
+    private final BoundedCache<String, Verdict> cache;
+
+
+    /**
+     * Constructor
+     * @param maxSize the max number of cached verdicts
+     * @param ttl the time-to-live of cached verdicts
+     */
+    public ValidationVerdictCache(int maxSize, Duration ttl) {
+        this.cache = new BoundedCache<>(maxSize, ttl);
+    }
+
+
+    /**
+     * Returns the process-wide validation verdict cache
+     * @return the process-wide validation verdict cache
+     */
+    public static ValidationVerdictCache getInstance() {
+        return INSTANCE;
+    }
+
+
+    /**
+     * Returns if validation verdicts should be cached
+     * @return if validation verdicts should be cached
+     */
+    public static boolean isEnabled() {
+        return !"false".equalsIgnoreCase(System.getProperty(ENABLED_PROPERTY, "true"));
+    }
+
+
+    /**
+     * Returns the cached verdict for the given key, or null if not cached
+     * @param key the content-addressed key
+     * @return the cached verdict, or null if not cached
+     */
+    public Verdict get(String key) {
+        return cache.get(key);
+    }
+
+
+    /**
+     * Caches the verdict for the given key
+     * @param key the content-addressed key
+     * @param verdict the verdict
+     */
+    public void put(String key, Verdict verdict) {
+        cache.put(key, verdict);
+    }
+
+
+    /**
+     * Returns the underlying cache, e.g. for inspecting hit/miss statistics
+     * @return the underlying cache
+     */
+    public BoundedCache<String, Verdict> getCache() {
+        return cache;
+    }
+
+
+    /**
+     * The verdict of validating an SD. A failed verdict records the error code and message of the
+     * validation error, so that it can be re-thrown for subsequent validations of the same SD.
+     * <p>
+     * A successful verdict may record an immutable artifact produced by the validation, such as the HTML generated
+     * from an XML SD, so that it can be handed on to the transformation for subsequent validations of the same SD.
+     */
+    public static class Verdict {
+
+        public static final Verdict VALID = new Verdict(null, null);
+
+        private final ErrorCode errorCode;
+        private final String message;
+        private final Object artifact;
+
+        /** Constructor **/
+        public Verdict(ErrorCode errorCode, String message) {
+            this(errorCode, message, null);
+        }
+
+        /** Constructor **/
+        public Verdict(ErrorCode errorCode, String message, Object artifact) {
+            this.errorCode = errorCode;
+            this.message = message;
+            this.artifact = artifact;
+        }
+
+        /**
+         * Returns a successful verdict recording the given artifact
+         * @param artifact the immutable artifact produced by the validation, or null
+         * @return a successful verdict
+         */
+        public static Verdict valid(Object artifact) {
+            return artifact == null ? VALID : new Verdict(null, null, artifact);
+        }
+
+        public boolean isValid() {
+            return errorCode == null;
+        }
+
+        public ErrorCode getErrorCode() {
+            return errorCode;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public Object getArtifact() {
+            return artifact;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package dk.gov.nemlogin.signing.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+
+/**
+ * Process-wide cache of compiled XSLT stylesheets.
+ * <p>
+ * {@link Templates} are thread-safe and are cached by the SHA-256 hash of the XSLT bytes, so the same stylesheet
+ * is only compiled once, regardless of where it was loaded from. {@link Transformer} instances are not thread-safe,
+ * so a new one should be created for each transformation using {@link #newTransformer(byte[])}.
+ * <p>
+ * The cache can be configured using the following system properties:
+ * <ul>
+ *     <li>"nemlogin.signing.xslt-cache.max-size": Max number of cached stylesheets. Default 100.</li>
+ *     <li>"nemlogin.signing.xslt-cache.ttl-seconds": Time-to-live of cached stylesheets. Default 3600.
+ *         A value of 0 disables expiry.</li>
+ * </ul>
+ */
+public class XsltTemplatesCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(XsltTemplatesCache.class);
+
+    public static final String MAX_SIZE_PROPERTY = "nemlogin.signing.xslt-cache.max-size";
+    public static final String TTL_SECONDS_PROPERTY = "nemlogin.signing.xslt-cache.ttl-seconds";
+
+    private static final XsltTemplatesCache INSTANCE = new XsltTemplatesCache(
+        Integer.getInteger(MAX_SIZE_PROPERTY, 100),
+        Duration.ofSeconds(Long.getLong(TTL_SECONDS_PROPERTY, 3600L)));
+
+    private final BoundedCache<String, Templates> cache;
+
+
+    /**
+     * Constructor
+     * @param maxSize the max number of cached stylesheets
+     * @param ttl the time-to-live of cached stylesheets
+     */
+    public XsltTemplatesCache(int maxSize, Duration ttl) {
+        this.cache = new BoundedCache<>(maxSize, ttl);
+    }
+
+
+    /**
+     * Returns the process-wide XSLT templates cache
+     * @return the process-wide XSLT templates cache
+     */
+    public static XsltTemplatesCache getInstance() {
+        return INSTANCE;
+    }
+
+
+    /**
+     * Returns the compiled XSLT stylesheet, compiling and caching it if not cached already
+     * @param xslt the XSLT stylesheet
+     * @return the compiled XSLT stylesheet
+     */
+    public Templates getTemplates(byte[] xslt) throws TransformerConfigurationException {
+        return cache.get(SigningUtils.sha256(xslt), () -> compile(xslt));
+    }
+
+
+    /**
+     * Returns a new {@link Transformer} for the XSLT stylesheet, compiling and caching the stylesheet
+     * if not cached already
+     * @param xslt the XSLT stylesheet
+     * @return a new {@link Transformer} for the XSLT stylesheet
+     */
+    public Transformer newTransformer(byte[] xslt) throws TransformerConfigurationException {
+        return getTemplates(xslt).newTransformer();
+    }
+
+
+    /**
+     * Returns the underlying cache, e.g. for inspecting hit/miss statistics
+     * @return the underlying cache
+     */
+    public BoundedCache<String, Templates> getCache() {
+        return cache;
+    }
+
+
+    /**
+     * Compiles the XSLT stylesheet.
+     * NB: {@link TransformerFactory} is not thread-safe, so a new factory is used for each compilation.
+     * @param xslt the XSLT stylesheet
+     * @return the compiled XSLT stylesheet
+     */
+    private Templates compile(byte[] xslt) throws TransformerConfigurationException {
+        long t0 = System.currentTimeMillis();
+        final var transformerFactory = TransformerFactory.newDefaultInstance();
+        // XML parsers should not be vulnerable to XXE attacks java:S2755
+        transformerFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        transformerFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
+        var templates = transformerFactory.newTemplates(new StreamSource(new ByteArrayInputStream(xslt)));
+        LOG.debug("Compiled XSLT in {} ms. Cache statistics: {}", System.currentTimeMillis() - t0, cache);
+        return templates;
+    }
+}
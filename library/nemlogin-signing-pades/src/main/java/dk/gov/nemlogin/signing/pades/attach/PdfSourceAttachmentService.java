@@ -7,6 +7,8 @@ import dk.gov.nemlogin.signing.format.SignatureFormat;
 import dk.gov.nemlogin.signing.model.DataToBeSigned.PadesDataToBeSigned;
 import dk.gov.nemlogin.signing.model.SignersDocument.XmlSignersDocument;
 import dk.gov.nemlogin.signing.model.ValidTransformation;
+import dk.gov.nemlogin.signing.pades.util.PdfDocumentLoader;
+import dk.gov.nemlogin.signing.pades.util.PdfDocumentSession;
 import dk.gov.nemlogin.signing.service.SourceAttachmentService;
 import dk.gov.nemlogin.signing.service.TransformationContext;
 import dk.gov.nemlogin.signing.util.SignSDKVersion;
@@ -67,62 +69,27 @@ public class PdfSourceAttachmentService implements SourceAttachmentService {
         long t0 = System.currentTimeMillis();
         LOG.debug("Adding XML and XSLT attachments to PDF");
 
-        XmlSignersDocument sd = (XmlSignersDocument)ctx.getSignersDocument();
-
-        try (var outputStream = new ByteArrayOutputStream();
-             var is = ctx.getDataToBeSigned().dataInputStream();
-             var pdDocument = PDDocument.load(is)) {
-
-            // XML file
-            PDComplexFileSpecification xmlFile = createAttachmentFile(
-                pdDocument,
-                sd.getName(),
-                sd.getData(),
-                sd.getFile().getCreationTime(),
-                "text/xml");
-
-            // XSLT file
-            PDComplexFileSpecification xsltFile = createAttachmentFile(
-                pdDocument,
-                SigningUtils.fileName(sd.getXsltFile().getName(), "xsl"),
-                sd.getXsltData(),
-                sd.getXsltFile().getCreationTime(),
-                "text/xsl");
-
-
-            // Add the attachments to a map, and add map to a files name node
-            Map<String, PDComplexFileSpecification> efMap = new HashMap<>();
-            efMap.put(ATTACHMENT_XML_NAME, xmlFile);
-            efMap.put(ATTACHMENT_XSL_NAME, xsltFile);
-            var efTree = new PDEmbeddedFilesNameTreeNode();
-            efTree.setNames( efMap );
-            efTree.getCOSObject().removeItem(COSName.LIMITS);
-
-            // attachments are stored as part of the "names" dictionary in the document catalog
-            var namesDictionary = new PDDocumentNameDictionary(pdDocument.getDocumentCatalog());
-            namesDictionary.setEmbeddedFiles(efTree);
-            pdDocument.getDocumentCatalog().setNames(namesDictionary);
-            efTree.getCOSObject().removeItem(COSName.LIMITS);
-
-            // then change producer - so it is possible to trace which SignSDK has modified this PDF
-            PDDocumentInformation documentInformation = pdDocument.getDocumentInformation();
-            // handle documents without any document information (by creating one)
-            if (documentInformation == null) {
-                documentInformation = new PDDocumentInformation();
-                documentInformation.setCreationDate(Calendar.getInstance());
-                pdDocument.setDocumentInformation(documentInformation);
+        try {
+            if (PdfDocumentSession.isEnabled(ctx)) {
+                // Leave the modified PDF open in the session. It is saved incrementally along with the signature
+                addAttachments(ctx, PdfDocumentSession.open(ctx).getDocument());
+                LOG.info("Added XML and XSLT files as PDF attachments (pending save) in {} ms", System.currentTimeMillis() - t0);
+                return;
             }
-            documentInformation.setProducer(SignSDKVersion.getProducer());
-            documentInformation.setModificationDate(Calendar.getInstance());
 
-            // Save the PDF with attachments
-            pdDocument.getDocumentCatalog().getCOSObject().setNeedToBeUpdated(true);
-            pdDocument.saveIncremental(outputStream);
+            try (var outputStream = new ByteArrayOutputStream();
+                 var pdDocument = PdfDocumentLoader.load(ctx)) {
+
+                addAttachments(ctx, pdDocument);
+
+                // Save the PDF with attachments
+                pdDocument.saveIncremental(outputStream);
 
-            // Update the DTBS
-            ctx.setDataToBeSigned(new PadesDataToBeSigned(
-                outputStream.toByteArray(),
-                ctx.getDataToBeSigned().getName()));
+                // Update the DTBS
+                ctx.setDataToBeSigned(new PadesDataToBeSigned(
+                    outputStream.toByteArray(),
+                    ctx.getDataToBeSigned().getName()));
+            }
 
             LOG.info("Added XML and XSLT files as PDF attachments in {} ms", System.currentTimeMillis() - t0);
         } catch (IOException e) {
@@ -130,6 +97,63 @@ public class PdfSourceAttachmentService implements SourceAttachmentService {
         }
     }
 
+
+    /**
+     * Adds the XML and XSLT files as attachments to the PDF document, and flags the document catalog for
+     * being saved incrementally
+     * @param ctx the {@link TransformationContext}
+     * @param pdDocument the PDF document
+     */
+    private void addAttachments(TransformationContext ctx, PDDocument pdDocument) throws IOException, NemLogInException {
+
+        XmlSignersDocument sd = (XmlSignersDocument)ctx.getSignersDocument();
+
+        // XML file
+        PDComplexFileSpecification xmlFile = createAttachmentFile(
+            pdDocument,
+            sd.getName(),
+            sd.getData(),
+            sd.getFile().getCreationTime(),
+            "text/xml");
+
+        // XSLT file
+        PDComplexFileSpecification xsltFile = createAttachmentFile(
+            pdDocument,
+            SigningUtils.fileName(sd.getXsltFile().getName(), "xsl"),
+            sd.getXsltData(),
+            sd.getXsltFile().getCreationTime(),
+            "text/xsl");
+
+
+        // Add the attachments to a map, and add map to a files name node
+        Map<String, PDComplexFileSpecification> efMap = new HashMap<>();
+        efMap.put(ATTACHMENT_XML_NAME, xmlFile);
+        efMap.put(ATTACHMENT_XSL_NAME, xsltFile);
+        var efTree = new PDEmbeddedFilesNameTreeNode();
+        efTree.setNames( efMap );
+        efTree.getCOSObject().removeItem(COSName.LIMITS);
+
+        // attachments are stored as part of the "names" dictionary in the document catalog
+        var namesDictionary = new PDDocumentNameDictionary(pdDocument.getDocumentCatalog());
+        namesDictionary.setEmbeddedFiles(efTree);
+        pdDocument.getDocumentCatalog().setNames(namesDictionary);
+        efTree.getCOSObject().removeItem(COSName.LIMITS);
+
+        // then change producer - so it is possible to trace which SignSDK has modified this PDF
+        PDDocumentInformation documentInformation = pdDocument.getDocumentInformation();
+        // handle documents without any document information (by creating one)
+        if (documentInformation == null) {
+            documentInformation = new PDDocumentInformation();
+            documentInformation.setCreationDate(Calendar.getInstance());
+            pdDocument.setDocumentInformation(documentInformation);
+        }
+        documentInformation.setProducer(SignSDKVersion.getProducer());
+        documentInformation.setModificationDate(Calendar.getInstance());
+
+        // saveIncremental will only update if setNeedToBeUpdated is set
+        pdDocument.getDocumentCatalog().getCOSObject().setNeedToBeUpdated(true);
+    }
+
     /**
      * Creates a {@link PDComplexFileSpecification} file attachment
      * @param pdDocument the PDF document
@@ -3,6 +3,8 @@ package dk.gov.nemlogin.signing.pades.signature;
 import dk.gov.nemlogin.signing.exceptions.TransformationException;
 import dk.gov.nemlogin.signing.format.SignatureFormat;
 import dk.gov.nemlogin.signing.model.DataToBeSigned.PadesDataToBeSigned;
+import dk.gov.nemlogin.signing.pades.util.PdfDocumentLoader;
+import dk.gov.nemlogin.signing.pades.util.PdfDocumentSession;
 import dk.gov.nemlogin.signing.service.SignatureStamperService;
 import dk.gov.nemlogin.signing.service.TransformationContext;
 import dk.gov.nemlogin.signing.util.SignSDKVersion;
@@ -21,6 +23,7 @@ import org.slf4j.LoggerFactory;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.security.DigestOutputStream;
 import java.util.Base64;
 import java.util.Calendar;
 import java.util.List;
@@ -66,9 +69,14 @@ public class PdfSignatureStamperService implements SignatureStamperService {
         long t0 = System.currentTimeMillis();
         LOG.debug("Start pre-signing PDF");
 
+        // In single-session mode, the PDF has already been loaded (and modified) by the PdfSourceAttachmentService
+        var session = PdfDocumentSession.detach(ctx);
+
+        // For SP flow, the dtbsDigest is computed from the PDF bytes as they are written by PDFBox
+        var dtbsDigester = ctx.newDtbsDigester();
+
         try (var outputStream = new ByteArrayOutputStream();
-             var is = ctx.getDataToBeSigned().dataInputStream();
-             var pdDocument = PDDocument.load(is)) {
+             var pdDocument = session != null ? session.getDocument() : loadDocument(ctx)) {
 
             // First check that the PDF does not already contain a Signature Dictionary
             checkNoExistingSignatures(ctx, pdDocument);
@@ -78,11 +86,14 @@ public class PdfSignatureStamperService implements SignatureStamperService {
             documentInformation.setProducer(SignSDKVersion.getProducer());
             documentInformation.setModificationDate(Calendar.getInstance());
 
-            CMSSignedData signature = signDocumentAndReturnDigest(ctx, outputStream, pdDocument);
+            CMSSignedData signature = signDocumentAndReturnDigest(
+                ctx,
+                dtbsDigester != null ? new DigestOutputStream(outputStream, dtbsDigester) : outputStream,
+                pdDocument);
 
             // Update the DTBS PDF document
             byte[] signedPDF = outputStream.toByteArray();
-            ctx.setDataToBeSigned(new PadesDataToBeSigned(signedPDF, ctx.getDataToBeSigned().getName()));
+            ctx.setDataToBeSigned(new PadesDataToBeSigned(signedPDF, ctx.getDataToBeSigned().getName()), dtbsDigester);
 
             // Update the signature parameters with the CMS SignerInfo element
             var signerInfo = Base64.getEncoder().encodeToString(signature.getEncoded());
@@ -98,6 +109,16 @@ public class PdfSignatureStamperService implements SignatureStamperService {
     }
 
 
+    /**
+     * Loads the DTBS PDF document according to the PDF memory policy
+     * @param ctx the current {@link TransformationContext}
+     * @return in-memory representation of the DTBS PDF document
+     */
+    private PDDocument loadDocument(TransformationContext ctx) throws IOException, TransformationException {
+        return PdfDocumentLoader.load(ctx);
+    }
+
+
     /**
      * Checks and throws an {@link TransformationException} if the PDF already contains a Signature Dictionary
      * @param ctx the current {@link TransformationContext}
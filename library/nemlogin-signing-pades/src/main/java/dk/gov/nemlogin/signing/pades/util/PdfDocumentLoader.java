@@ -0,0 +1,32 @@
+package dk.gov.nemlogin.signing.pades.util;
+
+import dk.gov.nemlogin.signing.exceptions.TransformationException;
+import dk.gov.nemlogin.signing.model.PdfMemoryPolicy;
+import dk.gov.nemlogin.signing.service.TransformationContext;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.IOException;
+
+/**
+ * Loads the DTBS PDF document according to the {@link PdfMemoryPolicy} of the transformation,
+ * i.e. either in main memory, or partially or fully buffered in a temporary file.
+ */
+public final class PdfDocumentLoader {
+
+    private PdfDocumentLoader() {
+    }
+
+
+    /**
+     * Loads the DTBS PDF document.
+     * Any temporary file is deleted when the document is closed.
+     *
+     * @param ctx the {@link TransformationContext}
+     * @return the loaded PDF document
+     */
+    public static PDDocument load(TransformationContext ctx) throws IOException, TransformationException {
+        try (var is = ctx.getDataToBeSigned().dataInputStream()) {
+            return PDDocument.load(is, PdfMemoryPolicy.of(ctx).toMemoryUsageSetting());
+        }
+    }
+}
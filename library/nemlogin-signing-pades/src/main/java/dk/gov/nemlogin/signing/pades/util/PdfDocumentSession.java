@@ -0,0 +1,110 @@
+package dk.gov.nemlogin.signing.pades.util;
+
+import dk.gov.nemlogin.signing.exceptions.TransformationException;
+import dk.gov.nemlogin.signing.model.DataToBeSigned;
+import dk.gov.nemlogin.signing.service.TransformationContext;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Keeps a single parsed {@link PDDocument} open across the PAdES pipeline steps, i.e. from attaching source files
+ * to pre-signing the DTBS, so that the PDF is only parsed once and saved incrementally once.
+ * <p>
+ * The session mode is enabled by setting the "nemlogin.signing.pades.single-session" transformation property
+ * to "true". When enabled, the {@code PdfSourceAttachmentService} does not save the PDF, but leaves the modified
+ * document in the session, and the {@code PdfSignatureStamperService} adds the signature dictionary to the same
+ * document, and saves both changes in a single incremental update.
+ * <p>
+ * The session is bound to the DTBS it was loaded from. If the DTBS is replaced in the meantime, the session is
+ * discarded.
+ */
+public class PdfDocumentSession implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PdfDocumentSession.class);
+
+    public static final String KEY_SINGLE_SESSION = "nemlogin.signing.pades.single-session";
+    private static final String SESSION_ATTRIBUTE = PdfDocumentSession.class.getName();
+
+    private final DataToBeSigned dataToBeSigned;
+    private final PDDocument document;
+
+
+    /** Constructor **/
+    private PdfDocumentSession(DataToBeSigned dataToBeSigned, PDDocument document) {
+        this.dataToBeSigned = dataToBeSigned;
+        this.document = document;
+    }
+
+
+    /**
+     * Returns if the single-session mode is enabled by the transformation properties
+     * @param ctx the {@link TransformationContext}
+     * @return if the single-session mode is enabled
+     */
+    public static boolean isEnabled(TransformationContext ctx) {
+        return ctx.getTransformationProperties() != null &&
+            "true".equalsIgnoreCase(ctx.getTransformationProperties().getProperty(KEY_SINGLE_SESSION, "false"));
+    }
+
+
+    /**
+     * Returns the open session for the current DTBS, or opens a new session by loading the current DTBS.
+     * The session is stored in the {@link TransformationContext}.
+     *
+     * @param ctx the {@link TransformationContext}
+     * @return the session for the current DTBS
+     */
+    public static PdfDocumentSession open(TransformationContext ctx) throws IOException, TransformationException {
+        var session = detach(ctx);
+        if (session == null) {
+            session = new PdfDocumentSession(ctx.getDataToBeSigned(), PdfDocumentLoader.load(ctx));
+        }
+        ctx.setAttribute(SESSION_ATTRIBUTE, session);
+        return session;
+    }
+
+
+    /**
+     * Removes and returns the open session for the current DTBS from the {@link TransformationContext}.
+     * Returns null if there is no open session, or if the DTBS has been replaced since the session was opened,
+     * in which case the stale session is closed.
+     * <p>
+     * The caller is responsible for closing the returned session.
+     *
+     * @param ctx the {@link TransformationContext}
+     * @return the open session for the current DTBS, or null
+     */
+    public static PdfDocumentSession detach(TransformationContext ctx) {
+        var session = ctx.getAttribute(SESSION_ATTRIBUTE, PdfDocumentSession.class);
+        ctx.removeAttribute(SESSION_ATTRIBUTE);
+        if (session != null && session.dataToBeSigned != ctx.getDataToBeSigned()) {
+            LOG.debug("Discarding PDF document session for replaced DTBS");
+            session.close();
+            session = null;
+        }
+        return session;
+    }
+
+
+    /**
+     * Returns the open PDF document
+     * @return the open PDF document
+     */
+    public PDDocument getDocument() {
+        return document;
+    }
+
+
+    /** Closes the PDF document **/
+    @Override
+    public void close() {
+        try {
+            document.close();
+        } catch (IOException e) {
+            LOG.warn("Error closing PDF document session", e);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package dk.gov.nemlogin.signing.pdf;
+
+import com.openhtmltopdf.pdfboxout.PDFontSupplier;
+import dk.gov.nemlogin.signing.util.BoundedCache;
+import dk.gov.nemlogin.signing.util.SigningUtils;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.stream.Stream;
+
+import static org.apache.pdfbox.pdmodel.font.PDType1Font.COURIER;
+import static org.apache.pdfbox.pdmodel.font.PDType1Font.COURIER_BOLD;
+import static org.apache.pdfbox.pdmodel.font.PDType1Font.COURIER_BOLD_OBLIQUE;
+import static org.apache.pdfbox.pdmodel.font.PDType1Font.COURIER_OBLIQUE;
+import static org.apache.pdfbox.pdmodel.font.PDType1Font.HELVETICA;
+import static org.apache.pdfbox.pdmodel.font.PDType1Font.HELVETICA_BOLD;
+import static org.apache.pdfbox.pdmodel.font.PDType1Font.HELVETICA_BOLD_OBLIQUE;
+import static org.apache.pdfbox.pdmodel.font.PDType1Font.HELVETICA_OBLIQUE;
+import static org.apache.pdfbox.pdmodel.font.PDType1Font.SYMBOL;
+import static org.apache.pdfbox.pdmodel.font.PDType1Font.TIMES_BOLD;
+import static org.apache.pdfbox.pdmodel.font.PDType1Font.TIMES_BOLD_ITALIC;
+import static org.apache.pdfbox.pdmodel.font.PDType1Font.TIMES_ITALIC;
+import static org.apache.pdfbox.pdmodel.font.PDType1Font.TIMES_ROMAN;
+import static org.apache.pdfbox.pdmodel.font.PDType1Font.ZAPF_DINGBATS;
+
+/**
+ * Process-wide registry of the fonts used for HTML -> PDF transformations.
+ * <p>
+ * Embedded fonts are loaded once per font path, rather than once per generated PDF, and their data is shared
+ * between all PDFs. The font data is also cached by its SHA-256 hash, so that the same font configured using
+ * different paths is only held in memory once. The suppliers of the 14 standard PDF fonts are created once.
+ * <p>
+ * The cache can be configured using the following system properties:
+ * <ul>
+ *     <li>"nemlogin.signing.pdf-generator.font-cache.max-size": Max number of cached fonts. Default 50.</li>
+ *     <li>"nemlogin.signing.pdf-generator.font-cache.ttl-seconds": Time-to-live of cached fonts. Default 3600.
+ *         A value of 0 disables expiry.</li>
+ * </ul>
+ */
+public class FontRegistry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FontRegistry.class);
+
+    public static final String MAX_SIZE_PROPERTY = "nemlogin.signing.pdf-generator.font-cache.max-size";
+    public static final String TTL_SECONDS_PROPERTY = "nemlogin.signing.pdf-generator.font-cache.ttl-seconds";
+
+    /** 14 standard PDF fonts **/
+    private static final PDType1Font[] DEFAULT_PDF_FONTS = {
+        TIMES_ROMAN, TIMES_BOLD, TIMES_ITALIC, TIMES_BOLD_ITALIC,
+        HELVETICA, HELVETICA_BOLD, HELVETICA_OBLIQUE, HELVETICA_BOLD_OBLIQUE,
+        COURIER, COURIER_BOLD, COURIER_OBLIQUE, COURIER_BOLD_OBLIQUE,
+        SYMBOL, ZAPF_DINGBATS
+    };
+
+    /** The suppliers of the 14 standard PDF fonts. The fonts are not bound to a PDF document, and can be shared **/
+    private static final PDFontSupplier[] DEFAULT_PDF_FONT_SUPPLIERS = Stream.of(DEFAULT_PDF_FONTS)
+        .map(PDFontSupplier::new)
+        .toArray(PDFontSupplier[]::new);
+
+    private static final FontRegistry INSTANCE = new FontRegistry(
+        Integer.getInteger(MAX_SIZE_PROPERTY, 50),
+        Duration.ofSeconds(Long.getLong(TTL_SECONDS_PROPERTY, 3600L)));
+
+    /** Maps font paths to the SHA-256 hash of the font data **/
+    private final BoundedCache<String, String> hashesByPath;
+
+    /** Maps the SHA-256 hash of the font data to the font data **/
+    private final BoundedCache<String, byte[]> fontsByHash;
+
+
+    /**
+     * Constructor
+     * @param maxSize the max number of cached fonts
+     * @param ttl the time-to-live of cached fonts
+     */
+    public FontRegistry(int maxSize, Duration ttl) {
+        this.hashesByPath = new BoundedCache<>(maxSize, ttl);
+        this.fontsByHash = new BoundedCache<>(maxSize, ttl);
+    }
+
+
+    /**
+     * Returns the process-wide font registry
+     * @return the process-wide font registry
+     */
+    public static FontRegistry getInstance() {
+        return INSTANCE;
+    }
+
+
+    /**
+     * Returns the 14 standard PDF fonts
+     * @return the 14 standard PDF fonts
+     */
+    public static PDType1Font[] getDefaultPdfFonts() {
+        return DEFAULT_PDF_FONTS.clone();
+    }
+
+
+    /**
+     * Returns the shared suppliers of the 14 standard PDF fonts, in the same order as {@link #getDefaultPdfFonts()}
+     * @return the shared suppliers of the 14 standard PDF fonts
+     */
+    public static PDFontSupplier[] getDefaultPdfFontSuppliers() {
+        return DEFAULT_PDF_FONT_SUPPLIERS.clone();
+    }
+
+
+    /**
+     * Returns the data of the font with the given path, loading it if not cached.
+     * <p>
+     * NB: The returned array is shared, and must not be modified.
+     *
+     * @param fontPath the font path, prefixed by a protocol like "classpath:" or "file:"
+     * @return the font data
+     */
+    public byte[] getFont(String fontPath) throws IOException {
+        var hash = hashesByPath.get(fontPath);
+        var font = hash == null ? null : fontsByHash.get(hash);
+        if (font == null) {
+            long t0 = System.currentTimeMillis();
+            font = SigningUtils.loadBytesByProtocol(fontPath);
+            hash = SigningUtils.sha256(font);
+            var cachedFont = fontsByHash.get(hash);
+            if (cachedFont != null) {
+                font = cachedFont;
+            } else {
+                fontsByHash.put(hash, font);
+            }
+            hashesByPath.put(fontPath, hash);
+            LOG.debug("Loaded font {} in {} ms", fontPath, System.currentTimeMillis() - t0);
+        }
+        return font;
+    }
+
+
+    /**
+     * Returns the underlying font data cache, e.g. for inspecting hit/miss statistics
+     * @return the underlying font data cache
+     */
+    public BoundedCache<String, byte[]> getCache() {
+        return fontsByHash;
+    }
+
+
+    /** Removes all cached fonts **/
+    public void clear() {
+        hashesByPath.clear();
+        fontsByHash.clear();
+    }
+}
@@ -13,6 +13,7 @@ import dk.gov.nemlogin.signing.model.ValidTransformation;
 import dk.gov.nemlogin.signing.service.FormatTransformationService;
 import dk.gov.nemlogin.signing.service.TransformationContext;
 import dk.gov.nemlogin.signing.util.SigningUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
 import org.jsoup.Jsoup;
 import org.jsoup.helper.W3CDom;
 import org.slf4j.Logger;
@@ -21,7 +22,6 @@ import org.slf4j.LoggerFactory;
 import java.io.ByteArrayOutputStream;
 
 import static dk.gov.nemlogin.signing.exceptions.ErrorCode.SDK007;
-import static dk.gov.nemlogin.signing.util.SignSDKVersion.getProducer;
 
 /**
  * Implementation of the {@link FormatTransformationService} interface,
@@ -55,35 +55,61 @@ public class Html2PdfFormatTransformationService implements FormatTransformation
     }
 
 
-    /** {@inheritDoc} **/
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The PDF is rendered on the bounded {@link PdfRenderExecutor}, unless it has been disabled.
+     **/
     @Override
     public void transform(TransformationContext ctx) throws TransformationException {
 
         long t0 = System.currentTimeMillis();
         var sd = ctx.getSignersDocument();
-        var transformationPropertyHandler = new TransformationPropertiesHandler(ctx);
 
         LOG.debug("Start transforming {} from HTML to PDF", sd.getName());
 
         try {
-            var html = sd.dataAsText();
+            var renderExecutor = PdfRenderExecutor.getInstance();
+            byte[] pdf = renderExecutor == null
+                ? renderPdf(ctx)
+                : renderExecutor.render(ctx, () -> renderPdf(ctx));
 
-            org.jsoup.nodes.Document htmlDoc = Jsoup.parse(html);
+            DataToBeSigned dtbs = new PadesDataToBeSigned(
+                pdf,
+                SigningUtils.fileName(sd.getName(), ".pdf"));
+            ctx.setDataToBeSigned(dtbs);
+
+            LOG.info("Transformed {} from HTML to PDF in {} ms", sd.getName(), System.currentTimeMillis() - t0);
+
+        } catch (Exception e) {
+            throw new TransformationException(
+                SDK007,
+                ctx,
+                "Error transforming " + sd.getName() + " from HTML to PDF: " + e.getMessage(), e);
+        }
+    }
 
-            // If defined, add a CSS style element to control page size, margin, etc.
-            var pageStyle = transformationPropertyHandler.getPageStyle();
 
-            // The "Open HTML to PDF" library has a mildly neurotic font-handling behaviour.
-            // To avoid problems, we specify fonts for body and <pre> (used e.g. for monospace plain-text SDs),
-            // both of which can be overridden using transformation properties.
-            // Furthermore, add css-styles to ensure that long words do not get cropped, but wrapped to the next line.
-            var bodyStyle = String.format("body { font: %s; word-wrap: break-word; }",
-                transformationPropertyHandler.getBodyFont());
-            var monospaceStyle = String.format("pre { font: %s; word-wrap: break-word; white-space: pre-wrap; }",
-                transformationPropertyHandler.getMonospaceFont());
+    /**
+     * Renders the HTML SD as a PDF
+     *
+     * @param ctx the {@link TransformationContext}
+     * @return the rendered PDF
+     */
+    private byte[] renderPdf(TransformationContext ctx) throws Exception {
+        var transformationPropertyHandler = new TransformationPropertiesHandler(ctx);
+
+        // The PDF document is buffered according to the PDF memory policy
+        try (var pdDocument = new PDDocument(transformationPropertyHandler.getMemoryUsageSetting())) {
+            var html = ctx.getSignersDocument().dataAsText();
+
+            // The cached renderer configuration of the transformation properties
+            var renderProfile = RenderProfile.of(ctx);
+
+            org.jsoup.nodes.Document htmlDoc = Jsoup.parse(html);
 
-            var style = String.format("<style>%n%s%n%s%n%s</style>", pageStyle, bodyStyle, monospaceStyle);
-            htmlDoc.head().prepend(style);
+            // Add a CSS style element to control page size, margin, fonts, etc.
+            htmlDoc.head().prepend(renderProfile.getStyle());
 
             // Parse HTML as xhtml
             var xhtmlDoc = new W3CDom().fromJsoup(htmlDoc);
@@ -92,31 +118,20 @@ public class Html2PdfFormatTransformationService implements FormatTransformation
             var result = new ByteArrayOutputStream();
             var pdfRendererBuilder = new PdfRendererBuilder()
                 .useFastMode()
+                .usePDDocument(pdDocument)
                 .withW3cDocument(xhtmlDoc, "/")
                 .usePdfAConformance(PDF_A_2_BASIC)
                 .usePdfVersion(PDF_VERSION_1_7)
-                .withProducer(getProducer())
                 .toStream(result);
 
             // Update the PDF renderer according to transformation properties.
-            // Updates fonts and color profile
-            transformationPropertyHandler.applyProperties(pdfRendererBuilder);
+            // Updates fonts, color profile and producer
+            renderProfile.apply(pdfRendererBuilder);
 
             // Create the PDF
             pdfRendererBuilder.run();
 
-            DataToBeSigned dtbs = new PadesDataToBeSigned(
-                result.toByteArray(),
-                SigningUtils.fileName(sd.getName(), ".pdf"));
-            ctx.setDataToBeSigned(dtbs);
-
-            LOG.info("Transformed {} from HTML to PDF in {} ms", sd.getName(), System.currentTimeMillis() - t0);
-
-        } catch (Exception e) {
-            throw new TransformationException(
-                SDK007,
-                ctx,
-                "Error transforming " + sd.getName() + " from HTML to PDF: " + e.getMessage(), e);
+            return result.toByteArray();
         }
     }
 
@@ -0,0 +1,298 @@
+package dk.gov.nemlogin.signing.pdf;
+
+import dk.gov.nemlogin.signing.exceptions.TransformationException;
+import dk.gov.nemlogin.signing.service.TransformationContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static dk.gov.nemlogin.signing.exceptions.ErrorCode.SDK007;
+
+/**
+ * Bounded executor used for rendering PDFs from HTML.
+ * <p>
+ * Rendering is the most CPU- and memory-intensive step of the signing pipeline, so the renders are run on a fixed
+ * number of dedicated worker threads, rather than on the calling threads. At most "queue-capacity" renders may
+ * wait for a worker. When the queue is full, new renders either fail immediately ("reject" policy), or wait up to
+ * "wait-timeout-seconds" for a queue slot ("wait" policy). The time spent waiting for a worker is recorded, and
+ * available via {@link #getTotalQueueTimeNanos()} and {@link #getMaxQueueTimeNanos()}.
+ * <p>
+ * The process-wide executor can be configured using the following system properties,
+ * all prefixed by "nemlogin.signing.pdf-generator.render-executor.":
+ * <ul>
+ *     <li>"enabled": Whether to render on the executor. If false, renders run on the calling thread. Default true.</li>
+ *     <li>"threads": Number of worker threads. Default the number of available processors.</li>
+ *     <li>"queue-capacity": Max number of renders waiting for a worker. Default 100.</li>
+ *     <li>"policy": Either "wait" or "reject". Default "wait".</li>
+ *     <li>"wait-timeout-seconds": Max time to wait for a queue slot using the "wait" policy. Default 60.</li>
+ * </ul>
+ */
+public class PdfRenderExecutor implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PdfRenderExecutor.class);
+
+    public static final String KEY_PREFIX                  = "nemlogin.signing.pdf-generator.render-executor.";
+    public static final String ENABLED_PROPERTY            = KEY_PREFIX + "enabled";
+    public static final String THREADS_PROPERTY            = KEY_PREFIX + "threads";
+    public static final String QUEUE_CAPACITY_PROPERTY     = KEY_PREFIX + "queue-capacity";
+    public static final String POLICY_PROPERTY             = KEY_PREFIX + "policy";
+    public static final String WAIT_TIMEOUT_PROPERTY       = KEY_PREFIX + "wait-timeout-seconds";
+
+    /** Defines what happens to new renders when the queue is full **/
+    public enum Policy {
+        /** Fail the render immediately **/
+        REJECT,
+        /** Wait for a queue slot, up to the wait timeout **/
+        WAIT
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final Semaphore slots;
+    private final Policy policy;
+    private final long waitTimeoutMillis;
+
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong totalQueueTimeNanos = new AtomicLong();
+    private final AtomicLong maxQueueTimeNanos = new AtomicLong();
+
+
+    /**
+     * Constructor
+     * @param threads the number of worker threads
+     * @param queueCapacity the max number of renders waiting for a worker
+     * @param policy what happens to new renders when the queue is full
+     * @param waitTimeoutMillis the max time to wait for a queue slot using the {@link Policy#WAIT} policy
+     */
+    public PdfRenderExecutor(int threads, int queueCapacity, Policy policy, long waitTimeoutMillis) {
+        if (threads < 1 || queueCapacity < 0) {
+            throw new IllegalArgumentException("Invalid render executor size: " + threads + " threads, queue " + queueCapacity);
+        }
+        var threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = r -> {
+            var thread = new Thread(r, "nemlogin-signing-pdf-render-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        // The queue itself is unbounded, since the number of queued renders is bounded by the slots
+        this.executor = new ThreadPoolExecutor(
+            threads,
+            threads,
+            60L,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            threadFactory);
+        this.executor.allowCoreThreadTimeOut(true);
+        this.slots = new Semaphore(threads + queueCapacity);
+        this.policy = policy;
+        this.waitTimeoutMillis = waitTimeoutMillis;
+    }
+
+
+    /**
+     * Returns the process-wide render executor, as configured by system properties,
+     * or null if rendering on the executor has been disabled
+     * @return the process-wide render executor, or null if disabled
+     */
+    public static PdfRenderExecutor getInstance() {
+        return Holder.INSTANCE;
+    }
+
+
+    /**
+     * Renders the PDF on a worker thread, blocking the calling thread until the PDF has been rendered
+     *
+     * @param ctx the {@link TransformationContext}
+     * @param render renders the PDF
+     * @return the rendered PDF
+     */
+    public byte[] render(TransformationContext ctx, Callable<byte[]> render) throws TransformationException {
+        acquireSlot(ctx);
+
+        // The slot is released once, either when the render completes, or when it is cancelled before starting,
+        // or rejected. Once started, the slot is held until the render has actually completed.
+        var started = new AtomicBoolean();
+        var slotReleased = new AtomicBoolean();
+        Runnable releaseSlot = () -> {
+            if (slotReleased.compareAndSet(false, true)) {
+                slots.release();
+            }
+        };
+
+        long queued = System.nanoTime();
+        Future<byte[]> future;
+        try {
+            future = executor.submit(() -> {
+                if (!started.compareAndSet(false, true)) {
+                    return null;
+                }
+                recordQueueTime(System.nanoTime() - queued);
+                try {
+                    return render.call();
+                } finally {
+                    // Release the slot first, so that a completed render has always freed its slot
+                    releaseSlot.run();
+                    completedCount.incrementAndGet();
+                }
+            });
+        } catch (RuntimeException e) {
+            releaseSlot.run();
+            rejectedCount.incrementAndGet();
+            throw new TransformationException(SDK007, ctx, "PDF render executor rejected render: " + e.getMessage(), e);
+        }
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            // A started render is interrupted, and releases the slot itself once it stops running
+            future.cancel(true);
+            if (started.compareAndSet(false, true)) {
+                releaseSlot.run();
+            }
+            Thread.currentThread().interrupt();
+            throw new TransformationException(SDK007, ctx, "Interrupted whilst rendering PDF", e);
+        } catch (ExecutionException e) {
+            var cause = e.getCause();
+            if (cause instanceof TransformationException) {
+                throw (TransformationException) cause;
+            }
+            throw new TransformationException(SDK007, ctx, "Error rendering PDF: " + cause.getMessage(), cause);
+        }
+    }
+
+
+    /**
+     * Acquires a slot for a new render according to the policy
+     * @param ctx the {@link TransformationContext}
+     */
+    private void acquireSlot(TransformationContext ctx) throws TransformationException {
+        boolean acquired;
+        try {
+            acquired = policy == Policy.WAIT
+                ? slots.tryAcquire(waitTimeoutMillis, TimeUnit.MILLISECONDS)
+                : slots.tryAcquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransformationException(SDK007, ctx, "Interrupted whilst waiting for PDF render queue", e);
+        }
+        if (!acquired) {
+            rejectedCount.incrementAndGet();
+            throw new TransformationException(SDK007, ctx, "PDF render queue is full");
+        }
+    }
+
+
+    /** Records the time a render has waited for a worker **/
+    private void recordQueueTime(long queueTimeNanos) {
+        totalQueueTimeNanos.addAndGet(queueTimeNanos);
+        maxQueueTimeNanos.accumulateAndGet(queueTimeNanos, Math::max);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("PDF render waited for worker in {} ms", TimeUnit.NANOSECONDS.toMillis(queueTimeNanos));
+        }
+    }
+
+
+    /** Returns the number of renders waiting for a worker **/
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+
+    /** Returns the number of renders currently running **/
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+
+    /** Returns the number of completed renders, successful or not **/
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+
+    /** Returns the number of renders rejected because the queue was full **/
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+
+    /** Returns the total time renders have waited for a worker, in nanoseconds **/
+    public long getTotalQueueTimeNanos() {
+        return totalQueueTimeNanos.get();
+    }
+
+
+    /** Returns the max time a render has waited for a worker, in nanoseconds **/
+    public long getMaxQueueTimeNanos() {
+        return maxQueueTimeNanos.get();
+    }
+
+
+    /** {@inheritDoc} **/
+    @Override
+    public String toString() {
+        return String.format("queued=%d, active=%d, completed=%d, rejected=%d, maxQueueTimeMs=%d",
+            getQueueSize(), getActiveCount(), getCompletedCount(), getRejectedCount(),
+            TimeUnit.NANOSECONDS.toMillis(getMaxQueueTimeNanos()));
+    }
+
+
+    /** Shuts down the executor. Already queued renders are completed **/
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+
+    /**
+     * Lazily creates the process-wide render executor
+     */
+    private static class Holder {
+        private static final PdfRenderExecutor INSTANCE =
+            "false".equalsIgnoreCase(System.getProperty(ENABLED_PROPERTY, "true"))
+                ? null
+                : create();
+
+        /**
+         * Creates the render executor configured by the system properties.
+         * Invalid properties are logged rather than thrown, and the defaults are used instead.
+         */
+        private static PdfRenderExecutor create() {
+            int defaultThreads = Runtime.getRuntime().availableProcessors();
+            int threads = Integer.getInteger(THREADS_PROPERTY, defaultThreads);
+            int queueCapacity = Integer.getInteger(QUEUE_CAPACITY_PROPERTY, 100);
+            if (threads < 1 || queueCapacity < 0) {
+                LOG.error("Invalid render executor size: {} threads, queue {}. Using the defaults", threads, queueCapacity);
+                threads = defaultThreads;
+                queueCapacity = 100;
+            }
+            return new PdfRenderExecutor(
+                threads,
+                queueCapacity,
+                parsePolicy(System.getProperty(POLICY_PROPERTY, "wait")),
+                TimeUnit.SECONDS.toMillis(Long.getLong(WAIT_TIMEOUT_PROPERTY, 60L)));
+        }
+
+        /** Parses the policy, falling back to the "wait" policy if invalid **/
+        private static Policy parsePolicy(String policy) {
+            try {
+                return Policy.valueOf(policy.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                LOG.error("Invalid \"{}\" system property: {}. Using the \"wait\" policy", POLICY_PROPERTY, policy);
+                return Policy.WAIT;
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package dk.gov.nemlogin.signing.pdf;
+
+import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
+import dk.gov.nemlogin.signing.exceptions.TransformationException;
+import dk.gov.nemlogin.signing.service.TransformationContext;
+import dk.gov.nemlogin.signing.util.BoundedCache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import static dk.gov.nemlogin.signing.pdf.TransformationPropertiesHandler.KEY_PREFIX;
+import static dk.gov.nemlogin.signing.util.SignSDKVersion.getProducer;
+
+/**
+ * The precompiled HTML -> PDF renderer configuration of a set of "nemlogin.signing.pdf-generator." transformation
+ * properties, i.e. the injected CSS styles, the color profile and the font registrations.
+ * <p>
+ * Render profiles are cached process-wide by the "nemlogin.signing.pdf-generator." transformation properties,
+ * so the properties are only evaluated, and the color profile only loaded, once per distinct set of properties.
+ * Render profiles do not reference the {@link TransformationContext} they were created from.
+ * <p>
+ * The cache can be configured using the following system properties:
+ * <ul>
+ *     <li>"nemlogin.signing.pdf-generator.profile-cache.max-size": Max number of cached profiles. Default 20.</li>
+ *     <li>"nemlogin.signing.pdf-generator.profile-cache.ttl-seconds": Time-to-live of cached profiles.
+ *         Default 3600. A value of 0 disables expiry.</li>
+ * </ul>
+ */
+public class RenderProfile {
+
+    public static final String MAX_SIZE_PROPERTY = "nemlogin.signing.pdf-generator.profile-cache.max-size";
+    public static final String TTL_SECONDS_PROPERTY = "nemlogin.signing.pdf-generator.profile-cache.ttl-seconds";
+
+    private static final BoundedCache<String, RenderProfile> CACHE = new BoundedCache<>(
+        Integer.getInteger(MAX_SIZE_PROPERTY, 20),
+        Duration.ofSeconds(Long.getLong(TTL_SECONDS_PROPERTY, 3600L)));
+
+    private final String style;
+    private final byte[] colorProfile;
+    private final List<Consumer<PdfRendererBuilder>> fonts;
+
+
+    /** Constructor **/
+    private RenderProfile(String style, byte[] colorProfile, List<Consumer<PdfRendererBuilder>> fonts) {
+        this.style = style;
+        this.colorProfile = colorProfile;
+        this.fonts = fonts;
+    }
+
+
+    /**
+     * Returns the cached render profile of the transformation properties, creating it if not cached
+     *
+     * @param ctx the {@link TransformationContext}
+     * @return the render profile of the transformation properties
+     */
+    public static RenderProfile of(TransformationContext ctx) throws TransformationException {
+        return CACHE.get(cacheKey(ctx.getTransformationProperties()), () -> create(ctx));
+    }
+
+
+    /**
+     * Returns the cache key of the properties, i.e. the sorted "nemlogin.signing.pdf-generator." properties.
+     * <p>
+     * Each key and value is prefixed by its length, so that the cache key is unambiguous
+     * regardless of the characters used in the property values.
+     *
+     * @param properties the transformation properties
+     * @return the cache key of the properties
+     */
+    static String cacheKey(Properties properties) {
+        var pdfProperties = new TreeMap<String, String>();
+        if (properties != null) {
+            for (String key : properties.stringPropertyNames()) {
+                if (key.startsWith(KEY_PREFIX)) {
+                    pdfProperties.put(key, properties.getProperty(key));
+                }
+            }
+        }
+        var cacheKey = new StringBuilder();
+        pdfProperties.forEach((key, value) -> cacheKey
+            .append(key.length()).append(':').append(key)
+            .append(value.length()).append(':').append(value));
+        return cacheKey.toString();
+    }
+
+
+    /**
+     * Creates the render profile of the transformation properties
+     *
+     * @param ctx the {@link TransformationContext}
+     * @return the render profile of the transformation properties
+     */
+    private static RenderProfile create(TransformationContext ctx) throws TransformationException {
+        var handler = new TransformationPropertiesHandler(ctx);
+
+        // The "Open HTML to PDF" library has a mildly neurotic font-handling behaviour.
+        // To avoid problems, we specify fonts for body and <pre> (used e.g. for monospace plain-text SDs),
+        // both of which can be overridden using transformation properties.
+        // Furthermore, add css-styles to ensure that long words do not get cropped, but wrapped to the next line.
+        var bodyStyle = String.format("body { font: %s; word-wrap: break-word; }",
+            handler.getBodyFont());
+        var monospaceStyle = String.format("pre { font: %s; word-wrap: break-word; white-space: pre-wrap; }",
+            handler.getMonospaceFont());
+        var style = String.format("<style>%n%s%n%s%n%s</style>", handler.getPageStyle(), bodyStyle, monospaceStyle);
+
+        List<Consumer<PdfRendererBuilder>> fonts = new ArrayList<>();
+        if (handler.isDefaultPdfFonts()) {
+            var defaultFonts = FontRegistry.getDefaultPdfFonts();
+            var defaultFontSuppliers = FontRegistry.getDefaultPdfFontSuppliers();
+            for (var x = 0; x < defaultFonts.length; x++) {
+                var fontSupplier = defaultFontSuppliers[x];
+                var fontName = defaultFonts[x].getName();
+                fonts.add(builder -> builder.useFont(fontSupplier, fontName));
+            }
+        }
+        if (handler.isEmbeddedPdfFonts()) {
+            // Embedded fonts are lazily loaded via the font registry, and only if used.
+            // NB: Render profiles are shared between transformations, so the suppliers do not reference the context
+            handler.getEmbeddedPdfFonts().forEach((fontName, fontPath) -> {
+                var fontSupplier = new TransformationPropertiesHandler.FontSupplier(null, fontPath);
+                fonts.add(builder -> builder.useFont(fontSupplier, fontName));
+            });
+        }
+
+        return new RenderProfile(style, handler.loadColorProfile(), List.copyOf(fonts));
+    }
+
+
+    /**
+     * Returns the CSS style element to inject in the HTML
+     * @return the CSS style element to inject in the HTML
+     */
+    public String getStyle() {
+        return style;
+    }
+
+
+    /**
+     * Returns the color profile, or null if no color profile should be added.
+     * <p>
+     * NB: The returned array is shared, and must not be modified.
+     *
+     * @return the color profile, or null if no color profile should be added
+     */
+    byte[] getColorProfile() {
+        return colorProfile;
+    }
+
+
+    /**
+     * Applies the color profile, the fonts and the producer to the {@link PdfRendererBuilder}
+     * @param pdfRendererBuilder the PDF renderer to update
+     */
+    public void apply(PdfRendererBuilder pdfRendererBuilder) {
+        if (colorProfile != null) {
+            pdfRendererBuilder.useColorProfile(colorProfile);
+        }
+        fonts.forEach(font -> font.accept(pdfRendererBuilder));
+        pdfRendererBuilder.withProducer(getProducer());
+    }
+
+
+    /**
+     * Returns the underlying render profile cache, e.g. for inspecting hit/miss statistics
+     * @return the underlying render profile cache
+     */
+    public static BoundedCache<String, RenderProfile> getCache() {
+        return CACHE;
+    }
+}
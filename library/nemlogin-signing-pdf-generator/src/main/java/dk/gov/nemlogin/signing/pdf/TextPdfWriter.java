@@ -0,0 +1,590 @@
+package dk.gov.nemlogin.signing.pdf;
+
+import dk.gov.nemlogin.signing.exceptions.TransformationException;
+import dk.gov.nemlogin.signing.service.TransformationContext;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDMetadata;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.color.PDOutputIntent;
+import org.apache.xmpbox.XMPMetadata;
+import org.apache.xmpbox.type.BadFieldValueException;
+import org.apache.xmpbox.xml.XmpSerializer;
+
+import javax.xml.transform.TransformerException;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static dk.gov.nemlogin.signing.util.SignSDKVersion.getProducer;
+import static org.apache.pdfbox.pdmodel.font.PDType1Font.COURIER;
+import static org.apache.pdfbox.pdmodel.font.PDType1Font.COURIER_BOLD;
+import static org.apache.pdfbox.pdmodel.font.PDType1Font.COURIER_BOLD_OBLIQUE;
+import static org.apache.pdfbox.pdmodel.font.PDType1Font.COURIER_OBLIQUE;
+import static org.apache.pdfbox.pdmodel.font.PDType1Font.HELVETICA;
+import static org.apache.pdfbox.pdmodel.font.PDType1Font.HELVETICA_BOLD;
+import static org.apache.pdfbox.pdmodel.font.PDType1Font.HELVETICA_BOLD_OBLIQUE;
+import static org.apache.pdfbox.pdmodel.font.PDType1Font.HELVETICA_OBLIQUE;
+import static org.apache.pdfbox.pdmodel.font.PDType1Font.TIMES_BOLD;
+import static org.apache.pdfbox.pdmodel.font.PDType1Font.TIMES_BOLD_ITALIC;
+import static org.apache.pdfbox.pdmodel.font.PDType1Font.TIMES_ITALIC;
+import static org.apache.pdfbox.pdmodel.font.PDType1Font.TIMES_ROMAN;
+
+/**
+ * Lays out plain text directly as PDF/A-2b pages, without generating and rendering HTML.
+ * <p>
+ * The layout mirrors the rendering of the HTML generated for plain-text SDs by
+ * {@link dk.gov.nemlogin.signing.service.impl.Txt2PdfFormatTransformationService#writeHtml},
+ * styled by the {@link RenderProfile}:
+ * <ul>
+ *     <li>Monospace SDs use the "monospace-font", preserve white-space and wrap long lines, like a &lt;pre> element
+ *         with "white-space: pre-wrap".</li>
+ *     <li>Other SDs use the "body-font", collapse white-space and wrap lines at word boundaries,
+ *         like a &lt;div> element.</li>
+ *     <li>Words longer than a line are broken, as per "word-wrap: break-word".</li>
+ * </ul>
+ * The "page-size", "page-margin", "body-font" and "monospace-font" transformation properties are supported.
+ * If the properties cannot be interpreted, e.g. if a free-style "page-style" has been defined,
+ * {@link #of(TransformationContext, boolean)} returns null, and the text should be rendered as HTML instead.
+ * Similarly, if the text contains characters not supported by the font,
+ * {@link #write(TransformationContext, BufferedReader)} throws an {@link UnsupportedCharacterException},
+ * rather than altering the text.
+ */
+class TextPdfWriter {
+
+    /** Size of a CSS pixel in points **/
+    private static final float PX = 0.75f;
+
+    /** The "medium" CSS font size, which is also the basis of relative font sizes **/
+    private static final float MEDIUM_FONT_SIZE = 16 * PX;
+
+    /** Margin of the &lt;body> element in the default HTML style sheet **/
+    private static final float BODY_MARGIN = 8 * PX;
+
+    /** The "normal" CSS line height, relative to the font size **/
+    private static final float NORMAL_LINE_HEIGHT = 1.2f;
+
+    private static final int TAB_SIZE = 8;
+    private static final float PDF_VERSION_1_7 = 1.7f;
+    private static final String SRGB = "sRGB IEC61966-2.1";
+
+    private static final Pattern LENGTH = Pattern.compile("(\\d*\\.?\\d+)(mm|cm|in|pt|pc|px|em|%)?");
+
+    /** CSS absolute font sizes in pixels **/
+    private static final Map<String, Float> FONT_SIZES = Map.of(
+        "xx-small", 9f, "x-small", 10f, "small", 13f, "medium", 16f,
+        "large", 18f, "x-large", 24f, "xx-large", 32f);
+
+    /** CSS page sizes in millimeters **/
+    private static final Map<String, float[]> PAGE_SIZES = Map.of(
+        "a5", new float[] { 148, 210 },
+        "a4", new float[] { 210, 297 },
+        "a3", new float[] { 297, 420 },
+        "b5", new float[] { 176, 250 },
+        "b4", new float[] { 250, 353 },
+        "letter", new float[] { 215.9f, 279.4f },
+        "legal", new float[] { 215.9f, 355.6f },
+        "ledger", new float[] { 279.4f, 431.8f });
+
+    /** The standard PDF font families, as regular, bold, italic and bold italic fonts **/
+    private static final PDType1Font[] HELVETICA_FAMILY = { HELVETICA, HELVETICA_BOLD, HELVETICA_OBLIQUE, HELVETICA_BOLD_OBLIQUE };
+    private static final PDType1Font[] TIMES_FAMILY = { TIMES_ROMAN, TIMES_BOLD, TIMES_ITALIC, TIMES_BOLD_ITALIC };
+    private static final PDType1Font[] COURIER_FAMILY = { COURIER, COURIER_BOLD, COURIER_OBLIQUE, COURIER_BOLD_OBLIQUE };
+    private static final Map<String, PDType1Font[]> STANDARD_FONT_FAMILIES = Map.of(
+        "helvetica", HELVETICA_FAMILY, "arial", HELVETICA_FAMILY, "sans-serif", HELVETICA_FAMILY,
+        "times", TIMES_FAMILY, "times-roman", TIMES_FAMILY, "times new roman", TIMES_FAMILY, "serif", TIMES_FAMILY,
+        "courier", COURIER_FAMILY, "courier new", COURIER_FAMILY, "monospace", COURIER_FAMILY);
+
+    private final PDRectangle pageSize;
+    private final float[] pageMargin;
+    private final PDType1Font standardFont;
+    private final String fontPath;
+    private final float fontSize;
+    private final float lineHeight;
+    private final boolean preserveWhiteSpace;
+
+
+    /** Constructor **/
+    private TextPdfWriter(PDRectangle pageSize, float[] pageMargin, PDType1Font standardFont, String fontPath,
+                          float fontSize, float lineHeight, boolean preserveWhiteSpace) {
+        this.pageSize = pageSize;
+        this.pageMargin = pageMargin;
+        this.standardFont = standardFont;
+        this.fontPath = fontPath;
+        this.fontSize = fontSize;
+        this.lineHeight = lineHeight;
+        this.preserveWhiteSpace = preserveWhiteSpace;
+    }
+
+
+    /**
+     * Returns a writer for the transformation properties, or null if the properties are not supported
+     *
+     * @param ctx the {@link TransformationContext}
+     * @param monospace whether to use the monospace font and preserve white-space
+     * @return a writer for the transformation properties, or null if not supported
+     */
+    static TextPdfWriter of(TransformationContext ctx, boolean monospace) {
+        var handler = new TransformationPropertiesHandler(ctx);
+        if (handler.isCustomPageStyle()) {
+            return null;
+        }
+        var pageSize = parsePageSize(handler.getPageSize());
+        var pageMargin = parseBox(handler.getPageMargin());
+        if (pageSize == null || pageMargin == null) {
+            return null;
+        }
+
+        // Parse the CSS font shorthand: [style] [variant] [weight] size[/line-height] family
+        var font = (monospace ? handler.getMonospaceFont() : handler.getBodyFont()).trim().split("\\s+");
+        var bold = false;
+        var italic = false;
+        var x = 0;
+        for (; x < font.length - 1; x++) {
+            var token = font[x].toLowerCase(Locale.ROOT);
+            if ("italic".equals(token) || "oblique".equals(token)) {
+                italic = true;
+            } else if ("bold".equals(token) || "bolder".equals(token) || token.matches("[6-9]00")) {
+                bold = true;
+            } else if (!token.matches("normal|small-caps|lighter|[1-5]00")) {
+                break;
+            }
+        }
+        var sizeAndLineHeight = font[x].split("/", 2);
+        var fontSize = parseFontSize(sizeAndLineHeight[0]);
+        var lineHeight = sizeAndLineHeight.length == 1
+            ? fontSize * NORMAL_LINE_HEIGHT
+            : parseLineHeight(sizeAndLineHeight[1], fontSize);
+        var family = String.join(" ", Arrays.copyOfRange(font, x + 1, font.length))
+            .split(",")[0].replaceAll("[\"']", "").trim();
+        if (Float.isNaN(fontSize) || Float.isNaN(lineHeight) || family.isEmpty()) {
+            return null;
+        }
+
+        // Embedded fonts take precedence over the standard PDF fonts
+        String fontPath = null;
+        if (handler.isEmbeddedPdfFonts()) {
+            fontPath = handler.getEmbeddedPdfFonts().entrySet().stream()
+                .filter(e -> e.getKey().equalsIgnoreCase(family))
+                .map(Map.Entry::getValue)
+                .findFirst()
+                .orElse(null);
+        }
+        var standardFamily = STANDARD_FONT_FAMILIES.get(family.toLowerCase(Locale.ROOT));
+        if (fontPath == null && standardFamily == null) {
+            return null;
+        }
+        var standardFont = fontPath != null ? null : standardFamily[(bold ? 1 : 0) + (italic ? 2 : 0)];
+
+        return new TextPdfWriter(pageSize, pageMargin, standardFont, fontPath, fontSize, lineHeight, monospace);
+    }
+
+
+    /**
+     * Lays out the lines of the text as a PDF/A-2b document
+     *
+     * @param ctx the {@link TransformationContext}
+     * @param text the text to lay out
+     * @return the PDF
+     * @throws UnsupportedCharacterException if the text contains characters not supported by the font
+     */
+    byte[] write(TransformationContext ctx, BufferedReader text) throws IOException, TransformationException {
+        var handler = new TransformationPropertiesHandler(ctx);
+        var colorProfile = RenderProfile.of(ctx).getColorProfile();
+
+        // The PDF document is buffered according to the PDF memory policy
+        try (var doc = new PDDocument(handler.getMemoryUsageSetting())) {
+            PDFont font = standardFont != null
+                ? standardFont
+                : PDType0Font.load(doc, new ByteArrayInputStream(FontRegistry.getInstance().getFont(fontPath)), true);
+
+            try (var layout = new Layout(doc, font)) {
+                String line;
+                while ((line = text.readLine()) != null) {
+                    layout.addLine(line);
+                }
+            }
+
+            addPdfAMetadata(doc, colorProfile);
+
+            var result = new ByteArrayOutputStream();
+            doc.save(result);
+            return result.toByteArray();
+        }
+    }
+
+
+    /**
+     * Adds the PDF/A-2b identification, the document information and the color profile output intent
+     *
+     * @param doc the PDF document
+     * @param colorProfile the color profile, or null if no color profile should be added
+     */
+    private static void addPdfAMetadata(PDDocument doc, byte[] colorProfile) throws IOException {
+        var created = Calendar.getInstance();
+        var producer = getProducer();
+        doc.setVersion(PDF_VERSION_1_7);
+
+        var info = doc.getDocumentInformation();
+        info.setProducer(producer);
+        info.setCreationDate(created);
+
+        var catalog = doc.getDocumentCatalog();
+        catalog.setLanguage("da");
+        try {
+            var xmp = XMPMetadata.createXMPMetadata();
+            var pdfaId = xmp.createAndAddPFAIdentificationSchema();
+            pdfaId.setPart(2);
+            pdfaId.setConformance("B");
+            xmp.createAndAddAdobePDFSchema().setProducer(producer);
+            xmp.createAndAddXMPBasicSchema().setCreateDate(created);
+
+            var xmpData = new ByteArrayOutputStream();
+            new XmpSerializer().serialize(xmp, xmpData, true);
+            var metadata = new PDMetadata(doc);
+            metadata.importXMPMetadata(xmpData.toByteArray());
+            catalog.setMetadata(metadata);
+        } catch (BadFieldValueException | TransformerException e) {
+            throw new IOException("Error adding PDF/A metadata: " + e.getMessage(), e);
+        }
+
+        if (colorProfile != null) {
+            var intent = new PDOutputIntent(doc, new ByteArrayInputStream(colorProfile));
+            intent.setInfo(SRGB);
+            intent.setOutputCondition(SRGB);
+            intent.setOutputConditionIdentifier(SRGB);
+            intent.setRegistryName("http://www.color.org");
+            catalog.addOutputIntent(intent);
+        }
+    }
+
+
+    /**
+     * Parses a CSS 2.1 @page size, e.g. "a4 portrait", "letter landscape" or "210mm 297mm"
+     *
+     * @param size the CSS page size
+     * @return the page size, or null if not supported
+     */
+    static PDRectangle parsePageSize(String size) {
+        float width = Float.NaN;
+        float height = Float.NaN;
+        var landscape = false;
+        for (var token : size.trim().toLowerCase(Locale.ROOT).split("\\s+")) {
+            var namedSize = PAGE_SIZES.get(token);
+            if ("landscape".equals(token)) {
+                landscape = true;
+            } else if (namedSize != null) {
+                width = namedSize[0] * 72 / 25.4f;
+                height = namedSize[1] * 72 / 25.4f;
+            } else if (!"portrait".equals(token)) {
+                var length = parseLength(token, MEDIUM_FONT_SIZE);
+                if (Float.isNaN(width)) {
+                    width = length;
+                    height = length;
+                } else {
+                    height = length;
+                }
+            }
+        }
+        if (Float.isNaN(width) || Float.isNaN(height) || width <= 0 || height <= 0) {
+            return null;
+        }
+        return landscape ? new PDRectangle(height, width) : new PDRectangle(width, height);
+    }
+
+
+    /**
+     * Parses a CSS box, such as a margin, with 1-4 lengths
+     *
+     * @param box the CSS box
+     * @return the top, right, bottom and left lengths in points, or null if not supported
+     */
+    static float[] parseBox(String box) {
+        var tokens = box.trim().split("\\s+");
+        if (tokens.length > 4) {
+            return null;
+        }
+        var lengths = new float[tokens.length];
+        for (var x = 0; x < tokens.length; x++) {
+            lengths[x] = parseLength(tokens[x].toLowerCase(Locale.ROOT), MEDIUM_FONT_SIZE);
+            if (Float.isNaN(lengths[x]) || tokens[x].endsWith("%")) {
+                return null;
+            }
+        }
+        switch (lengths.length) {
+            case 1: return new float[] { lengths[0], lengths[0], lengths[0], lengths[0] };
+            case 2: return new float[] { lengths[0], lengths[1], lengths[0], lengths[1] };
+            case 3: return new float[] { lengths[0], lengths[1], lengths[2], lengths[1] };
+            default: return lengths;
+        }
+    }
+
+
+    /**
+     * Parses a CSS font size
+     * @param size the CSS font size
+     * @return the font size in points, or NaN if not supported
+     */
+    private static float parseFontSize(String size) {
+        var px = FONT_SIZES.get(size.toLowerCase(Locale.ROOT));
+        return px != null ? px * PX : parseLength(size.toLowerCase(Locale.ROOT), MEDIUM_FONT_SIZE);
+    }
+
+
+    /**
+     * Parses a CSS line height
+     * @param lineHeight the CSS line height
+     * @param fontSize the font size in points
+     * @return the line height in points, or NaN if not supported
+     */
+    private static float parseLineHeight(String lineHeight, float fontSize) {
+        lineHeight = lineHeight.toLowerCase(Locale.ROOT);
+        if ("normal".equals(lineHeight)) {
+            return fontSize * NORMAL_LINE_HEIGHT;
+        } else if (lineHeight.matches("\\d*\\.?\\d+")) {
+            return fontSize * Float.parseFloat(lineHeight);
+        }
+        return parseLength(lineHeight, fontSize);
+    }
+
+
+    /**
+     * Parses a CSS length
+     * @param length the CSS length
+     * @param emSize the size of "1em" and "100%" in points
+     * @return the length in points, or NaN if not supported
+     */
+    private static float parseLength(String length, float emSize) {
+        var m = LENGTH.matcher(length);
+        if (!m.matches()) {
+            return Float.NaN;
+        }
+        var value = Float.parseFloat(m.group(1));
+        var unit = m.group(2) == null ? "" : m.group(2);
+        switch (unit) {
+            case "mm": return value * 72 / 25.4f;
+            case "cm": return value * 72 / 2.54f;
+            case "in": return value * 72;
+            case "pt": return value;
+            case "pc": return value * 12;
+            case "px": return value * PX;
+            case "em": return value * emSize;
+            case "%": return value * emSize / 100;
+            default: return value == 0 ? 0 : Float.NaN;
+        }
+    }
+
+
+    /**
+     * Lays out lines of text on pages, adding new pages as the pages fill up
+     */
+    private class Layout implements Closeable {
+
+        private final PDDocument doc;
+        private final PDFont font;
+        private final float ascent;
+        private final float descent;
+        private final float lineWidth;
+        private final Map<Integer, Float> widths = new HashMap<>();
+
+        private PDPageContentStream contents;
+        private boolean firstPage = true;
+        private float y;
+
+
+        /** Constructor **/
+        Layout(PDDocument doc, PDFont font) {
+            this.doc = doc;
+            this.font = font;
+            var descriptor = font.getFontDescriptor();
+            this.ascent = descriptor != null && descriptor.getAscent() > 0
+                ? descriptor.getAscent() / 1000 * fontSize
+                : 0.8f * fontSize;
+            this.descent = descriptor != null && descriptor.getDescent() < 0
+                ? -descriptor.getDescent() / 1000 * fontSize
+                : 0.2f * fontSize;
+            this.lineWidth = pageSize.getWidth() - pageMargin[1] - pageMargin[3] - 2 * BODY_MARGIN;
+        }
+
+
+        /**
+         * Adds a line of text, wrapped to the page width
+         * @param line the line of text
+         */
+        void addLine(String line) throws IOException {
+            var text = normalize(line);
+            var start = 0;
+            do {
+                var end = fitLine(text, start);
+                showLine(text.substring(start, end).stripTrailing());
+                start = end;
+            } while (start < text.length());
+        }
+
+
+        /**
+         * Normalizes the white-space of the line, and skips control and format characters
+         * @param line the line of text
+         * @return the normalized line
+         * @throws UnsupportedCharacterException if the line contains characters not supported by the font
+         */
+        private String normalize(String line) throws UnsupportedCharacterException {
+            var result = new StringBuilder(line.length());
+            var column = 0;
+            for (var x = 0; x < line.length(); ) {
+                var cp = line.codePointAt(x);
+                x += Character.charCount(cp);
+                if (Character.isWhitespace(cp)) {
+                    if (preserveWhiteSpace) {
+                        // Expand tabs to the next tab stop
+                        do {
+                            result.append(' ');
+                            column++;
+                        } while (cp == '\t' && column % TAB_SIZE != 0);
+                    } else if (result.length() > 0 && result.charAt(result.length() - 1) != ' ') {
+                        result.append(' ');
+                    }
+                    continue;
+                }
+                if (Character.isISOControl(cp) || Character.getType(cp) == Character.FORMAT) {
+                    continue;
+                }
+                if (Float.isNaN(width(cp))) {
+                    throw new UnsupportedCharacterException(cp);
+                }
+                result.appendCodePoint(cp);
+                column++;
+            }
+            return preserveWhiteSpace ? result.toString() : result.toString().stripTrailing();
+        }
+
+
+        /**
+         * Returns the end of the longest part of the text, from the start index, that fits the line width.
+         * Lines are broken after spaces, or within words that are longer than the line width
+         *
+         * @param text the text
+         * @param start the start index
+         * @return the end index of the line
+         */
+        private int fitLine(String text, int start) {
+            var width = 0f;
+            var breakAt = -1;
+            var x = start;
+            while (x < text.length()) {
+                var cp = text.codePointAt(x);
+                var cpWidth = width(cp);
+                if (cp == ' ') {
+                    // Spaces may overflow the end of the line
+                    breakAt = ++x;
+                } else if (width + cpWidth > lineWidth && x > start) {
+                    return breakAt > start ? breakAt : x;
+                } else {
+                    x += Character.charCount(cp);
+                }
+                width += cpWidth;
+            }
+            return x;
+        }
+
+
+        /**
+         * Returns the width of the character in points, or NaN if not supported by the font
+         * @param cp the character code point
+         * @return the width of the character
+         */
+        private float width(int cp) {
+            return widths.computeIfAbsent(cp, c -> {
+                try {
+                    return font.getStringWidth(new String(Character.toChars(c))) / 1000 * fontSize;
+                } catch (IllegalArgumentException | IOException e) {
+                    return Float.NaN;
+                }
+            });
+        }
+
+
+        /**
+         * Shows the line, adding a new page if the current page is full
+         * @param line the line to show
+         */
+        private void showLine(String line) throws IOException {
+            if (contents == null || y - lineHeight < pageMargin[2]) {
+                newPage();
+            }
+            if (!line.isEmpty()) {
+                contents.showText(line);
+            }
+            contents.newLine();
+            y -= lineHeight;
+        }
+
+
+        /** Adds a new page **/
+        private void newPage() throws IOException {
+            closePage();
+            var page = new PDPage(pageSize);
+            doc.addPage(page);
+
+            // Like the CSS page box, the body margin only applies to the first page,
+            // and the <pre> element is preceded by a 1em margin
+            y = pageSize.getHeight() - pageMargin[0];
+            if (firstPage) {
+                y -= BODY_MARGIN + (preserveWhiteSpace ? fontSize : 0);
+                firstPage = false;
+            }
+
+            // The baseline is positioned as per the CSS line box, i.e. below the half-leading and the ascent
+            var baseline = y - (lineHeight - ascent - descent) / 2 - ascent;
+            contents = new PDPageContentStream(doc, page);
+            contents.beginText();
+            contents.setFont(font, fontSize);
+            contents.setLeading(lineHeight);
+            contents.newLineAtOffset(pageMargin[3] + BODY_MARGIN, baseline);
+        }
+
+
+        /** Closes the current page, if any **/
+        private void closePage() throws IOException {
+            if (contents != null) {
+                contents.endText();
+                contents.close();
+                contents = null;
+            }
+        }
+
+
+        /** Closes the current page. Adds an empty page if no lines have been added **/
+        @Override
+        public void close() throws IOException {
+            if (contents == null && firstPage) {
+                newPage();
+            }
+            closePage();
+        }
+    }
+
+
+    /**
+     * Thrown if the text contains a character not supported by the font
+     */
+    static class UnsupportedCharacterException extends IOException {
+
+        /** Constructor **/
+        UnsupportedCharacterException(int cp) {
+            super(String.format("Character U+%04X not supported by the font", cp));
+        }
+    }
+}
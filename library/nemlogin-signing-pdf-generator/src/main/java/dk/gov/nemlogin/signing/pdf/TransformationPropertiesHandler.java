@@ -1,34 +1,21 @@
 package dk.gov.nemlogin.signing.pdf;
 
 import com.openhtmltopdf.extend.FSSupplier;
-import com.openhtmltopdf.pdfboxout.PDFontSupplier;
 import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
 import dk.gov.nemlogin.signing.exceptions.TransformationException;
+import dk.gov.nemlogin.signing.model.PdfMemoryPolicy;
 import dk.gov.nemlogin.signing.service.TransformationContext;
 import dk.gov.nemlogin.signing.util.SigningUtils;
-import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.io.MemoryUsageSetting;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.stream.Stream;
 
 import static dk.gov.nemlogin.signing.exceptions.ErrorCode.SDK007;
-import static dk.gov.nemlogin.signing.util.SignSDKVersion.getProducer;
-import static org.apache.pdfbox.pdmodel.font.PDType1Font.COURIER;
-import static org.apache.pdfbox.pdmodel.font.PDType1Font.COURIER_BOLD;
-import static org.apache.pdfbox.pdmodel.font.PDType1Font.COURIER_BOLD_OBLIQUE;
-import static org.apache.pdfbox.pdmodel.font.PDType1Font.COURIER_OBLIQUE;
-import static org.apache.pdfbox.pdmodel.font.PDType1Font.HELVETICA;
-import static org.apache.pdfbox.pdmodel.font.PDType1Font.HELVETICA_BOLD;
-import static org.apache.pdfbox.pdmodel.font.PDType1Font.HELVETICA_BOLD_OBLIQUE;
-import static org.apache.pdfbox.pdmodel.font.PDType1Font.HELVETICA_OBLIQUE;
-import static org.apache.pdfbox.pdmodel.font.PDType1Font.SYMBOL;
-import static org.apache.pdfbox.pdmodel.font.PDType1Font.TIMES_BOLD;
-import static org.apache.pdfbox.pdmodel.font.PDType1Font.TIMES_BOLD_ITALIC;
-import static org.apache.pdfbox.pdmodel.font.PDType1Font.TIMES_ITALIC;
-import static org.apache.pdfbox.pdmodel.font.PDType1Font.TIMES_ROMAN;
-import static org.apache.pdfbox.pdmodel.font.PDType1Font.ZAPF_DINGBATS;
 
 /**
  * Used for customizing the HTML -> PDF transformation.
@@ -78,7 +65,16 @@ import static org.apache.pdfbox.pdmodel.font.PDType1Font.ZAPF_DINGBATS;
  *     <td>The page-style will be injected in the HTML as a &lt;style> element.<br>
  *         If defined, page-size and page-margin is ignored</td>
  *   </tr>
+ *   <tr>
+ *     <td>text-engine</td>
+ *     <td>html</td>
+ *     <td>The engine used for plain-text SDs.<br>"html" renders the SD as HTML.<br>
+ *         "direct" lays out the text directly in PDF. May also be set as a system property.</td>
+ *   </tr>
  * </table>
+ * <p>
+ * The generated PDF is buffered according to the {@link PdfMemoryPolicy}, which is defined by the
+ * "nemlogin.signing.pdf-memory." transformation properties.
  */
 public class TransformationPropertiesHandler {
 
@@ -93,6 +89,7 @@ public class TransformationPropertiesHandler {
     public static final String KEY_PAGE_SIZE        = KEY_PREFIX + "page-size";
     public static final String KEY_PAGE_MARGIN      = KEY_PREFIX + "page-margin";
     public static final String KEY_PAGE_STYLE       = KEY_PREFIX + "page-style";
+    public static final String KEY_TEXT_ENGINE      = KEY_PREFIX + "text-engine";
     // pdf colour profile default key value
     private static final String DEFAULT_COLOR_PROFILE_DEFAULT_VALUE = "default";
 
@@ -102,15 +99,6 @@ public class TransformationPropertiesHandler {
      */
     private static final String DEFAULT_COLOR_PROFILE = "/sRGB.icc";
 
-    /** 14 standard PDF fonts **/
-    private static final PDType1Font[] DEFAULT_PDF_FONTS = {
-        TIMES_ROMAN, TIMES_BOLD, TIMES_ITALIC, TIMES_BOLD_ITALIC,
-        HELVETICA, HELVETICA_BOLD, HELVETICA_OBLIQUE, HELVETICA_BOLD_OBLIQUE,
-        COURIER, COURIER_BOLD, COURIER_OBLIQUE, COURIER_BOLD_OBLIQUE,
-        SYMBOL, ZAPF_DINGBATS
-    };
-
-
     private final TransformationContext ctx;
 
 
@@ -128,46 +116,119 @@ public class TransformationPropertiesHandler {
         var pageStyle = getStringProperty(KEY_PAGE_STYLE, null);
 
         if (SigningUtils.isEmpty(pageStyle)) {
-            var pageSize = getStringProperty(KEY_PAGE_SIZE, "a4 portrait");
-            var pageMargin = getStringProperty(KEY_PAGE_MARGIN, "1cm");
-
             pageStyle = String.format("@page {%n" +
                 "    size: %s;%n" +
                 "    margin: %s;%n" +
-                "}", pageSize, pageMargin);
+                "}", getPageSize(), getPageMargin());
         }
         return pageStyle;
     }
 
+
+    /**
+     * Returns if a free-style page-style has been defined, in which case page-size and page-margin is ignored
+     * @return if a free-style page-style has been defined
+     */
+    boolean isCustomPageStyle() {
+        return !SigningUtils.isEmpty(getStringProperty(KEY_PAGE_STYLE, null));
+    }
+
+
+    /**
+     * Returns the CSS 2.1 @page size
+     * @return the CSS 2.1 @page size
+     */
+    String getPageSize() {
+        return getStringProperty(KEY_PAGE_SIZE, "a4 portrait");
+    }
+
+
+    /**
+     * Returns the CSS 2.1 @page margin
+     * @return the CSS 2.1 @page margin
+     */
+    String getPageMargin() {
+        return getStringProperty(KEY_PAGE_MARGIN, "1cm");
+    }
+
+
+    /**
+     * Returns if plain-text SDs should be laid out directly in PDF, rather than rendered as HTML.
+     * Defined by the transformation properties, or otherwise by the system property of the same name
+     * @return if plain-text SDs should be laid out directly in PDF
+     */
+    boolean isDirectTextEngine() {
+        return "direct".equalsIgnoreCase(getStringProperty(KEY_TEXT_ENGINE, System.getProperty(KEY_TEXT_ENGINE, "html")));
+    }
+
+
     /**
      * Applies the relevant HTML -> PDF transformation properties to the {@link PdfRendererBuilder}
+     * using the cached {@link RenderProfile} of the transformation properties
      * @param pdfRendererBuilder the PDF renderer to update according to transformation properties
      */
     public void applyProperties(PdfRendererBuilder pdfRendererBuilder) throws TransformationException {
+        RenderProfile.of(ctx).apply(pdfRendererBuilder);
+    }
 
-        // Update color profile
+
+    /**
+     * Loads the color profile defined by the transformation properties
+     * @return the color profile, or null if no color profile should be added
+     */
+    byte[] loadColorProfile() throws TransformationException {
         var colorProfile = getStringProperty(KEY_COLOR_PROFILE, DEFAULT_COLOR_PROFILE_DEFAULT_VALUE);
         try {
             if (DEFAULT_COLOR_PROFILE_DEFAULT_VALUE.equalsIgnoreCase(colorProfile)) {
-                pdfRendererBuilder.useColorProfile(SigningUtils.loadBytes(DEFAULT_COLOR_PROFILE));
+                return SigningUtils.loadBytes(DEFAULT_COLOR_PROFILE);
             } else if (!"none".equalsIgnoreCase(colorProfile)) {
-                pdfRendererBuilder.useColorProfile(SigningUtils.loadBytesByProtocol(colorProfile));
+                return SigningUtils.loadBytesByProtocol(colorProfile);
             }
+            return null;
         } catch (IOException e) {
             throw new TransformationException(SDK007, ctx, "Error applying color profile: " + colorProfile, e);
         }
+    }
 
-        // Update fonts
-        String[] fonts = getStringProperty(KEY_FONTS, DEFAULT_COLOR_PROFILE_DEFAULT_VALUE).split("\\s*,\\s*");
-        if (Stream.of(fonts).anyMatch(DEFAULT_COLOR_PROFILE_DEFAULT_VALUE::equalsIgnoreCase)) {
-            addDefaultPdfFonts(pdfRendererBuilder);
-        }
-        if (Stream.of(fonts).anyMatch("embed"::equalsIgnoreCase)) {
-            addSpecifiedPdfFonts(pdfRendererBuilder);
+
+    /**
+     * Returns if the 14 standard PDF fonts should be added
+     * @return if the 14 standard PDF fonts should be added
+     */
+    boolean isDefaultPdfFonts() {
+        return Stream.of(getFonts()).anyMatch(DEFAULT_COLOR_PROFILE_DEFAULT_VALUE::equalsIgnoreCase);
+    }
+
+
+    /**
+     * Returns if the fonts defined by the properties should be embedded
+     * @return if the fonts defined by the properties should be embedded
+     */
+    boolean isEmbeddedPdfFonts() {
+        return Stream.of(getFonts()).anyMatch("embed"::equalsIgnoreCase);
+    }
+
+
+    /**
+     * Returns the names and paths of the fonts defined by the properties, in the order defined
+     * @return the names and paths of the fonts defined by the properties
+     */
+    Map<String, String> getEmbeddedPdfFonts() {
+        Map<String, String> fonts = new LinkedHashMap<>();
+        for (var x = 0; true; x++) {
+            var fontName = getIndexedStringProperty(KEY_FONT_NAME, x);
+            var fontPath = getIndexedStringProperty(KEY_FONT_PATH, x);
+            if (SigningUtils.isEmpty(fontName) || SigningUtils.isEmpty(fontPath)) {
+                return fonts;
+            }
+            fonts.put(fontName, fontPath);
         }
+    }
 
-        // add signSDK as Producer
-        pdfRendererBuilder.withProducer(getProducer());
+
+    /** Returns the values of the "fonts" property **/
+    private String[] getFonts() {
+        return getStringProperty(KEY_FONTS, DEFAULT_COLOR_PROFILE_DEFAULT_VALUE).split("\\s*,\\s*");
     }
 
 
@@ -197,28 +258,13 @@ public class TransformationPropertiesHandler {
 
 
     /**
-     * Adds support for the default 14 PDF fonts to the PDF
-     * @param pdfRendererBuilder the PDF renderer
-     */
-    private void addDefaultPdfFonts(PdfRendererBuilder pdfRendererBuilder) {
-        Stream.of(DEFAULT_PDF_FONTS)
-            .forEach(font -> pdfRendererBuilder.useFont(new PDFontSupplier(font), font.getName()));
-    }
-
-
-    /**
-     * Adds the fonts defined by the properties
-     * @param pdfRendererBuilder the PDF renderer
+     * Returns the PDFBox {@link MemoryUsageSetting} of the {@link PdfMemoryPolicy} defined by the
+     * transformation properties
+     * @return the PDFBox {@link MemoryUsageSetting} for the generated PDF
+     * @throws TransformationException if the transformation properties define an invalid policy
      */
-    private void addSpecifiedPdfFonts(PdfRendererBuilder pdfRendererBuilder) {
-        for (var x = 0; true; x++) {
-            var fontName = getIndexedStringProperty(KEY_FONT_NAME, x);
-            var fontPath = getIndexedStringProperty(KEY_FONT_PATH, x);
-            if (SigningUtils.isEmpty(fontName) || SigningUtils.isEmpty(fontPath)) {
-                return;
-            }
-            pdfRendererBuilder.useFont(new FontSupplier(ctx, fontPath), fontName);
-        }
+    public MemoryUsageSetting getMemoryUsageSetting() throws TransformationException {
+        return PdfMemoryPolicy.of(ctx).toMemoryUsageSetting();
     }
 
     /**
@@ -238,14 +284,19 @@ public class TransformationPropertiesHandler {
     }
 
     /**
-     * Provides an implementation to lazy load fonts
+     * Provides an implementation to lazy load fonts.
+     * The font data is loaded once and shared via the {@link FontRegistry}
      */
     public static class FontSupplier implements FSSupplier<InputStream> {
 
         private final String fontPath;
         private final TransformationContext ctx;
 
-        /** Constructor **/
+        /**
+         * Constructor
+         * @param ctx the {@link TransformationContext} to report errors for. May be null, e.g. for shared suppliers
+         * @param fontPath the font path
+         **/
         public FontSupplier(TransformationContext ctx, String fontPath) {
             this.ctx = ctx;
             this.fontPath = fontPath;
@@ -257,7 +308,7 @@ public class TransformationPropertiesHandler {
         @SuppressWarnings("java:S112")
         public InputStream supply() {
             try {
-                byte[] font = SigningUtils.loadBytesByProtocol(fontPath);
+                byte[] font = FontRegistry.getInstance().getFont(fontPath);
                 return new ByteArrayInputStream(font);
             } catch (IOException e) {
                 throw new RuntimeException(new TransformationException(SDK007, ctx, "Invalid font path: " + fontPath, e));
@@ -0,0 +1,126 @@
+package dk.gov.nemlogin.signing.pdf;
+
+import dk.gov.nemlogin.signing.exceptions.TransformationException;
+import dk.gov.nemlogin.signing.format.DocumentFormat;
+import dk.gov.nemlogin.signing.format.SignatureFormat;
+import dk.gov.nemlogin.signing.model.DataToBeSigned;
+import dk.gov.nemlogin.signing.model.DataToBeSigned.PadesDataToBeSigned;
+import dk.gov.nemlogin.signing.model.SignersDocument.PlainTextSignersDocument;
+import dk.gov.nemlogin.signing.model.ValidTransformation;
+import dk.gov.nemlogin.signing.service.FormatTransformationService;
+import dk.gov.nemlogin.signing.service.TransformationContext;
+import dk.gov.nemlogin.signing.service.impl.Txt2PdfFormatTransformationService;
+import dk.gov.nemlogin.signing.util.SigningUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+import static dk.gov.nemlogin.signing.exceptions.ErrorCode.SDK007;
+
+/**
+ * Implementation of the {@link FormatTransformationService} interface,
+ * which handles TXT -> PDF transformation by laying out the text lines directly in PDF, using the {@link TextPdfWriter}.
+ * <p>
+ * This is much faster, and uses much less memory, than first generating HTML and then PDF from the HTML,
+ * which is the behaviour of the default {@link Txt2PdfFormatTransformationService}.
+ * <p>
+ * The direct layout is only used if the "nemlogin.signing.pdf-generator.text-engine" transformation property,
+ * or system property, is "direct", and if the {@link TextPdfWriter} supports the transformation properties
+ * and the characters of the text. Otherwise, the transformation is delegated to the
+ * {@link Txt2PdfFormatTransformationService}.
+ * <p>
+ * As per the SignPDF specification, the generated PDF will conform to PDF/A-2 (basic level).
+ */
+public class Txt2PdfDirectFormatTransformationService implements FormatTransformationService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Txt2PdfDirectFormatTransformationService.class);
+
+    private final Txt2PdfFormatTransformationService htmlTransformationService = new Txt2PdfFormatTransformationService();
+
+
+    /** {@inheritDoc} **/
+    @Override
+    public int getPriority() {
+        // NB: Higher priority than the Txt2PdfFormatTransformationService
+        return 100;
+    }
+
+
+    /** {@inheritDoc} **/
+    @Override
+    public boolean supports(ValidTransformation transformation) {
+        return transformation.getSdFormat() == DocumentFormat.TEXT &&
+            transformation.getSignatureFormat() == SignatureFormat.PAdES;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The PDF is laid out on the bounded {@link PdfRenderExecutor}, unless it has been disabled.
+     **/
+    @Override
+    public void transform(TransformationContext ctx) throws TransformationException {
+
+        var sd = (PlainTextSignersDocument) ctx.getSignersDocument();
+        var writer = new TransformationPropertiesHandler(ctx).isDirectTextEngine()
+            ? TextPdfWriter.of(ctx, sd.isUseMonoSpaceFont())
+            : null;
+        if (writer == null) {
+            htmlTransformationService.transform(ctx);
+            return;
+        }
+
+        long t0 = System.currentTimeMillis();
+        LOG.debug("Start transforming {} from TXT to PDF", sd.getName());
+
+        byte[] pdf;
+        try {
+            var renderExecutor = PdfRenderExecutor.getInstance();
+            pdf = renderExecutor == null
+                ? writePdf(ctx, writer)
+                : renderExecutor.render(ctx, () -> writePdf(ctx, writer));
+        } catch (Exception e) {
+            throw new TransformationException(
+                SDK007,
+                ctx,
+                "Error transforming " + sd.getName() + " from TXT to PDF: " + e.getMessage(), e);
+        }
+
+        if (pdf == null) {
+            // The text contains characters not supported by the font. Render it as HTML rather than altering it
+            htmlTransformationService.transform(ctx);
+            return;
+        }
+
+        DataToBeSigned dtbs = new PadesDataToBeSigned(
+            pdf,
+            SigningUtils.fileName(sd.getName(), ".pdf"));
+        ctx.setDataToBeSigned(dtbs);
+
+        LOG.info("Transformed {} from TXT to PDF in {} ms", sd.getName(), System.currentTimeMillis() - t0);
+    }
+
+
+    /**
+     * Lays out the lines of the plain-text SD as a PDF
+     *
+     * @param ctx the {@link TransformationContext}
+     * @param writer the {@link TextPdfWriter} to use
+     * @return the PDF, or null if the text contains characters not supported by the font
+     */
+    private byte[] writePdf(TransformationContext ctx, TextPdfWriter writer) throws Exception {
+        // The lines are read one at a time, rather than materializing the full text
+        try (var text = new BufferedReader(new InputStreamReader(
+            new ByteArrayInputStream(ctx.getSignersDocument().getData()), StandardCharsets.UTF_8))) {
+            return writer.write(ctx, text);
+        } catch (TextPdfWriter.UnsupportedCharacterException e) {
+            LOG.info("Transforming {} from TXT to PDF via HTML: {}", ctx.getSignersDocument().getName(), e.getMessage());
+            return null;
+        }
+    }
+}
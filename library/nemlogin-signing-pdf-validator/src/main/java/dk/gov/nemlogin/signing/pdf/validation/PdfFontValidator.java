@@ -3,6 +3,7 @@ package dk.gov.nemlogin.signing.pdf.validation;
 import org.apache.pdfbox.cos.COSDictionary;
 import org.apache.pdfbox.cos.COSDocument;
 import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
 
 import java.util.HashSet;
 import java.util.List;
@@ -44,26 +45,48 @@ public class PdfFontValidator {
      */
     public static List<PdfFontDescriptor> scanForFonts(final COSDocument cosDocument) {
         return cosDocument.getObjects().stream()
-            .filter(cosObject -> cosObject.getObject() instanceof COSDictionary)
-            .map(cosObject -> {
-                COSDictionary dict = (COSDictionary) cosObject.getObject();
-                var cosBase = dict.getDictionaryObject("Type");
-                if (cosBase instanceof COSName) {
-                    if ("Font".equals(((COSName) cosBase).getName())) {
-                        if (dict.getDictionaryObject("FontDescriptor") == null) {
-                            return PdfFontDescriptor.fromFont(cosObject, dict);
-                        }
-                    } else if ("FontDescriptor".equals(((COSName) cosBase).getName())) {
-                        return PdfFontDescriptor.fromFontDescriptor(cosObject, dict);
-                    }
-                }
-                return null;
-            })
+            .map(PdfFontValidator::fontDescriptor)
             .filter(Objects::nonNull)
             .collect(Collectors.toList());
     }
 
 
+    /**
+     * Returns the font definition of the given object, if it is a dictionary of type Font or FontDescriptor
+     *
+     * @param cosObject the object to check
+     * @return the {@link PdfFontDescriptor} of the object, or null if the object is not a font definition
+     */
+    static PdfFontDescriptor fontDescriptor(final COSObject cosObject) {
+        if (!(cosObject.getObject() instanceof COSDictionary)) {
+            return null;
+        }
+        COSDictionary dict = (COSDictionary) cosObject.getObject();
+        var cosBase = dict.getDictionaryObject("Type");
+        if (cosBase instanceof COSName) {
+            if ("Font".equals(((COSName) cosBase).getName())) {
+                if (dict.getDictionaryObject("FontDescriptor") == null) {
+                    return PdfFontDescriptor.fromFont(cosObject, dict);
+                }
+            } else if ("FontDescriptor".equals(((COSName) cosBase).getName())) {
+                return PdfFontDescriptor.fromFontDescriptor(cosObject, dict);
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Returns if the font is neither embedded nor one of the standard 14 PDF fonts
+     *
+     * @param font the font definition to check
+     * @return if the font is invalid
+     */
+    static boolean isInvalidFont(final PdfFontDescriptor font) {
+        return !font.isEmbedded() && !isStandardFont(font.getFontName());
+    }
+
+
     /**
      * Returns if the given font is one of the standard 14 PDF fonts
      *
@@ -85,7 +108,7 @@ public class PdfFontValidator {
      */
     public static List<PdfValidationResult> validateFonts(final COSDocument cosDocument) {
         return scanForFonts(cosDocument).stream()
-            .filter(font -> !font.isEmbedded() && !isStandardFont(font.getFontName()))
+            .filter(PdfFontValidator::isInvalidFont)
             .map(font -> new PdfValidationResult(font.getFontObject(), font.getFontName(),
                 font.getCosObject().getObjectNumber(), font.getCosObject().getGenerationNumber()))
             .collect(Collectors.toList());
@@ -0,0 +1,17 @@
+package dk.gov.nemlogin.signing.pdf.validation;
+
+/**
+ * Thrown when a PDF document exceeds the {@link PdfValidationLimits} whilst being parsed or validated
+ */
+public class PdfLimitExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor
+     * @param message the error message
+     */
+    public PdfLimitExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,303 @@
+package dk.gov.nemlogin.signing.pdf.validation;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSDocument;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Validates the COS structure of a PDF document in a single pass.
+ * <p>
+ * Each indirect object of the document is traversed once, using an explicit work stack rather than recursion,
+ * and both the whitelist checks of the {@link PdfWhitelistValidator} and the font checks of the
+ * {@link PdfFontValidator} are performed during the same traversal. Direct objects that are shared between
+ * multiple parents are only visited once.
+ * <p>
+ * Large documents are split into ranges of indirect objects, which are validated in parallel in the
+ * common {@link ForkJoinPool}. The threshold can be configured using the
+ * "nemlogin.signing.pdf-validator.parallel-threshold" system property. Default 2000 objects.
+ * <p>
+ * The {@link PdfValidationLimits} may be used for stopping the validation upon the first violation, and
+ * for rejecting documents with too many objects or too deeply nested objects.
+ */
+public class PdfStructureValidator {
+
+    public static final String PARALLEL_THRESHOLD_PROPERTY = "nemlogin.signing.pdf-validator.parallel-threshold";
+
+    static final int PARALLEL_THRESHOLD = Integer.getInteger(PARALLEL_THRESHOLD_PROPERTY, 2000);
+
+    /** Default min number of objects validated by a single fork-join task **/
+    static final int MIN_OBJECTS_PER_TASK = 500;
+
+    private final int parallelThreshold;
+    private final int minObjectsPerTask;
+    private final PdfValidationLimits limits;
+
+
+    /** Constructor **/
+    public PdfStructureValidator() {
+        this(PARALLEL_THRESHOLD);
+    }
+
+
+    /**
+     * Constructor
+     * @param parallelThreshold the min number of objects for validating the document in parallel
+     */
+    public PdfStructureValidator(int parallelThreshold) {
+        this(parallelThreshold, PdfValidationLimits.DEFAULT);
+    }
+
+
+    /**
+     * Constructor
+     * @param parallelThreshold the min number of objects for validating the document in parallel
+     * @param limits the limits to apply whilst validating
+     */
+    public PdfStructureValidator(int parallelThreshold, PdfValidationLimits limits) {
+        this(parallelThreshold, MIN_OBJECTS_PER_TASK, limits);
+    }
+
+
+    /**
+     * Constructor
+     * @param parallelThreshold the min number of objects for validating the document in parallel
+     * @param minObjectsPerTask the min number of objects validated by a single fork-join task. Ranges of more than
+     *                          twice this number of objects are split in halves
+     * @param limits the limits to apply whilst validating
+     */
+    public PdfStructureValidator(int parallelThreshold, int minObjectsPerTask, PdfValidationLimits limits) {
+        if (minObjectsPerTask < 1) {
+            throw new IllegalArgumentException("Invalid minObjectsPerTask value: " + minObjectsPerTask);
+        }
+        this.parallelThreshold = parallelThreshold;
+        this.minObjectsPerTask = minObjectsPerTask;
+        this.limits = limits;
+    }
+
+
+    /**
+     * Validates all objects of the document against the whitelists, and validates that only standard fonts
+     * or embedded fonts are used.
+     * <p>
+     * The whitelist violations are returned first, followed by the font violations.
+     * In fail-fast mode, the validation stops upon the first violation, and only the violations found so far
+     * are returned.
+     *
+     * @param cosDocument COSDocument holding the pdf documents COS structure
+     * @return list of {@link PdfValidationResult} holding the validation errors in the pdf document
+     * @throws PdfLimitExceededException if the document exceeds the limits
+     */
+    public List<PdfValidationResult> validate(COSDocument cosDocument) {
+        List<COSObject> objects = cosDocument.getObjects();
+        limits.checkObjectCount(objects.size());
+        var traversal = new Traversal(limits);
+        Results results = objects.size() >= parallelThreshold
+            ? ForkJoinPool.commonPool().invoke(new ValidationTask(traversal, objects, 0, objects.size(), minObjectsPerTask))
+            : traversal.validateObjects(objects, 0, objects.size());
+        return results.toList();
+    }
+
+
+    /**
+     * A single validation of a document. Shared by all fork-join tasks of the validation
+     */
+    static class Traversal {
+        private final PdfValidationLimits limits;
+        private final AtomicBoolean stopped = new AtomicBoolean();
+
+        /** Constructor **/
+        Traversal(PdfValidationLimits limits) {
+            this.limits = limits;
+        }
+
+
+        /**
+         * Validates the given range of indirect objects
+         *
+         * @param objects the indirect objects of the document
+         * @param from the index of the first object to validate
+         * @param to the index after the last object to validate
+         * @return the validation results
+         */
+        Results validateObjects(List<COSObject> objects, int from, int to) {
+            var results = new Results();
+            Set<COSBase> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+            Deque<COSBase> stack = new ArrayDeque<>();
+            Deque<Integer> depths = new ArrayDeque<>();
+            for (var i = from; i < to && !stopped.get(); i++) {
+                var cosObject = objects.get(i);
+                validateWhitelist(cosObject, stack, depths, visited, results.whitelist);
+                validateFont(cosObject, results.fonts);
+            }
+            return results;
+        }
+
+
+        /**
+         * Validates the indirect object, and its direct sub-objects, against the whitelists.
+         * Indirect sub-objects are not followed, since they are validated as objects of the document.
+         *
+         * @param cosObject the indirect object to validate
+         * @param stack the work stack
+         * @param depths the nesting depths of the objects of the work stack
+         * @param visited the direct sub-objects already visited
+         * @param results the list to add the validation results to
+         */
+        @SuppressWarnings("java:S3776")
+        private void validateWhitelist(COSObject cosObject, Deque<COSBase> stack, Deque<Integer> depths,
+                                       Set<COSBase> visited, List<PdfValidationResult> results) {
+            long objNum = cosObject.getObjectNumber();
+            int generation = cosObject.getGenerationNumber();
+            stack.clear();
+            depths.clear();
+            if (cosObject.getObject() != null) {
+                stack.push(cosObject.getObject());
+                depths.push(1);
+            }
+
+            while (!stack.isEmpty() && !stopped.get()) {
+                var cosBase = stack.pop();
+                int depth = depths.pop();
+                if (cosBase instanceof COSName) {
+                    if (!WhiteList.isNameWhitelisted((COSName) cosBase)) {
+                        addResult(results, new PdfValidationResult(cosBase, (COSName) cosBase, objNum, generation));
+                    }
+                } else if (cosBase instanceof COSDictionary) {
+                    if (!visited.add(cosBase)) {
+                        continue;
+                    }
+                    limits.checkDepth(depth, objNum);
+                    for (Map.Entry<COSName, COSBase> entry : ((COSDictionary) cosBase).entrySet()) {
+                        var key = entry.getKey();
+                        if (WhiteList.isKeyExcluded(key)) {
+                            continue;
+                        }
+                        if (!WhiteList.isNameWhitelisted(key)) {
+                            addResult(results, new PdfValidationResult(cosBase, key, objNum, generation));
+                        }
+                        var value = entry.getValue();
+                        if (value != null && !(value instanceof COSObject) && !WhiteList.isKeyWhitelisted(key)) {
+                            stack.push(value);
+                            depths.push(depth + 1);
+                        }
+                    }
+                } else if (cosBase instanceof COSArray) {
+                    if (!visited.add(cosBase)) {
+                        continue;
+                    }
+                    limits.checkDepth(depth, objNum);
+                    for (COSBase item : (COSArray) cosBase) {
+                        if (item != null && !(item instanceof COSObject)) {
+                            stack.push(item);
+                            depths.push(depth + 1);
+                        }
+                    }
+                }
+            }
+        }
+
+
+        /**
+         * If the indirect object is a font or font descriptor, validates that the font is either embedded
+         * or one of the standard 14 fonts
+         *
+         * @param cosObject the indirect object to validate
+         * @param results the list to add the validation results to
+         */
+        private void validateFont(COSObject cosObject, List<PdfValidationResult> results) {
+            if (stopped.get()) {
+                return;
+            }
+            var font = PdfFontValidator.fontDescriptor(cosObject);
+            if (font != null && PdfFontValidator.isInvalidFont(font)) {
+                addResult(results, new PdfValidationResult(font.getFontObject(), font.getFontName(),
+                    cosObject.getObjectNumber(), cosObject.getGenerationNumber()));
+            }
+        }
+
+
+        /** Adds the validation result, and stops the validation in fail-fast mode **/
+        private void addResult(List<PdfValidationResult> results, PdfValidationResult result) {
+            results.add(result);
+            if (limits.isFailFast()) {
+                stopped.set(true);
+            }
+        }
+    }
+
+
+    /**
+     * The whitelist and font validation results of a range of objects
+     */
+    static class Results {
+        private final List<PdfValidationResult> whitelist = new ArrayList<>();
+        private final List<PdfValidationResult> fonts = new ArrayList<>();
+
+        /** Appends the results of the subsequent range of objects **/
+        Results append(Results other) {
+            whitelist.addAll(other.whitelist);
+            fonts.addAll(other.fonts);
+            return this;
+        }
+
+        /** Returns the whitelist results followed by the font results **/
+        List<PdfValidationResult> toList() {
+            List<PdfValidationResult> list = new ArrayList<>(whitelist.size() + fonts.size());
+            list.addAll(whitelist);
+            list.addAll(fonts);
+            return list;
+        }
+    }
+
+
+    /**
+     * Fork-join task that validates a range of objects, splitting it in halves while large
+     */
+    private static class ValidationTask extends RecursiveTask<Results> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Traversal traversal;
+        private final transient List<COSObject> objects;
+        private final int from;
+        private final int to;
+        private final int minObjectsPerTask;
+
+        /** Constructor **/
+        ValidationTask(Traversal traversal, List<COSObject> objects, int from, int to, int minObjectsPerTask) {
+            this.traversal = traversal;
+            this.objects = objects;
+            this.from = from;
+            this.to = to;
+            this.minObjectsPerTask = minObjectsPerTask;
+        }
+
+        /** {@inheritDoc} **/
+        @Override
+        protected Results compute() {
+            if (to - from <= minObjectsPerTask * 2L) {
+                return traversal.validateObjects(objects, from, to);
+            }
+            int mid = (from + to) >>> 1;
+            var left = new ValidationTask(traversal, objects, from, mid, minObjectsPerTask);
+            left.fork();
+            var right = new ValidationTask(traversal, objects, mid, to, minObjectsPerTask).compute();
+            return left.join().append(right);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package dk.gov.nemlogin.signing.pdf.validation;
+
+/**
+ * Limits applied whilst parsing and validating a PDF document.
+ * <p>
+ * Use the limits to reject hostile or huge PDFs early, e.g. for interactive uploads:
+ * <ul>
+ *     <li>Fail-fast: Stop validating upon the first violation, rather than collecting all violations.</li>
+ *     <li>Max objects: Reject PDFs with more indirect objects than this. 0 means no limit.</li>
+ *     <li>Max depth: Reject PDFs with direct objects nested deeper than this. 0 means no limit.</li>
+ * </ul>
+ * The default limits can be configured using the "nemlogin.signing.pdf-validator.fail-fast",
+ * "nemlogin.signing.pdf-validator.max-objects" and "nemlogin.signing.pdf-validator.max-depth" system properties.
+ * By default, all violations are collected and no limits apply.
+ */
+public class PdfValidationLimits {
+
+    public static final String FAIL_FAST_PROPERTY = "nemlogin.signing.pdf-validator.fail-fast";
+    public static final String MAX_OBJECTS_PROPERTY = "nemlogin.signing.pdf-validator.max-objects";
+    public static final String MAX_DEPTH_PROPERTY = "nemlogin.signing.pdf-validator.max-depth";
+
+    /** No limits - all violations are collected **/
+    public static final PdfValidationLimits UNLIMITED = new PdfValidationLimits(false, 0, 0);
+
+    /** The limits configured using system properties **/
+    public static final PdfValidationLimits DEFAULT = new PdfValidationLimits(
+        Boolean.getBoolean(FAIL_FAST_PROPERTY),
+        Integer.getInteger(MAX_OBJECTS_PROPERTY, 0),
+        Integer.getInteger(MAX_DEPTH_PROPERTY, 0));
+
+    private final boolean failFast;
+    private final int maxObjects;
+    private final int maxDepth;
+
+
+    /**
+     * Constructor
+     * @param failFast whether to stop validating upon the first violation
+     * @param maxObjects the max number of indirect objects. 0 means no limit
+     * @param maxDepth the max nesting depth of direct objects, where the value of an indirect object has depth 1. 0 means no limit
+     */
+    public PdfValidationLimits(boolean failFast, int maxObjects, int maxDepth) {
+        this.failFast = failFast;
+        this.maxObjects = maxObjects;
+        this.maxDepth = maxDepth;
+    }
+
+
+    /**
+     * Throws a {@link PdfLimitExceededException} if the number of indirect objects exceeds the limit
+     * @param objectCount the number of indirect objects
+     */
+    public void checkObjectCount(long objectCount) {
+        if (maxObjects > 0 && objectCount > maxObjects) {
+            throw new PdfLimitExceededException(
+                "PDF has " + objectCount + " objects, exceeding the max of " + maxObjects);
+        }
+    }
+
+
+    /**
+     * Throws a {@link PdfLimitExceededException} if the nesting depth exceeds the limit
+     * @param depth the nesting depth of a direct object
+     * @param objNum the object number of the indirect object containing the direct object
+     */
+    public void checkDepth(int depth, long objNum) {
+        if (maxDepth > 0 && depth > maxDepth) {
+            throw new PdfLimitExceededException(
+                "PDF object " + objNum + " is nested deeper than the max depth of " + maxDepth);
+        }
+    }
+
+
+    public boolean isFailFast() {
+        return failFast;
+    }
+
+    public int getMaxObjects() {
+        return maxObjects;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+
+    /** {@inheritDoc} **/
+    @Override
+    public String toString() {
+        return "failFast=" + failFast + ",maxObjects=" + maxObjects + ",maxDepth=" + maxDepth;
+    }
+}
@@ -1,8 +1,10 @@
 package dk.gov.nemlogin.signing.pdf.validation;
 
 import dk.gov.nemlogin.signing.exceptions.ErrorCode;
+import dk.gov.nemlogin.signing.exceptions.NemLogInException;
 import dk.gov.nemlogin.signing.exceptions.ValidationException;
 import dk.gov.nemlogin.signing.format.DocumentFormat;
+import dk.gov.nemlogin.signing.model.PdfMemoryPolicy;
 import dk.gov.nemlogin.signing.service.SignersDocumentValidationService;
 import dk.gov.nemlogin.signing.service.TransformationContext;
 import org.apache.pdfbox.cos.COSDocument;
@@ -12,7 +14,6 @@ import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -24,6 +25,27 @@ public class PdfValidationService implements SignersDocumentValidationService {
 
     private static final Logger LOG = LoggerFactory.getLogger(PdfValidationService.class);
 
+    private final PdfValidationLimits limits;
+
+
+    /**
+     * Constructor.
+     * Uses the default {@link PdfValidationLimits}, as configured using system properties.
+     */
+    public PdfValidationService() {
+        this(PdfValidationLimits.DEFAULT);
+    }
+
+
+    /**
+     * Constructor
+     * @param limits the limits to apply whilst parsing and validating PDFs
+     */
+    public PdfValidationService(PdfValidationLimits limits) {
+        this.limits = limits;
+    }
+
+
     /**
      * {@inheritDoc}
      **/
@@ -32,21 +54,30 @@ public class PdfValidationService implements SignersDocumentValidationService {
         return DocumentFormat.PDF == sdFormat;
     }
 
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The verdict depends on the {@link PdfValidationLimits}, which are thus included in the version.
+     **/
+    @Override
+    public String getVersion() {
+        return SignersDocumentValidationService.super.getVersion() + ";" + limits;
+    }
+
     /**
      * {@inheritDoc}
      *
-     * @throws ValidationException
+     * @throws ValidationException if the PDF cannot be parsed, or violates the whitelists, fonts or limits
+     * @throws NemLogInException if the PDF cannot be buffered, e.g. due to an invalid PDF memory policy
      **/
     @Override
-    public void validate(TransformationContext ctx) throws ValidationException {
+    public void validate(TransformationContext ctx) throws NemLogInException {
 
         // Parse the PDF. Throws a ValidationException if the PDF cannot be parsed
         try (COSDocument pdf = parsePdf(ctx)) {
-            List<PdfValidationResult> validationResults = new ArrayList<>();
-            // Validate against whitelists
-            validationResults.addAll(validateAgainstWhitelist(pdf));
-            // Validate fonts
-            validationResults.addAll(PdfFontValidator.validateFonts(pdf));
+            // Validate against whitelists and validate fonts in a single pass
+            List<PdfValidationResult> validationResults = validateStructure(ctx, pdf);
 
             if (!validationResults.isEmpty()) {
                 String errorStr =
@@ -61,17 +92,47 @@ public class PdfValidationService implements SignersDocumentValidationService {
 
 
     /**
-     * Parses the Signer's Document of the transformation context and returns the parsed {@link COSDocument}
+     * Validates the PDF structure, translating exceeded limits into a {@link ValidationException}
+     *
+     * @param ctx the transformation context
+     * @param pdf the parsed PDF
+     * @return the validation results
+     */
+    private List<PdfValidationResult> validateStructure(TransformationContext ctx, COSDocument pdf) throws ValidationException {
+        try {
+            return new PdfStructureValidator(PdfStructureValidator.PARALLEL_THRESHOLD, limits).validate(pdf);
+        } catch (PdfLimitExceededException e) {
+            throw new ValidationException(ErrorCode.SDK010, ctx,
+                "Signer's Document " + ctx.getSignersDocument().getName() + " rejected: " + e.getMessage(), e);
+        }
+    }
+
+
+    /**
+     * Parses the Signer's Document of the transformation context and returns the parsed {@link COSDocument}.
+     * <p>
+     * Only errors caused by the content of the PDF are thrown as a {@link ValidationException}, since these
+     * are cached as validation verdicts. Errors buffering the PDF, e.g. due to an invalid PDF memory policy or
+     * a failing temporary file, are thrown as other {@link NemLogInException}s.
      *
      * @param ctx the transformation context
      * @return the parsed {@link COSDocument}
      */
-    public COSDocument parsePdf(TransformationContext ctx) throws ValidationException {
+    public COSDocument parsePdf(TransformationContext ctx) throws NemLogInException {
         var pdf = ctx.getSignersDocument();
+        var memoryPolicy = PdfMemoryPolicy.of(ctx);
+        var data = pdf.getData();
+
+        ValidationPdfParser parser;
+        try {
+            parser = new ValidationPdfParser(new ByteArrayInputStream(data), limits, memoryPolicy);
+        } catch (IOException e) {
+            throw new NemLogInException(ErrorCode.SDK010,
+                "Error buffering Signer's Document " + pdf.getName() + ": " + e, e);
+        }
+
         COSDocument cosDocument;
         try {
-            var inputStream = new ByteArrayInputStream(pdf.getData());
-            var parser = new ValidationPdfParser(inputStream);
             parser.parse();
             cosDocument = parser.getCOSDocument();
         } catch (Exception e) {
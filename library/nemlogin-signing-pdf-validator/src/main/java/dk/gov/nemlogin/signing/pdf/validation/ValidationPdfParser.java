@@ -1,12 +1,13 @@
 package dk.gov.nemlogin.signing.pdf.validation;
 
+import dk.gov.nemlogin.signing.model.PdfMemoryPolicy;
+import org.apache.pdfbox.cos.COSDictionary;
 import org.apache.pdfbox.cos.COSDocument;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.cos.COSNull;
 import org.apache.pdfbox.cos.COSObject;
 import org.apache.pdfbox.cos.COSObjectKey;
 import org.apache.pdfbox.cos.COSStream;
-import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.io.ScratchFile;
 import org.apache.pdfbox.pdfparser.PDFObjectStreamParser;
 import org.apache.pdfbox.pdfparser.PDFParser;
@@ -27,23 +28,56 @@ import java.util.stream.Collectors;
  * <p>
  * Furthermore, the parser ensures that object streams are loaded and hence validated,
  * and that non-referenced objects are also DocumentSigningController added for the purpose of validation.
+ * <p>
+ * The max number of objects of the {@link PdfValidationLimits} is enforced as soon as the XRef has been read,
+ * i.e. before any objects are parsed, and again for each object stream.
+ * <p>
+ * The PDF is buffered according to the {@link PdfMemoryPolicy}. Any temporary file is deleted when the
+ * parsed {@link COSDocument} is closed.
  */
 public class ValidationPdfParser extends PDFParser {
 
     private static final Logger LOG = LoggerFactory.getLogger(ValidationPdfParser.class);
+
+    private final PdfValidationLimits limits;
+
     /**
      * Constructor
      *
      * @param inputStream the PDF input stream
      */
+    public ValidationPdfParser(InputStream inputStream) throws IOException {
+        this(inputStream, PdfValidationLimits.DEFAULT, PdfMemoryPolicy.getDefault());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param inputStream the PDF input stream
+     * @param limits the limits to apply whilst parsing
+     * @param memoryPolicy defines how to buffer the PDF whilst parsing
+     */
+    public ValidationPdfParser(InputStream inputStream, PdfValidationLimits limits, PdfMemoryPolicy memoryPolicy) throws IOException {
+        this(inputStream, limits, new ScratchFile(memoryPolicy.toMemoryUsageSetting()));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param inputStream the PDF input stream
+     * @param limits the limits to apply whilst parsing
+     * @param scratchFile the scratch file buffering the PDF. Closed along with the parsed document
+     */
     // suppression sonar: likes try with resources to closed stream - closed elsewhere
     @SuppressWarnings("squid:S2095")
-    public ValidationPdfParser(InputStream inputStream) throws IOException {
-        super(new ScratchFile(MemoryUsageSetting.setupMainMemoryOnly()).createBuffer(inputStream));
+    private ValidationPdfParser(InputStream inputStream, PdfValidationLimits limits, ScratchFile scratchFile) throws IOException {
+        super(scratchFile.createBuffer(inputStream), scratchFile);
+        this.limits = limits;
         // Disable leniency
         setLenient(false);
     }
 
+
     /**
      * Shortcut method that returns the parsed {@link COSDocument}.
      *
@@ -54,6 +88,19 @@ public class ValidationPdfParser extends PDFParser {
     }
 
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Furthermore, rejects the PDF if the XRef contains more objects than allowed by the limits.
+     */
+    @Override
+    protected COSDictionary retrieveTrailer() throws IOException {
+        var trailer = super.retrieveTrailer();
+        limits.checkObjectCount(document.getXrefTable().size());
+        return trailer;
+    }
+
+
     /**
      * {@inheritDoc}
      * <p>
@@ -89,6 +136,7 @@ public class ValidationPdfParser extends PDFParser {
 
         // Ensures that the object streams are loaded.
         dereferenceObjectStreams();
+        limits.checkObjectCount(document.getObjects().size());
     }
 
 
@@ -100,8 +148,15 @@ public class ValidationPdfParser extends PDFParser {
     // sonar - ignoring "Reduce the number of conditional operators (4) used in the expression (maximum allowed 3)."
     @SuppressWarnings("java:S1067")
     void dereferenceObjectStreams() throws IOException {
+        // Objects in object streams are already in the XRef, with negative offsets, and counted via the "N" entries
+        long objectCount = document.getXrefTable().values().stream()
+            .filter(offset -> offset >= 0)
+            .count();
         for ( COSObject objStream : document.getObjectsByType( COSName.OBJ_STM ) ) {
             COSStream stream = (COSStream)objStream.getObject();
+            // Check the declared number of objects before parsing the object stream
+            objectCount += stream.getInt(COSName.N, 0);
+            limits.checkObjectCount(objectCount);
             var parser = new PDFObjectStreamParser(stream, document);
             parser.parse();
             for (COSObject next : parser.getObjects()) {
@@ -15,6 +15,9 @@ import java.util.stream.Collectors;
 /**
  * Holding the whitelists
  * <p>
+ * Names are matched using a precompiled {@link WhiteListMatcher}, which caches the verdicts of up to
+ * "nemlogin.signing.pdf-validator.name-cache-size" names. Default 10000.
+ * <p>
  * sonar suppression:
  * - "Names of regular expressions named groups should be used" (regex)
  * - "Generic exceptions should never be thrown"
@@ -35,6 +38,12 @@ public final class WhiteList {
         .map(Pattern::compile)
         .collect(Collectors.toSet());
 
+    public static final String NAME_CACHE_SIZE_PROPERTY = "nemlogin.signing.pdf-validator.name-cache-size";
+    private static final WhiteListMatcher NAME_MATCHER = new WhiteListMatcher(
+        NAMES,
+        NAMESREGEX,
+        Integer.getInteger(NAME_CACHE_SIZE_PROPERTY, 10000));
+
     private WhiteList() {
     }
 
@@ -57,8 +66,7 @@ public final class WhiteList {
      */
     @SuppressWarnings("BooleanMethodIsAlwaysInverted")
     public static boolean isNameWhitelisted(final COSName name) {
-        return NAMES.contains(name.getName()) ||
-            NAMESREGEX.stream().anyMatch(p -> p.matcher(name.getName()).matches());
+        return NAME_MATCHER.matches(name);
     }
 
 
@@ -0,0 +1,114 @@
+package dk.gov.nemlogin.signing.pdf.validation;
+
+import org.apache.pdfbox.cos.COSName;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Matches PDF names against a whitelist of exact names and regular expressions.
+ * <p>
+ * All regular expressions are combined into a single precompiled pattern, and each thread re-uses its own
+ * {@link Matcher}, so matching a name does not allocate. Furthermore, the verdicts are cached by {@link COSName},
+ * which PDFBox interns, so the verdict for a name that has been matched before is a single hash look-up.
+ * The number of cached verdicts is bounded, so a PDF containing many distinct names cannot exhaust the memory.
+ * When the bound is exceeded, all cached verdicts are evicted, and the cache is refilled with the names in use.
+ * NB: Unlike an LRU cache, this keeps look-ups of cached verdicts lock-free, which matters since every
+ * name of a PDF is looked up, potentially from many validation threads at once.
+ * <p>
+ * Instances are thread-safe.
+ */
+public class WhiteListMatcher {
+
+    private final Set<String> names;
+    private final Pattern pattern;
+    private final ThreadLocal<Matcher> matchers;
+    private final Map<COSName, Boolean> verdicts = new ConcurrentHashMap<>();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final int maxVerdicts;
+
+
+    /**
+     * Constructor
+     * @param names the exact names of the whitelist
+     * @param patterns the regular expressions of the whitelist
+     * @param maxVerdicts the max number of cached verdicts
+     */
+    public WhiteListMatcher(Set<String> names, Collection<Pattern> patterns, int maxVerdicts) {
+        if (maxVerdicts < 1) {
+            throw new IllegalArgumentException("Invalid max number of cached verdicts: " + maxVerdicts);
+        }
+        this.names = Set.copyOf(names);
+        this.pattern = patterns.isEmpty()
+            ? null
+            : Pattern.compile(patterns.stream()
+                .map(p -> "(?:" + p.pattern() + ")")
+                .sorted()
+                .collect(Collectors.joining("|")));
+        this.matchers = pattern == null ? null : ThreadLocal.withInitial(() -> pattern.matcher(""));
+        this.maxVerdicts = maxVerdicts;
+    }
+
+
+    /**
+     * Returns whether the given PDF name is in the whitelist, using the cached verdict if available
+     *
+     * @param name the name to check
+     * @return if the given PDF name is in the whitelist
+     */
+    public boolean matches(COSName name) {
+        var verdict = verdicts.get(name);
+        if (verdict != null) {
+            return verdict;
+        }
+        boolean result = matches(name.getName());
+        if (verdicts.putIfAbsent(name, result) == null && verdicts.size() > maxVerdicts) {
+            evict();
+        }
+        return result;
+    }
+
+
+    /** Evicts all cached verdicts, unless already evicted by a concurrent thread **/
+    private synchronized void evict() {
+        if (verdicts.size() > maxVerdicts) {
+            verdicts.clear();
+            evictionCount.incrementAndGet();
+        }
+    }
+
+
+    /**
+     * Returns whether the given name is in the whitelist, without using the cached verdicts
+     *
+     * @param name the name to check
+     * @return if the given name is in the whitelist
+     */
+    public boolean matches(String name) {
+        return names.contains(name) || (pattern != null && matchers.get().reset(name).matches());
+    }
+
+
+    /**
+     * Returns the number of cached verdicts
+     * @return the number of cached verdicts
+     */
+    public int getCachedVerdictCount() {
+        return verdicts.size();
+    }
+
+
+    /**
+     * Returns the number of times the cached verdicts have been evicted, because the max number was exceeded
+     * @return the number of times the cached verdicts have been evicted
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+}
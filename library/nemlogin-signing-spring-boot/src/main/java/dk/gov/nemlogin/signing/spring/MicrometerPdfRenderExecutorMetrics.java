@@ -0,0 +1,81 @@
+package dk.gov.nemlogin.signing.spring;
+
+import dk.gov.nemlogin.signing.pdf.PdfRenderExecutor;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binds the statistics of a {@link PdfRenderExecutor} as Micrometer meters:
+ * <ul>
+ *     <li>"nemlogin.signing.pdf-render.queued": Gauge of the number of renders waiting for a worker.</li>
+ *     <li>"nemlogin.signing.pdf-render.active": Gauge of the number of renders currently running.</li>
+ *     <li>"nemlogin.signing.pdf-render.completed": Counter of the completed renders, successful or not.</li>
+ *     <li>"nemlogin.signing.pdf-render.rejected": Counter of the renders rejected because the queue was full.</li>
+ *     <li>"nemlogin.signing.pdf-render.queue-time": Counter of the total time renders have waited for a worker.</li>
+ *     <li>"nemlogin.signing.pdf-render.queue-time.max": Gauge of the max time a render has waited for a worker.</li>
+ * </ul>
+ */
+public class MicrometerPdfRenderExecutorMetrics implements MeterBinder {
+
+    public static final String METER_PDF_RENDER = "nemlogin.signing.pdf-render";
+    public static final String METER_QUEUED = METER_PDF_RENDER + ".queued";
+    public static final String METER_ACTIVE = METER_PDF_RENDER + ".active";
+    public static final String METER_COMPLETED = METER_PDF_RENDER + ".completed";
+    public static final String METER_REJECTED = METER_PDF_RENDER + ".rejected";
+    public static final String METER_QUEUE_TIME = METER_PDF_RENDER + ".queue-time";
+    public static final String METER_QUEUE_TIME_MAX = METER_QUEUE_TIME + ".max";
+
+    private final PdfRenderExecutor renderExecutor;
+
+
+    /**
+     * Constructor
+     * @param renderExecutor the render executor, or null if rendering on the executor has been disabled
+     **/
+    public MicrometerPdfRenderExecutorMetrics(PdfRenderExecutor renderExecutor) {
+        this.renderExecutor = renderExecutor;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * No meters are bound if rendering on the executor has been disabled.
+     **/
+    @Override
+    public void bindTo(MeterRegistry meterRegistry) {
+        if (renderExecutor == null) {
+            return;
+        }
+
+        Gauge.builder(METER_QUEUED, renderExecutor, PdfRenderExecutor::getQueueSize)
+            .description("Number of PDF renders waiting for a worker")
+            .register(meterRegistry);
+
+        Gauge.builder(METER_ACTIVE, renderExecutor, PdfRenderExecutor::getActiveCount)
+            .description("Number of PDF renders currently running")
+            .register(meterRegistry);
+
+        FunctionCounter.builder(METER_COMPLETED, renderExecutor, PdfRenderExecutor::getCompletedCount)
+            .description("Number of completed PDF renders, successful or not")
+            .register(meterRegistry);
+
+        FunctionCounter.builder(METER_REJECTED, renderExecutor, PdfRenderExecutor::getRejectedCount)
+            .description("Number of PDF renders rejected because the render queue was full")
+            .register(meterRegistry);
+
+        FunctionCounter.builder(METER_QUEUE_TIME, renderExecutor, e -> e.getTotalQueueTimeNanos() / 1e9)
+            .description("Total time PDF renders have waited for a worker")
+            .baseUnit("seconds")
+            .register(meterRegistry);
+
+        TimeGauge.builder(METER_QUEUE_TIME_MAX, renderExecutor, TimeUnit.NANOSECONDS, PdfRenderExecutor::getMaxQueueTimeNanos)
+            .description("Max time a PDF render has waited for a worker")
+            .register(meterRegistry);
+    }
+}
@@ -0,0 +1,88 @@
+package dk.gov.nemlogin.signing.spring;
+
+import dk.gov.nemlogin.signing.model.SigningStageEvent;
+import dk.gov.nemlogin.signing.model.ValidTransformation;
+import dk.gov.nemlogin.signing.service.SigningMetrics;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SigningMetrics} implementation that records the signing pipeline steps as Micrometer meters:
+ * <ul>
+ *     <li>"nemlogin.signing.stage": Timer with percentile histogram of the duration of each step.</li>
+ *     <li>"nemlogin.signing.stage.input": Distribution summary of the input document size in bytes.</li>
+ *     <li>"nemlogin.signing.stage.output": Distribution summary of the output document size in bytes.</li>
+ * </ul>
+ * All meters are tagged with "stage", "transformation", "sd-format", "signature-format", "flow-type"
+ * and "outcome".
+ */
+public class MicrometerSigningMetrics implements SigningMetrics {
+
+    public static final String METER_STAGE = "nemlogin.signing.stage";
+    public static final String METER_STAGE_INPUT = METER_STAGE + ".input";
+    public static final String METER_STAGE_OUTPUT = METER_STAGE + ".output";
+
+    private final MeterRegistry meterRegistry;
+
+
+    /** Constructor **/
+    public MicrometerSigningMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+
+    /** {@inheritDoc} **/
+    @Override
+    public int getPriority() {
+        return 100;
+    }
+
+
+    /** {@inheritDoc} **/
+    @Override
+    public void stageCompleted(SigningStageEvent event) {
+        var tags = tags(event);
+
+        Timer.builder(METER_STAGE)
+            .description("Duration of the NemLog-In signing pipeline steps")
+            .tags(tags)
+            .publishPercentileHistogram()
+            .register(meterRegistry)
+            .record(event.getDurationNanos(), TimeUnit.NANOSECONDS);
+
+        if (event.getInputBytes() >= 0) {
+            DistributionSummary.builder(METER_STAGE_INPUT)
+                .description("Size of the input document of the NemLog-In signing pipeline steps")
+                .baseUnit("bytes")
+                .tags(tags)
+                .register(meterRegistry)
+                .record(event.getInputBytes());
+        }
+
+        if (event.getOutputBytes() >= 0) {
+            DistributionSummary.builder(METER_STAGE_OUTPUT)
+                .description("Size of the output document of the NemLog-In signing pipeline steps")
+                .baseUnit("bytes")
+                .tags(tags)
+                .register(meterRegistry)
+                .record(event.getOutputBytes());
+        }
+    }
+
+
+    /** Returns the tags of the event **/
+    private Tags tags(SigningStageEvent event) {
+        ValidTransformation transformation = event.getTransformation();
+        return Tags.of(
+            "stage", event.getStage().name(),
+            "transformation", transformation == null ? "none" : transformation.name(),
+            "sd-format", transformation == null ? "none" : transformation.getSdFormat().name(),
+            "signature-format", transformation == null ? "none" : transformation.getSignatureFormat().name(),
+            "flow-type", event.getFlowType() == null ? "none" : event.getFlowType().name(),
+            "outcome", event.getOutcome());
+    }
+}
@@ -1,21 +1,37 @@
 package dk.gov.nemlogin.signing.spring;
 
+import dk.gov.nemlogin.signing.model.PdfMemoryPolicy;
 import dk.gov.nemlogin.signing.model.SignatureKeys;
+import dk.gov.nemlogin.signing.pdf.PdfRenderExecutor;
+import dk.gov.nemlogin.signing.service.NemLogInService;
+import dk.gov.nemlogin.signing.service.ServiceLoaderFactory;
+import dk.gov.nemlogin.signing.service.SigningMetrics;
 import dk.gov.nemlogin.signing.service.SigningPayloadService;
 import dk.gov.nemlogin.signing.util.SignatureKeysProducer;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Spring Configuration for the NemLog-In Signing library
  */
 @Configuration
 @EnableConfigurationProperties(NemLogInSigningProperties.class)
+@AutoConfigureAfter(name = "org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration")
 public class NemLogInAutoConfiguration {
 
     private final NemLogInSigningProperties nemLogInSigningProperties;
@@ -63,8 +79,109 @@ public class NemLogInAutoConfiguration {
     }
 
 
+    /**
+     * Defines the default PDF memory policy, as configured by the "nemlogin.signing.pdf-memory" properties.
+     * The policy may still be overridden per transformation by the transformation properties.
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public PdfMemoryPolicy pdfMemoryPolicy() {
+        return nemLogInSigningProperties.getPdfMemory().toPolicy();
+    }
+
+
+    /**
+     * Installs the {@link PdfMemoryPolicy} bean as the default PDF memory policy
+     **/
+    @Bean
+    public SmartInitializingSingleton pdfMemoryPolicyRegistrar(PdfMemoryPolicy pdfMemoryPolicy) {
+        return () -> PdfMemoryPolicy.setDefault(pdfMemoryPolicy);
+    }
+
+
     @Bean
     public SigningPayloadService signingPayloadService() {
         return new SigningPayloadService();
     }
+
+
+    /**
+     * Registers all {@link NemLogInService} beans, such as custom services, with the {@link ServiceLoaderFactory},
+     * so that they are considered along with the services found in the classpath.
+     * The services are unregistered again when the application context is closed.
+     **/
+    @Bean
+    public NemLogInServiceRegistrar nemLogInServiceRegistrar(ObjectProvider<NemLogInService<?>> nemLogInServices) {
+        return new NemLogInServiceRegistrar(nemLogInServices);
+    }
+
+
+    /**
+     * Registers the {@link NemLogInService} beans with the {@link ServiceLoaderFactory} once all singletons
+     * have been instantiated, and unregisters them when destroyed
+     */
+    static class NemLogInServiceRegistrar implements SmartInitializingSingleton, DisposableBean {
+
+        private final ObjectProvider<NemLogInService<?>> nemLogInServices;
+        private final List<NemLogInService<?>> registered = new ArrayList<>();
+
+        /** Constructor **/
+        NemLogInServiceRegistrar(ObjectProvider<NemLogInService<?>> nemLogInServices) {
+            this.nemLogInServices = nemLogInServices;
+        }
+
+        /** {@inheritDoc} **/
+        @Override
+        public void afterSingletonsInstantiated() {
+            nemLogInServices.orderedStream().forEach(service -> {
+                ServiceLoaderFactory.register(service);
+                registered.add(service);
+            });
+        }
+
+        /** {@inheritDoc} **/
+        @Override
+        public void destroy() {
+            registered.forEach(ServiceLoaderFactory::unregister);
+            registered.clear();
+        }
+    }
+
+
+    /**
+     * Reports signing pipeline metrics to Micrometer, if Micrometer is present.
+     * May be disabled by setting "nemlogin.signing.metrics.enabled" to false.
+     */
+    @Configuration
+    @ConditionalOnClass(MeterRegistry.class)
+    @ConditionalOnProperty(prefix = "nemlogin.signing.metrics", name = "enabled", matchIfMissing = true)
+    static class MicrometerSigningMetricsConfiguration {
+
+        @Bean
+        @ConditionalOnBean(MeterRegistry.class)
+        @ConditionalOnMissingBean(SigningMetrics.class)
+        public MicrometerSigningMetrics micrometerSigningMetrics(MeterRegistry meterRegistry) {
+            return new MicrometerSigningMetrics(meterRegistry);
+        }
+    }
+
+
+    /**
+     * Reports the PDF render executor statistics to Micrometer, if Micrometer and the pdf-generator module are present.
+     * The {@link MicrometerPdfRenderExecutorMetrics} is a {@code MeterBinder}, and is thus bound to the meter
+     * registries by Spring Boot Actuator.
+     * May be disabled by setting "nemlogin.signing.metrics.enabled" to false.
+     */
+    @Configuration
+    @ConditionalOnClass(value = MeterRegistry.class, name = "dk.gov.nemlogin.signing.pdf.PdfRenderExecutor")
+    @ConditionalOnProperty(prefix = "nemlogin.signing.metrics", name = "enabled", matchIfMissing = true)
+    static class MicrometerPdfRenderExecutorMetricsConfiguration {
+
+        @Bean
+        @ConditionalOnBean(MeterRegistry.class)
+        @ConditionalOnMissingBean
+        public MicrometerPdfRenderExecutorMetrics micrometerPdfRenderExecutorMetrics() {
+            return new MicrometerPdfRenderExecutorMetrics(PdfRenderExecutor.getInstance());
+        }
+    }
 }
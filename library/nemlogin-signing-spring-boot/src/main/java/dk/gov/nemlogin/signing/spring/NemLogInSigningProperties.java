@@ -1,5 +1,6 @@
 package dk.gov.nemlogin.signing.spring;
 
+import dk.gov.nemlogin.signing.model.PdfMemoryPolicy;
 import dk.gov.nemlogin.signing.util.SignatureKeysLoader;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
@@ -18,6 +19,9 @@ public class NemLogInSigningProperties extends SignatureKeysLoader {
     // Service Provider or Broker entity ID
     private String entityId;
 
+    // PDF memory policy
+    private final PdfMemory pdfMemory = new PdfMemory();
+
     public String getSigningClientUrl() {
         return signingClientUrl;
     }
@@ -45,6 +49,10 @@ public class NemLogInSigningProperties extends SignatureKeysLoader {
         return this;
     }
 
+    public PdfMemory getPdfMemory() {
+        return pdfMemory;
+    }
+
     public String getKeystoreClassPath() {
         return keystoreClassPath;
     }
@@ -64,4 +72,55 @@ public class NemLogInSigningProperties extends SignatureKeysLoader {
     public String getPrivateKeyPassword() {
         return privateKeyPassword;
     }
+
+
+    /**
+     * Defines the default {@link PdfMemoryPolicy} via the "nemlogin.signing.pdf-memory" Spring properties
+     */
+    public static class PdfMemory {
+
+        // Buffering mode: main-memory, mixed or temp-file
+        private PdfMemoryPolicy.Mode mode = PdfMemoryPolicy.Mode.MAIN_MEMORY;
+
+        // Max number of bytes buffered in main memory in mixed mode
+        private long maxMainMemory = PdfMemoryPolicy.DEFAULT_MAX_MAIN_MEMORY;
+
+        // Directory of temporary files
+        private String tempDir;
+
+        public PdfMemoryPolicy.Mode getMode() {
+            return mode;
+        }
+
+        public PdfMemory setMode(PdfMemoryPolicy.Mode mode) {
+            this.mode = mode;
+            return this;
+        }
+
+        public long getMaxMainMemory() {
+            return maxMainMemory;
+        }
+
+        public PdfMemory setMaxMainMemory(long maxMainMemory) {
+            this.maxMainMemory = maxMainMemory;
+            return this;
+        }
+
+        public String getTempDir() {
+            return tempDir;
+        }
+
+        public PdfMemory setTempDir(String tempDir) {
+            this.tempDir = tempDir;
+            return this;
+        }
+
+        /**
+         * Returns the corresponding {@link PdfMemoryPolicy}
+         * @return the corresponding {@link PdfMemoryPolicy}
+         */
+        public PdfMemoryPolicy toPolicy() {
+            return new PdfMemoryPolicy(mode, maxMainMemory, tempDir);
+        }
+    }
 }
@@ -0,0 +1,56 @@
+package dk.gov.nemlogin.signing.validation.model;
+
+/**
+ * The result of validating a single document as part of a bulk validation.
+ * <p>
+ * Contains either the {@link ValidationReport} or the exception that caused the validation to fail.
+ */
+@SuppressWarnings("unused")
+public class BulkValidationResult {
+
+    private final SignatureValidationContext ctx;
+    private final ValidationReport report;
+    private final Throwable error;
+    private final long durationMillis;
+
+
+    /**
+     * Constructor
+     * @param ctx the {@link SignatureValidationContext} of the validated document
+     * @param report the validation report, or null if the validation failed
+     * @param error the error, if the validation failed, or null if it succeeded
+     * @param durationMillis the duration of the validation in milliseconds
+     */
+    public BulkValidationResult(SignatureValidationContext ctx, ValidationReport report, Throwable error, long durationMillis) {
+        this.ctx = ctx;
+        this.report = report;
+        this.error = error;
+        this.durationMillis = durationMillis;
+    }
+
+
+    /**
+     * Returns if the validation service returned a validation report
+     * @return if the validation service returned a validation report
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+
+    public SignatureValidationContext getCtx() {
+        return ctx;
+    }
+
+    public ValidationReport getReport() {
+        return report;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+}
@@ -2,13 +2,19 @@ package dk.gov.nemlogin.signing.validation.model;
 
 import dk.gov.nemlogin.signing.util.SigningUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Base64;
 
 /**
  * Encapsulates the context needed for calling the {@code SignatureValidationService.validate()} method.
+ * <p>
+ * The document to validate is either specified as a byte array, or as a {@link DocumentSource}, which is
+ * streamed into the validation request. The latter keeps the memory usage constant regardless of document size.
  */
 @SuppressWarnings("unused")
 public class SignatureValidationContext {
@@ -28,6 +34,9 @@ public class SignatureValidationContext {
     // The actual document data
     private byte[] documentData;
 
+    // Source of the document data, streamed into the validation request
+    private DocumentSource documentSource;
+
     // Correlation ID passed on in the "CorrelationIdManager.CorrelationId" header
     // Will be logged in the Validation Service back-end.
     private String correlationId;
@@ -43,6 +52,7 @@ public class SignatureValidationContext {
             this.timeout = ctx.timeout;
             this.documentName = ctx.documentName;
             this.documentData = ctx.documentData;
+            this.documentSource = ctx.documentSource;
             this.correlationId = ctx.correlationId;
         }
     }
@@ -63,10 +73,36 @@ public class SignatureValidationContext {
         return documentName;
     }
 
+    /**
+     * Returns a copy of the document data, loading it from the document source if needed.
+     * Use {@link #openDocumentStream()} to avoid copying the document data.
+     *
+     * @return a copy of the document data
+     */
     public byte[] getDocumentData() {
+        if (documentData == null && documentSource != null) {
+            try (var in = documentSource.open()) {
+                return SigningUtils.loadBytes(in);
+            } catch (IOException e) {
+                throw new IllegalStateException("Error loading document data", e);
+            }
+        }
         return documentData != null ? documentData.clone() : new byte[0];
     }
 
+    /**
+     * Opens a new stream of the document data, without copying the document data.
+     * The caller is responsible for closing the stream.
+     *
+     * @return a new stream of the document data
+     */
+    public InputStream openDocumentStream() throws IOException {
+        if (documentSource != null) {
+            return documentSource.open();
+        }
+        return new ByteArrayInputStream(documentData != null ? documentData : new byte[0]);
+    }
+
     public String getCorrelationId() {
         return correlationId;
     }
@@ -149,9 +185,36 @@ public class SignatureValidationContext {
          */
         public Builder setDocumentData(byte[] documentData) {
             template.documentData = documentData;
+            template.documentSource = null;
+            return this;
+        }
+
+        /**
+         * Sets the source of the document to validate. The document is streamed from the source into
+         * the validation request, rather than being loaded into memory.
+         * <p>
+         * The source may be opened once per validation request, e.g. if the request is hedged.
+         *
+         * @param documentSource the document source
+         * @return this
+         */
+        public Builder setDocumentSource(DocumentSource documentSource) {
+            template.documentSource = documentSource;
+            template.documentData = null;
             return this;
         }
 
+        /**
+         * Sets the Base64-encoded data of the document to validate.
+         * The data is decoded on the fly when streamed into the validation request.
+         *
+         * @param base64DocumentData the Base64-encoded document data
+         * @return this
+         */
+        public Builder setBase64DocumentData(CharSequence base64DocumentData) {
+            return setDocumentSource(() -> Base64.getDecoder().wrap(new AsciiInputStream(base64DocumentData)));
+        }
+
         /**
          * Sets a client-selected correlation ID that will be logged at the Validation Service back-end.
          *
@@ -164,14 +227,18 @@ public class SignatureValidationContext {
         }
 
         /**
-         * Sets the path to the document to validate.
+         * Sets the path to the document to validate. The document is streamed from the path into
+         * the validation request.
          * If the documentName has not been set, it will be deduced from the path.
          *
          * @param path the path
          * @return this
          */
         public Builder setDocumentPath(Path path) throws IOException {
-            template.documentData = SigningUtils.loadBytes(path);
+            if (!Files.isReadable(path)) {
+                throw new IOException("Cannot read document " + path);
+            }
+            setDocumentSource(() -> Files.newInputStream(path));
             if (SigningUtils.isEmpty(template.documentName)) {
                 final var fileName = path.getFileName();
                 if (fileName != null) {
@@ -189,7 +256,7 @@ public class SignatureValidationContext {
          * @return this
          */
         public Builder setDocumentUrl(URL url) throws IOException {
-            template.documentData = SigningUtils.loadBytes(url);
+            setDocumentData(SigningUtils.loadBytes(url));
             if (SigningUtils.isEmpty(template.documentName)) {
                 template.documentName = fileName(url.getPath());
             }
@@ -204,7 +271,7 @@ public class SignatureValidationContext {
          * @return this
          */
         public Builder setDocumentClassPath(String classPath) throws IOException {
-            template.documentData = SigningUtils.loadBytes(classPath);
+            setDocumentData(SigningUtils.loadBytes(classPath));
             if (SigningUtils.isEmpty(template.documentName)) {
                 template.documentName = fileName(classPath);
             }
@@ -219,7 +286,7 @@ public class SignatureValidationContext {
          * @return this
          */
         public Builder setDocumentInputStream(InputStream inputStream) throws IOException {
-            template.documentData = SigningUtils.loadBytes(inputStream);
+            setDocumentData(SigningUtils.loadBytes(inputStream));
             return this;
         }
 
@@ -252,11 +319,62 @@ public class SignatureValidationContext {
             if (SigningUtils.isEmpty(template.documentName)) {
                 throw new IllegalArgumentException("Missing documentName value");
             }
-            if (template.documentData == null) {
+            if (template.documentData == null && template.documentSource == null) {
                 throw new IllegalArgumentException("Missing documentData value");
             }
             return new SignatureValidationContext(template);
         }
     }
 
+
+    /**
+     * Source of the document data, which is opened when the document is streamed into a validation request
+     */
+    @FunctionalInterface
+    public interface DocumentSource {
+
+        /**
+         * Opens a new stream of the document data. The caller is responsible for closing the stream.
+         *
+         * @return a new stream of the document data
+         */
+        InputStream open() throws IOException;
+    }
+
+
+    /**
+     * Streams the characters of an ASCII character sequence, such as Base64-encoded data, without copying them
+     */
+    private static class AsciiInputStream extends InputStream {
+
+        private final CharSequence chars;
+        private int pos;
+
+        /** Constructor **/
+        AsciiInputStream(CharSequence chars) {
+            this.chars = chars;
+        }
+
+        /** {@inheritDoc} **/
+        @Override
+        public int read() {
+            return pos < chars.length() ? chars.charAt(pos++) & 0xFF : -1;
+        }
+
+        /** {@inheritDoc} **/
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (pos >= chars.length()) {
+                return -1;
+            }
+            int n = Math.min(len, chars.length() - pos);
+            for (var i = 0; i < n; i++) {
+                b[off + i] = (byte) chars.charAt(pos++);
+            }
+            return n;
+        }
+    }
 }
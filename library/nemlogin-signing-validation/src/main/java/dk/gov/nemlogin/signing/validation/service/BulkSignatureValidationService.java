@@ -0,0 +1,546 @@
+package dk.gov.nemlogin.signing.validation.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import dk.gov.nemlogin.signing.exceptions.ErrorCode;
+import dk.gov.nemlogin.signing.exceptions.NemLogInException;
+import dk.gov.nemlogin.signing.util.SigningUtils;
+import dk.gov.nemlogin.signing.validation.model.BulkValidationResult;
+import dk.gov.nemlogin.signing.validation.model.SignatureValidationContext;
+import dk.gov.nemlogin.signing.validation.model.ValidationReport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Non-blocking service for validating many signed documents by calling the public NemLog-In
+ * Signature Validation API.
+ * <p>
+ * Whereas the {@link SignatureValidationService} performs one blocking call per document, this service
+ * uses the non-blocking Java HTTP client, and limits the number of requests in flight. Each request has a
+ * deadline, given either by the timeout of the {@link SignatureValidationContext} or by the default timeout.
+ * <p>
+ * Optionally, requests can be hedged: If a response has not been received within the hedge delay,
+ * the request is sent once more, and the first response received is used. This cuts off the tail latency
+ * caused by slow outliers, at the expense of a few extra requests. Hedged requests count against the limit
+ * of requests in flight, so a request is not hedged while the limit is reached.
+ * <p>
+ * NB: When the {@link SignatureValidationContext#isIgnoreSsl()} flag is set, the SSL certificate chain is not
+ * validated, but the Java HTTP client still verifies the host name.
+ * <p>
+ * The service should be instantiated once, and closed when no longer used.
+ */
+public class BulkSignatureValidationService implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BulkSignatureValidationService.class);
+    private static final String FILE_PARAM_NAME = "file";
+    private static final String CORRELATION_ID_HEADER = "CorrelationIdManager.CorrelationId";
+
+    /** Thread-safe reader of validation reports **/
+    private static final ObjectReader VALIDATION_REPORT_READER = new ObjectMapper().readerFor(ValidationReport.class);
+
+    private final int maxInFlight;
+    private final Duration defaultTimeout;
+    private final Duration connectTimeout;
+    private final Duration hedgeDelay;
+    private final Semaphore inFlight;
+    private final ExecutorService executor;
+
+    // Lazily instantiated HTTP clients, with and without SSL checks
+    private HttpClient httpClient;
+    private HttpClient ignoreSslHttpClient;
+
+
+    /** Constructor **/
+    private BulkSignatureValidationService(Builder builder) {
+        this.maxInFlight = builder.maxInFlight;
+        this.defaultTimeout = builder.defaultTimeout;
+        this.connectTimeout = builder.connectTimeout;
+        this.hedgeDelay = builder.hedgeDelay;
+        this.inFlight = new Semaphore(builder.maxInFlight);
+        var threadCount = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(r -> {
+            var thread = new Thread(r, "nemlogin-validation-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    /**
+     * Returns a new {@link BulkSignatureValidationService.Builder}
+     **/
+    public static Builder builder() {
+        return new Builder();
+    }
+
+
+    /**
+     * Validates all documents of the {@code contexts} stream, with at most "maxInFlight" requests in flight.
+     * <p>
+     * The returned stream is lazy: Requests are sent as the results are consumed, and the results are
+     * returned in the order they complete. A failing validation does not affect the remaining validations,
+     * but is returned as a {@link BulkValidationResult} containing the error.
+     *
+     * @param contexts the {@link SignatureValidationContext}s of the documents to validate
+     * @return the stream of {@link BulkValidationResult}s, in the order they complete
+     */
+    public Stream<BulkValidationResult> validate(Stream<SignatureValidationContext> contexts) {
+        return StreamSupport.stream(new BulkValidationSpliterator(contexts.iterator()), false)
+            .onClose(contexts::close);
+    }
+
+
+    /**
+     * Asynchronously calls the NemLog-In Signature Validation API and returns a future {@link ValidationReport}.
+     * <p>
+     * Blocks while "maxInFlight" requests are in flight. The returned future fails with an {@link IOException}
+     * wrapping a {@link NemLogInException} if the validation fails or the deadline is exceeded.
+     * <p>
+     * Each attempt holds a permit until its HTTP exchange has completed, and a hedged attempt is only sent
+     * if a permit is available without blocking. Hence, hedged attempts count against "maxInFlight".
+     *
+     * @param ctx the {@link SignatureValidationContext}
+     * @return the future {@link ValidationReport}
+     */
+    public CompletableFuture<ValidationReport> validateAsync(SignatureValidationContext ctx) {
+        long t0 = System.currentTimeMillis();
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(validationError(ctx, t0, e));
+        }
+
+        HttpClient client;
+        HttpRequest request;
+        Duration timeout;
+        try {
+            timeout = ctx.getTimeout() != null ? Duration.ofMillis(ctx.getTimeout()) : defaultTimeout;
+            client = httpClient(ctx.isIgnoreSsl());
+            request = buildRequest(ctx, timeout);
+        } catch (IOException | RuntimeException e) {
+            inFlight.release();
+            return CompletableFuture.failedFuture(validationError(ctx, t0, e));
+        }
+
+        var result = new CompletableFuture<ValidationReport>()
+            .orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        var attempts = new AtomicInteger(1);
+        sendAttempt(client, request, result, attempts);
+        if (hedgeDelay != null) {
+            scheduleHedge(client, request, result, attempts);
+        }
+
+        return result.handle((report, error) -> {
+            if (error != null) {
+                throw new CompletionException(validationError(ctx, t0, unwrap(error)));
+            }
+            LOG.info("Completed signature validation to {}{} in {} ms",
+                ctx.getValidationServiceUrl(),
+                SigningUtils.isEmpty(ctx.getCorrelationId()) ? "" : String.format(" (correlationId %s)", ctx.getCorrelationId()),
+                System.currentTimeMillis() - t0);
+            return report;
+        });
+    }
+
+
+    /**
+     * Shuts down the executor used by the HTTP clients
+     **/
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+
+    /**
+     * Sends the request once more if no response has been received within the hedge delay.
+     * The hedged attempt is skipped if no "maxInFlight" permit is available at that time.
+     *
+     * @param client the HTTP client
+     * @param request the request
+     * @param result the result, completed by the first successful attempt
+     * @param attempts the number of pending attempts
+     */
+    private void scheduleHedge(
+        HttpClient client,
+        HttpRequest request,
+        CompletableFuture<ValidationReport> result,
+        AtomicInteger attempts) {
+        try {
+            CompletableFuture.delayedExecutor(hedgeDelay.toMillis(), TimeUnit.MILLISECONDS, executor).execute(() -> {
+                // Only hedge if the request is still pending, and a permit is available
+                if (result.isDone()) {
+                    return;
+                }
+                if (!inFlight.tryAcquire()) {
+                    LOG.debug("Not hedging signature validation request to {}: Max requests in flight", request.uri());
+                    return;
+                }
+                if (attempts.getAndUpdate(n -> n > 0 ? n + 1 : n) == 0) {
+                    inFlight.release();
+                    return;
+                }
+                LOG.debug("Hedging signature validation request to {} after {} ms", request.uri(), hedgeDelay.toMillis());
+                sendAttempt(client, request, result, attempts);
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Not hedging signature validation request to {}: {}", request.uri(), e.getMessage());
+        }
+    }
+
+
+    /**
+     * Sends the request as an attempt of the {@code result}, and parses the response as a {@link ValidationReport}.
+     * <p>
+     * The caller must hold a "maxInFlight" permit, which is released when the HTTP exchange completes.
+     * The exchange is cancelled once the result is done, e.g. when another attempt succeeded or the
+     * deadline was exceeded. NB: Cancelling only aborts the exchange on Java 16+. On older versions,
+     * the exchange runs until the request timeout.
+     *
+     * @param client the HTTP client
+     * @param request the request
+     * @param result the result, completed by the first successful attempt
+     * @param attempts the number of pending attempts
+     */
+    private void sendAttempt(
+        HttpClient client,
+        HttpRequest request,
+        CompletableFuture<ValidationReport> result,
+        AtomicInteger attempts) {
+        CompletableFuture<HttpResponse<byte[]>> exchange;
+        try {
+            exchange = client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+        } catch (RuntimeException e) {
+            inFlight.release();
+            completeAttempt(result, attempts, null, e);
+            return;
+        }
+        exchange.whenComplete((response, error) -> inFlight.release());
+        exchange.thenApply(BulkSignatureValidationService::parseReport)
+            .whenComplete((report, error) -> completeAttempt(result, attempts, report, error));
+        result.whenComplete((report, error) -> exchange.cancel(true));
+    }
+
+
+    /** Completes the result with the first successful attempt, or with the error of the last failed attempt **/
+    private static void completeAttempt(
+        CompletableFuture<ValidationReport> result,
+        AtomicInteger attempts,
+        ValidationReport report,
+        Throwable error) {
+        if (error == null) {
+            result.complete(report);
+        } else if (attempts.decrementAndGet() == 0) {
+            result.completeExceptionally(unwrap(error));
+        }
+    }
+
+
+    /**
+     * Parses the response as a {@link ValidationReport}
+     *
+     * @param response the response
+     * @return the validation report
+     */
+    private static ValidationReport parseReport(HttpResponse<byte[]> response) {
+        int status = response.statusCode();
+        if (status != 200) {
+            throw new CompletionException(new IOException("Unexpected response status: " + status));
+        }
+        try {
+            return VALIDATION_REPORT_READER.readValue(response.body());
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+
+    /**
+     * Builds a multipart/form-data validation request for the document of the {@code ctx}
+     *
+     * @param ctx the {@link SignatureValidationContext}
+     * @param timeout the request timeout
+     * @return the validation request
+     */
+    private static HttpRequest buildRequest(SignatureValidationContext ctx, Duration timeout) {
+        var boundary = "NemLogInBoundary" + UUID.randomUUID().toString().replace("-", "");
+        var fileName = ctx.getDocumentName().replace("\"", "%22").replace("\r", "").replace("\n", "");
+        var head = ("--" + boundary + "\r\n"
+            + "Content-Disposition: form-data; name=\"" + FILE_PARAM_NAME + "\"; filename=\"" + fileName + "\"\r\n"
+            + "Content-Type: application/octet-stream\r\n"
+            + "\r\n").getBytes(StandardCharsets.UTF_8);
+        var tail = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8);
+
+        var requestBuilder = HttpRequest.newBuilder(URI.create(ctx.getValidationServiceUrl()))
+            .timeout(timeout)
+            .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+            .header("Accept", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofInputStream(() -> multipartStream(ctx, head, tail)));
+        if (SigningUtils.isNotEmpty(ctx.getCorrelationId())) {
+            requestBuilder.header(CORRELATION_ID_HEADER, ctx.getCorrelationId());
+        }
+        return requestBuilder.build();
+    }
+
+
+    /**
+     * Returns a new stream of the multipart body, streaming the document data between the head and tail.
+     * Called once per attempt, so hedged requests open the document source once more.
+     *
+     * @param ctx the {@link SignatureValidationContext}
+     * @param head the multipart head
+     * @param tail the multipart tail
+     * @return a new stream of the multipart body
+     */
+    private static InputStream multipartStream(SignatureValidationContext ctx, byte[] head, byte[] tail) {
+        try {
+            return new SequenceInputStream(Collections.enumeration(List.of(
+                new ByteArrayInputStream(head),
+                ctx.openDocumentStream(),
+                new ByteArrayInputStream(tail))));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    /**
+     * Returns the HTTP client, instantiating it upon first use
+     *
+     * @param ignoreSsl whether to ignore SSL certificate validation
+     * @return the HTTP client
+     */
+    private synchronized HttpClient httpClient(boolean ignoreSsl) throws IOException {
+        if (executor.isShutdown()) {
+            throw new IllegalStateException("The bulk signature validation service has been closed");
+        }
+        if (ignoreSsl) {
+            if (ignoreSslHttpClient == null) {
+                ignoreSslHttpClient = httpClientBuilder().sslContext(trustAllSslContext()).build();
+            }
+            return ignoreSslHttpClient;
+        }
+        if (httpClient == null) {
+            httpClient = httpClientBuilder().build();
+        }
+        return httpClient;
+    }
+
+
+    /** Returns a new HTTP client builder with the common settings **/
+    private HttpClient.Builder httpClientBuilder() {
+        return HttpClient.newBuilder()
+            .executor(executor)
+            .connectTimeout(connectTimeout)
+            .followRedirects(HttpClient.Redirect.NEVER);
+    }
+
+
+    /** Returns an SSL context that trusts all certificates. Only use for development purposes **/
+    private static SSLContext trustAllSslContext() throws IOException {
+        var trustAll = new X509TrustManager() {
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {
+                // Trust all
+            }
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {
+                // Trust all
+            }
+
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        };
+        try {
+            var sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, new TrustManager[] { trustAll }, new SecureRandom());
+            return sslContext;
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+
+    /** Wraps the error as the {@link SignatureValidationService} does **/
+    private static IOException validationError(SignatureValidationContext ctx, long t0, Throwable e) {
+        final var msg = String.format("Error executing signature validation to %s:%s after %s ms: %s",
+            ctx.getValidationServiceUrl(),
+            SigningUtils.isEmpty(ctx.getCorrelationId()) ? "" : String.format(" (correlationId %s)", ctx.getCorrelationId()),
+            System.currentTimeMillis() - t0,
+            e.getMessage());
+        return new IOException(new NemLogInException(ErrorCode.SDK011, msg, e));
+    }
+
+
+    /** Unwraps {@link CompletionException}s **/
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+
+    /**
+     * Pull-based spliterator, which keeps up to "maxInFlight" validations of the source in flight,
+     * and returns the results in the order they complete
+     */
+    private class BulkValidationSpliterator extends Spliterators.AbstractSpliterator<BulkValidationResult> {
+
+        private final Iterator<SignatureValidationContext> source;
+        private final BlockingQueue<BulkValidationResult> completed = new LinkedBlockingQueue<>();
+        private int pending;
+
+        /** Constructor **/
+        BulkValidationSpliterator(Iterator<SignatureValidationContext> source) {
+            super(Long.MAX_VALUE, Spliterator.NONNULL);
+            this.source = source;
+        }
+
+        /** {@inheritDoc} **/
+        @Override
+        public boolean tryAdvance(Consumer<? super BulkValidationResult> action) {
+            while (pending < maxInFlight && source.hasNext()) {
+                submit(source.next());
+            }
+            if (pending == 0) {
+                return false;
+            }
+            try {
+                var result = completed.take();
+                pending--;
+                action.accept(result);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while awaiting signature validation results", e);
+            }
+        }
+
+        /** Submits the validation request, and queues the result upon completion **/
+        private void submit(SignatureValidationContext ctx) {
+            long t0 = System.currentTimeMillis();
+            pending++;
+            validateAsync(ctx).whenComplete((report, error) -> completed.add(new BulkValidationResult(
+                ctx,
+                report,
+                error != null ? unwrap(error) : null,
+                System.currentTimeMillis() - t0)));
+        }
+    }
+
+
+    /**
+     * Builder for the {@link BulkSignatureValidationService}
+     */
+    public static class Builder {
+
+        private int maxInFlight = 10;
+        private Duration defaultTimeout = Duration.ofSeconds(60);
+        private Duration connectTimeout = Duration.ofSeconds(10);
+        private Duration hedgeDelay;
+
+        /**
+         * Sets the max number of validation requests in flight. Default 10.
+         *
+         * @param maxInFlight the max number of validation requests in flight
+         * @return this
+         */
+        public Builder setMaxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * Sets the deadline of validation requests, unless specified by the {@link SignatureValidationContext}.
+         * Default 60 seconds.
+         *
+         * @param defaultTimeout the deadline of validation requests
+         * @return this
+         */
+        public Builder setDefaultTimeout(Duration defaultTimeout) {
+            this.defaultTimeout = defaultTimeout;
+            return this;
+        }
+
+        /**
+         * Sets the connect timeout. Default 10 seconds.
+         *
+         * @param connectTimeout the connect timeout
+         * @return this
+         */
+        public Builder setConnectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * Sets the delay after which a pending request is sent once more. Default null, i.e. no hedging.
+         * A sensible value is the 95th percentile of the validation latency.
+         * Hedged requests count against the max number of validation requests in flight.
+         *
+         * @param hedgeDelay the delay after which a pending request is sent once more, or null
+         * @return this
+         */
+        public Builder setHedgeDelay(Duration hedgeDelay) {
+            this.hedgeDelay = hedgeDelay;
+            return this;
+        }
+
+        /**
+         * Validates and builds a new {@link BulkSignatureValidationService}
+         *
+         * @return a new {@link BulkSignatureValidationService}
+         */
+        public BulkSignatureValidationService build() {
+            if (maxInFlight < 1) {
+                throw new IllegalArgumentException("Invalid maxInFlight value");
+            }
+            if (defaultTimeout == null || connectTimeout == null) {
+                throw new IllegalArgumentException("Missing defaultTimeout or connectTimeout value");
+            }
+            if (hedgeDelay != null && hedgeDelay.isNegative()) {
+                throw new IllegalArgumentException("Invalid hedgeDelay value");
+            }
+            return new BulkSignatureValidationService(this);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package dk.gov.nemlogin.signing.validation.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import dk.gov.nemlogin.signing.exceptions.ErrorCode;
 import dk.gov.nemlogin.signing.exceptions.NemLogInException;
 import dk.gov.nemlogin.signing.util.SigningUtils;
@@ -14,33 +15,83 @@ import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.TrustAllStrategy;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.mime.HttpMultipartMode;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.ssl.SSLContextBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.net.ssl.SSLContext;
+import java.io.Closeable;
 import java.io.IOException;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Simple implementation of a service for validating a signed document
  * by calling the public NemLog-In Signature Validation API.
+ * <p>
+ * The service owns a pool of persistent HTTP connections, which is shared by all validation requests,
+ * so the TCP and TLS handshakes are only paid once per connection. Hence, the service should be
+ * instantiated once, and closed when no longer used.
  */
-public class SignatureValidationService {
+public class SignatureValidationService implements Closeable {
 
     private static final Logger LOG = LoggerFactory.getLogger(SignatureValidationService.class);
     private static final String FILE_PARAM_NAME = "file";
     private static final String CORRELATION_ID_HEADER = "CorrelationIdManager.CorrelationId";
 
+    /** Thread-safe reader of validation reports **/
+    private static final ObjectReader VALIDATION_REPORT_READER = new ObjectMapper().readerFor(ValidationReport.class);
+
+    private final int maxConnectionsTotal;
+    private final int maxConnectionsPerRoute;
+    private final Duration keepAlive;
+    private final Duration idleTimeout;
+
+    // Lazily instantiated HTTP clients, with and without SSL checks
+    private CloseableHttpClient httpClient;
+    private CloseableHttpClient ignoreSslHttpClient;
+    private boolean closed;
+
+
+    /** Constructor using the default connection pool settings **/
+    public SignatureValidationService() {
+        this(builder());
+    }
+
+
+    /** Constructor **/
+    private SignatureValidationService(Builder builder) {
+        this.maxConnectionsTotal = builder.maxConnectionsTotal;
+        this.maxConnectionsPerRoute = builder.maxConnectionsPerRoute;
+        this.keepAlive = builder.keepAlive;
+        this.idleTimeout = builder.idleTimeout;
+    }
+
+
+    /**
+     * Returns a new {@link SignatureValidationService.Builder}
+     **/
+    public static Builder builder() {
+        return new Builder();
+    }
+
+
     /**
      * Calls the NemLog-In Signature Validation API and return a {@link ValidationReport} as a result.
      *
@@ -51,39 +102,13 @@ public class SignatureValidationService {
 
         long t0 = System.currentTimeMillis();
 
-        var httpClientBuilder = HttpClients.custom();
-
-        // Handle SSL ignorance
-        if (ctx.isIgnoreSsl()) {
-            SSLContext sslContext;
-            try {
-                sslContext = new SSLContextBuilder()
-                    .loadTrustMaterial(null, TrustAllStrategy.INSTANCE)
-                    .build();
-            } catch (KeyStoreException | KeyManagementException | NoSuchAlgorithmException e) {
-                throw new IOException(e);
-            }
-            httpClientBuilder
-                .setSSLContext(sslContext)
-                .setSSLHostnameVerifier(NoopHostnameVerifier.INSTANCE);
-        }
-
-        // Handle timeouts
-        if (ctx.getTimeout() != null) {
-            RequestConfig config = RequestConfig.custom()
-                .setConnectTimeout(ctx.getTimeout())
-                .setConnectionRequestTimeout(ctx.getTimeout())
-                .setSocketTimeout(ctx.getTimeout())
-                .build();
-            httpClientBuilder.setDefaultRequestConfig(config);
-        }
-
-        // Perform the validation request
-        try (CloseableHttpClient httpClient = httpClientBuilder.build()) {
+        // Perform the validation request, streaming the document into the multipart body
+        try (var documentStream = ctx.openDocumentStream()) {
+            var httpClient = httpClient(ctx.isIgnoreSsl());
             var httpEntity = MultipartEntityBuilder
                 .create()
                 .setMode(HttpMultipartMode.BROWSER_COMPATIBLE)
-                .addBinaryBody(FILE_PARAM_NAME, ctx.getDocumentData(), ContentType.DEFAULT_BINARY, ctx.getDocumentName())
+                .addBinaryBody(FILE_PARAM_NAME, documentStream, ContentType.DEFAULT_BINARY, ctx.getDocumentName())
                 .build();
             var requestBuilder = RequestBuilder.post(ctx.getValidationServiceUrl())
                 .setEntity(httpEntity)
@@ -91,12 +116,23 @@ public class SignatureValidationService {
             if (SigningUtils.isNotEmpty(ctx.getCorrelationId())) {
                 requestBuilder.addHeader(CORRELATION_ID_HEADER, ctx.getCorrelationId());
             }
+
+            // Handle timeouts
+            if (ctx.getTimeout() != null) {
+                requestBuilder.setConfig(RequestConfig.custom()
+                    .setConnectTimeout(ctx.getTimeout())
+                    .setConnectionRequestTimeout(ctx.getTimeout())
+                    .setSocketTimeout(ctx.getTimeout())
+                    .build());
+            }
+
             HttpUriRequest request = requestBuilder.build();
+            // NB: The response handler consumes the entity, which releases the connection back to the pool
             ResponseHandler<ValidationReport> responseHandler = response -> {
                 int status = response.getStatusLine().getStatusCode();
                 if (status == HttpStatus.SC_OK) {
                     HttpEntity entity = response.getEntity();
-                    return new ObjectMapper().readValue(entity.getContent(), ValidationReport.class);
+                    return VALIDATION_REPORT_READER.readValue(entity.getContent());
                 } else {
                     throw new ClientProtocolException("Unexpected response status: " + status);
                 }
@@ -120,4 +156,168 @@ public class SignatureValidationService {
             throw new IOException(new NemLogInException(ErrorCode.SDK011, msg, e));
         }
     }
+
+
+    /**
+     * Closes the HTTP clients and their connection pools
+     **/
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        try {
+            if (httpClient != null) {
+                httpClient.close();
+            }
+        } finally {
+            if (ignoreSslHttpClient != null) {
+                ignoreSslHttpClient.close();
+            }
+            httpClient = null;
+            ignoreSslHttpClient = null;
+        }
+    }
+
+
+    /**
+     * Returns the pooled HTTP client, instantiating it upon first use
+     *
+     * @param ignoreSsl whether to ignore SSL validation
+     * @return the pooled HTTP client
+     */
+    private synchronized CloseableHttpClient httpClient(boolean ignoreSsl) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("The signature validation service has been closed");
+        }
+        if (ignoreSsl) {
+            if (ignoreSslHttpClient == null) {
+                ignoreSslHttpClient = createHttpClient(true);
+            }
+            return ignoreSslHttpClient;
+        }
+        if (httpClient == null) {
+            httpClient = createHttpClient(false);
+        }
+        return httpClient;
+    }
+
+
+    /**
+     * Creates a new HTTP client backed by a pool of persistent connections
+     *
+     * @param ignoreSsl whether to ignore SSL validation
+     * @return the new HTTP client
+     */
+    private CloseableHttpClient createHttpClient(boolean ignoreSsl) throws IOException {
+        var sslSocketFactory = SSLConnectionSocketFactory.getSocketFactory();
+
+        // Handle SSL ignorance
+        if (ignoreSsl) {
+            try {
+                var sslContext = new SSLContextBuilder()
+                    .loadTrustMaterial(null, TrustAllStrategy.INSTANCE)
+                    .build();
+                sslSocketFactory = new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE);
+            } catch (KeyStoreException | KeyManagementException | NoSuchAlgorithmException e) {
+                throw new IOException(e);
+            }
+        }
+
+        var socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+            .register("http", PlainConnectionSocketFactory.getSocketFactory())
+            .register("https", sslSocketFactory)
+            .build();
+        var connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
+        connectionManager.setMaxTotal(maxConnectionsTotal);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        // Re-validate connections that have been idle for a while before re-using them
+        connectionManager.setValidateAfterInactivity(2000);
+
+        // Honour the keep-alive header of the server, but never keep connections alive longer than configured
+        long maxKeepAliveMs = keepAlive.toMillis();
+        ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+            long serverKeepAliveMs = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return serverKeepAliveMs > 0 ? Math.min(serverKeepAliveMs, maxKeepAliveMs) : maxKeepAliveMs;
+        };
+
+        LOG.debug("Creating pooled HTTP client (ignoreSsl={}, maxTotal={}, maxPerRoute={})",
+            ignoreSsl, maxConnectionsTotal, maxConnectionsPerRoute);
+
+        return HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setKeepAliveStrategy(keepAliveStrategy)
+            .evictExpiredConnections()
+            .evictIdleConnections(idleTimeout.toMillis(), TimeUnit.MILLISECONDS)
+            .build();
+    }
+
+
+    /**
+     * Builder for the {@link SignatureValidationService}
+     */
+    public static class Builder {
+
+        private int maxConnectionsTotal = 20;
+        private int maxConnectionsPerRoute = 10;
+        private Duration keepAlive = Duration.ofSeconds(60);
+        private Duration idleTimeout = Duration.ofSeconds(30);
+
+        /**
+         * Sets the max number of pooled connections in total. Default 20.
+         *
+         * @param maxConnectionsTotal the max number of pooled connections in total
+         * @return this
+         */
+        public Builder setMaxConnectionsTotal(int maxConnectionsTotal) {
+            this.maxConnectionsTotal = maxConnectionsTotal;
+            return this;
+        }
+
+        /**
+         * Sets the max number of pooled connections per route, i.e. per validation service host. Default 10.
+         *
+         * @param maxConnectionsPerRoute the max number of pooled connections per route
+         * @return this
+         */
+        public Builder setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+            this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+            return this;
+        }
+
+        /**
+         * Sets the max time a connection is kept alive, if not specified by the server. Default 60 seconds.
+         *
+         * @param keepAlive the max time a connection is kept alive
+         * @return this
+         */
+        public Builder setKeepAlive(Duration keepAlive) {
+            this.keepAlive = keepAlive;
+            return this;
+        }
+
+        /**
+         * Sets the time after which idle connections are evicted from the pool. Default 30 seconds.
+         *
+         * @param idleTimeout the time after which idle connections are evicted
+         * @return this
+         */
+        public Builder setIdleTimeout(Duration idleTimeout) {
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        /**
+         * Validates and builds a new {@link SignatureValidationService}
+         *
+         * @return a new {@link SignatureValidationService}
+         */
+        public SignatureValidationService build() {
+            if (maxConnectionsTotal < 1 || maxConnectionsPerRoute < 1) {
+                throw new IllegalArgumentException("Invalid max connections value");
+            }
+            if (keepAlive == null || keepAlive.isNegative() || idleTimeout == null || idleTimeout.isNegative()) {
+                throw new IllegalArgumentException("Invalid keepAlive or idleTimeout value");
+            }
+            return new SignatureValidationService(this);
+        }
+    }
 }
@@ -95,6 +95,8 @@ public class AllDocumentFormatTransformationService implements FormatTransformat
             SignedDocumentType signedDocument = objectFactory.createSignedDocumentType().withSignText(signText);
             DataToBeSigned dtbs = new DataToBeSigned.XadesDataToBeSigned(XmlUtils.marshal(signedDocument), fileName(name, "xml"));
             ctx.setDataToBeSigned(dtbs);
+            // Pass on the in-memory SignedDocument to the pre-signing step, to avoid unmarshalling the DTBS again
+            XmlUtils.attachSignedDocument(ctx, signedDocument);
         } catch (Exception e) {
             throw new TransformationException(SDK009, ctx, "Error when marshalling SignedDocument", e);
         }
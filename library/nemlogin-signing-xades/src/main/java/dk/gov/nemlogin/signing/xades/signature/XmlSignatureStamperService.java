@@ -15,6 +15,7 @@ import org.w3._2000._09.xmldsig_.SignatureType;
 
 import javax.xml.bind.JAXBException;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.UUID;
 
@@ -22,6 +23,16 @@ import static dk.gov.nemlogin.signing.exceptions.ErrorCode.SDK005;
 
 /**
  * Updates the DTBS XML SignedDocument with a initial Signature element containing SignedInfo with a reference to and digest of the DTBS
+ * <p>
+ * NB: Pre-signing serializes the SignText twice, and the Signature element separately:
+ * <ul>
+ *     <li>The SignText is serialized on its own, to compute the digest of its canonical form.</li>
+ *     <li>The SignedDocument, including the SignText and the new Signature element, is serialized as the DTBS.
+ *         The dtbsDigest is computed while serializing.</li>
+ *     <li>The Signature element is serialized on its own, for the dtbsSignedInfo signature parameter.</li>
+ * </ul>
+ * The SignText digest must be part of the Signature element before the DTBS can be serialized, so the DTBS
+ * cannot be serialized in a single pass.
  */
 public class XmlSignatureStamperService implements SignatureStamperService {
 
@@ -46,21 +57,28 @@ public class XmlSignatureStamperService implements SignatureStamperService {
         try {
             long t0 = System.currentTimeMillis();
             LOG.debug("Start pre-signing XML");
-            SignedDocumentType signedDocument = XmlUtils.unmarshal(ctx.getDataToBeSigned().getData());
+            SignedDocumentType signedDocument = XmlUtils.detachSignedDocument(ctx);
+            if (signedDocument == null) {
+                // The DTBS was not produced by the AllDocumentFormatTransformationService, or has since been replaced
+                signedDocument = XmlUtils.unmarshal(ctx.getDataToBeSigned().getData());
+            }
 
             // Add the initial XML Signature
             signedDocument.withSignature(createInitialSignature(signedDocument));
 
-            // Update the DTBS XML document
-            ctx.setDataToBeSigned(new DataToBeSigned.XadesDataToBeSigned(XmlUtils.marshal(signedDocument), ctx.getDataToBeSigned().getName()));
+            // Update the DTBS XML document. For SP flow, the dtbsDigest is computed while serializing the DTBS
+            final var dtbsDigester = ctx.newDtbsDigester();
+            final byte[] dtbs = XmlUtils.marshal(signedDocument, dtbsDigester);
+            ctx.setDataToBeSigned(new DataToBeSigned.XadesDataToBeSigned(dtbs, ctx.getDataToBeSigned().getName()), dtbsDigester);
 
             // Update the signature parameters with the SignedInfo element
-            final var signatureEncoded = Base64.getEncoder().encodeToString(XmlUtils.marshal(signedDocument.getSignature()).getBytes());
+            final String signature = XmlUtils.marshal(signedDocument.getSignature());
+            final var signatureEncoded = Base64.getEncoder().encodeToString(signature.getBytes(StandardCharsets.UTF_8));
             ctx.updateDtbsSignedInfo(signatureEncoded);
 
             LOG.info("Pre-signed XML in {} ms", System.currentTimeMillis() - t0);
             if (LOG.isDebugEnabled()) {
-                LOG.info("XML signature: {}", XmlUtils.marshal(signedDocument.getSignature()));
+                LOG.info("XML signature: {}", signature);
             }
         } catch (Exception e) {
             throw new TransformationException(SDK005, ctx, "Error pre-signing XML", e);
@@ -69,7 +87,7 @@ public class XmlSignatureStamperService implements SignatureStamperService {
 
     private SignatureType createInitialSignature(final SignedDocumentType signedDocument) throws JAXBException, IOException {
         // Calculate digest of SignText
-        final byte[] digest = XmlUtils.sha256(XmlUtils.canonicalize(XmlUtils.marshal(signedDocument.getSignText())));
+        final byte[] digest = XmlUtils.canonicalSha256(signedDocument.getSignText());
         final String signatureId = "id-" + UUID.randomUUID().toString();
         return objectFactory.createSignatureType()
             .withId(signatureId)
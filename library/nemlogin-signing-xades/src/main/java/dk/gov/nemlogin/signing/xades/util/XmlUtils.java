@@ -2,6 +2,9 @@ package dk.gov.nemlogin.signing.xades.util;
 
 import certifikat.gov.dk.nemlogin.v0_0.SignTextType;
 import certifikat.gov.dk.nemlogin.v0_0.SignedDocumentType;
+import dk.gov.nemlogin.signing.model.DataToBeSigned;
+import dk.gov.nemlogin.signing.service.TransformationContext;
+import dk.gov.nemlogin.signing.util.PooledByteArrayOutputStream;
 import org.apache.xml.security.c14n.CanonicalizationException;
 import org.apache.xml.security.c14n.Canonicalizer;
 import org.apache.xml.security.c14n.InvalidCanonicalizerException;
@@ -17,63 +20,212 @@ import javax.xml.transform.stream.StreamSource;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
  * Utility methods for processing XAdES documents
  */
 public class XmlUtils {
 
+    /**
+     * System property used for configuring the max number of pooled JAXB Marshallers and Unmarshallers.
+     * Defaults to twice the number of available processors.
+     */
+    public static final String JAXB_POOL_SIZE_PROPERTY = "nemlogin.signing.xades.jaxb-pool-size";
+
     private static final ObjectFactory OBJECT_FACTORY_XMLDSIG = new ObjectFactory();
     private static final certifikat.gov.dk.nemlogin.v0_0.ObjectFactory OBJECT_FACTORY_NEMLOGIN = new certifikat.gov.dk.nemlogin.v0_0.ObjectFactory();
 
+    private static final int POOL_SIZE = Integer.getInteger(JAXB_POOL_SIZE_PROPERTY, 2 * Runtime.getRuntime().availableProcessors());
+    private static final BlockingQueue<Marshaller> MARSHALLERS = new ArrayBlockingQueue<>(Math.max(1, POOL_SIZE));
+    private static final BlockingQueue<Unmarshaller> UNMARSHALLERS = new ArrayBlockingQueue<>(Math.max(1, POOL_SIZE));
+
+    /** Transformation context attribute holding the in-memory SignedDocument of the XAdES DTBS **/
+    private static final String SIGNED_DOCUMENT_ATTRIBUTE = XmlUtils.class.getName() + ".signedDocument";
+
+    private static volatile JAXBContext jaxbContext;
+
     private XmlUtils() {
     }
 
-    /** Instantiates the JAXB Context to used for XAdES processing **/
+    /**
+     * Returns the process-wide JAXB Context used for XAdES processing, instantiating it lazily on first use.
+     * A {@link JAXBContext} is thread-safe, whereas Marshallers and Unmarshallers are not, hence they are pooled.
+     */
     private static JAXBContext jaxbContext() throws JAXBException {
-        // Create JAXB Context
-        return JAXBContext.newInstance(SignedDocumentType.class, SignatureType.class);
+        var context = jaxbContext;
+        if (context == null) {
+            synchronized (XmlUtils.class) {
+                context = jaxbContext;
+                if (context == null) {
+                    // Create JAXB Context
+                    context = JAXBContext.newInstance(SignedDocumentType.class, SignatureType.class);
+                    jaxbContext = context;
+                }
+            }
+        }
+        return context;
     }
 
-    /** Instantiates a new JAXB Marshaller **/
-    private static Marshaller jaxbMarshaller() throws JAXBException {
-        // Create Marshaller
-        var jaxbMarshaller = jaxbContext().createMarshaller();
-        // Required formatting. Must always be FALSE otherwise c14n# canonicalization fails because of new lines and empty spaces
-        jaxbMarshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.FALSE);
+    /** Borrows a pooled JAXB Marshaller, or instantiates a new one **/
+    private static Marshaller borrowMarshaller() throws JAXBException {
+        var jaxbMarshaller = MARSHALLERS.poll();
+        if (jaxbMarshaller == null) {
+            // Create Marshaller
+            jaxbMarshaller = jaxbContext().createMarshaller();
+            // Required formatting. Must always be FALSE otherwise c14n# canonicalization fails because of new lines and empty spaces
+            jaxbMarshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.FALSE);
+        }
         return jaxbMarshaller;
     }
 
-    /** Instantiates a new JAXB Unmarshaller **/
-    private static Unmarshaller jaxbUnmarshaller() throws JAXBException {
-        // Create Unmarshaller
-        return jaxbContext().createUnmarshaller();
+    /** Borrows a pooled JAXB Unmarshaller, or instantiates a new one **/
+    private static Unmarshaller borrowUnmarshaller() throws JAXBException {
+        var jaxbUnmarshaller = UNMARSHALLERS.poll();
+        return jaxbUnmarshaller != null ? jaxbUnmarshaller : jaxbContext().createUnmarshaller();
+    }
+
+    /** Marshals the JAXB element to the writer using a pooled Marshaller **/
+    private static void marshal(final Object jaxbElement, final Writer writer) throws JAXBException {
+        var jaxbMarshaller = borrowMarshaller();
+        try {
+            jaxbMarshaller.marshal(jaxbElement, writer);
+        } finally {
+            // If the pool is full, the Marshaller is simply discarded
+            MARSHALLERS.offer(jaxbMarshaller);
+        }
+    }
+
+    /** Marshals the JAXB element as UTF-8 to the output stream using a pooled Marshaller **/
+    private static void marshal(final Object jaxbElement, final OutputStream outputStream) throws JAXBException {
+        var jaxbMarshaller = borrowMarshaller();
+        try {
+            jaxbMarshaller.marshal(jaxbElement, outputStream);
+        } finally {
+            // If the pool is full, the Marshaller is simply discarded
+            MARSHALLERS.offer(jaxbMarshaller);
+        }
     }
 
 
+    /**
+     * Marshals the signed document as UTF-8.
+     * <p>
+     * Embedded documents are Base64-encoded by JAXB directly into a pooled chunked buffer, so the only
+     * full-size copy made is the returned byte array.
+     *
+     * @param signedDocument the signed document to marshal
+     * @return the marshalled signed document
+     */
     public static byte[] marshal(final SignedDocumentType signedDocument) throws JAXBException {
-        final var sw = new StringWriter();
-        jaxbMarshaller().marshal(OBJECT_FACTORY_NEMLOGIN.createSignedDocument(signedDocument), sw);
-        return sw.toString().getBytes();
+        return marshal(signedDocument, null);
+    }
+
+
+    /**
+     * Marshals the signed document as UTF-8, while feeding the marshalled bytes to the {@code digester}.
+     * This allows e.g. the dtbsDigest to be computed without a second pass over the marshalled document.
+     *
+     * @param signedDocument the signed document to marshal
+     * @param digester if not null, digests the marshalled bytes
+     * @return the marshalled signed document
+     */
+    public static byte[] marshal(final SignedDocumentType signedDocument, final MessageDigest digester) throws JAXBException {
+        try (var out = new PooledByteArrayOutputStream()) {
+            marshal(OBJECT_FACTORY_NEMLOGIN.createSignedDocument(signedDocument),
+                digester != null ? new DigestOutputStream(out, digester) : out);
+            return out.toByteArray();
+        }
     }
 
     public static byte[] marshal(final SignTextType signText) throws JAXBException {
-        final var sw = new StringWriter();
-        jaxbMarshaller().marshal(OBJECT_FACTORY_NEMLOGIN.createSignText(signText), sw);
-        return sw.toString().getBytes();
+        try (var out = new PooledByteArrayOutputStream()) {
+            marshal(OBJECT_FACTORY_NEMLOGIN.createSignText(signText), out);
+            return out.toByteArray();
+        }
     }
 
     public static String marshal(final SignatureType signature) throws JAXBException {
         final var sw = new StringWriter();
-        jaxbMarshaller().marshal(OBJECT_FACTORY_XMLDSIG.createSignature(signature), sw);
+        marshal(OBJECT_FACTORY_XMLDSIG.createSignature(signature), sw);
         return sw.toString();
     }
 
     public static SignedDocumentType unmarshal(final byte[] signText) throws JAXBException {
-        return jaxbUnmarshaller().unmarshal( new StreamSource(new ByteArrayInputStream(signText)), SignedDocumentType.class).getValue();
+        var jaxbUnmarshaller = borrowUnmarshaller();
+        try {
+            return jaxbUnmarshaller.unmarshal(new StreamSource(new ByteArrayInputStream(signText)), SignedDocumentType.class).getValue();
+        } finally {
+            // If the pool is full, the Unmarshaller is simply discarded
+            UNMARSHALLERS.offer(jaxbUnmarshaller);
+        }
+    }
+
+    /**
+     * Produces a SHA-256 digest of the c14n# canonicalized SignText element.
+     * <p>
+     * The SignText is serialized into a pooled buffer, parsed from there, and the canonicalized XML is
+     * streamed directly into the digest without being buffered.
+     * NB: This serialization comes in addition to the serialization of the SignText as part of the DTBS.
+     *
+     * @param signText the SignText to compute a digest for
+     * @return a SHA-256 digest of the canonicalized SignText
+     */
+    public static byte[] canonicalSha256(final SignTextType signText) throws JAXBException, IOException {
+        final var signTextXml = new PooledByteArrayOutputStream();
+        try {
+            marshal(OBJECT_FACTORY_NEMLOGIN.createSignText(signText), signTextXml);
+        } catch (JAXBException e) {
+            signTextXml.close();
+            throw e;
+        }
+        org.apache.xml.security.Init.init();
+        try (var signTextStream = signTextXml.toInputStream()) {
+            final var document = org.apache.xml.security.utils.XMLUtils.read(signTextStream, true);
+            final var canonicalizer = Canonicalizer.getInstance(Canonicalizer.ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
+            final var digest = MessageDigest.getInstance("SHA-256");
+            try (var digestStream = new DigestOutputStream(OutputStream.nullOutputStream(), digest)) {
+                canonicalizer.canonicalizeSubtree(document, digestStream);
+            }
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("Unable to calculate SHA-256", e);
+        } catch (CanonicalizationException | InvalidCanonicalizerException | XMLParserException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Stores the in-memory {@link SignedDocumentType} of the current XAdES DTBS in the transformation context,
+     * allowing the pre-signing step to skip unmarshalling the DTBS.
+     *
+     * @param ctx the transformation context, whose DTBS must have been marshalled from the signed document
+     * @param signedDocument the in-memory signed document
+     */
+    public static void attachSignedDocument(final TransformationContext ctx, final SignedDocumentType signedDocument) {
+        ctx.setAttribute(SIGNED_DOCUMENT_ATTRIBUTE, new InMemorySignedDocument(ctx.getDataToBeSigned(), signedDocument));
+    }
+
+    /**
+     * Removes and returns the in-memory {@link SignedDocumentType} of the current XAdES DTBS from the transformation
+     * context. Returns null if undefined, or if the DTBS has been replaced since the signed document was attached.
+     *
+     * @param ctx the transformation context
+     * @return the in-memory signed document, or null if not available
+     */
+    public static SignedDocumentType detachSignedDocument(final TransformationContext ctx) {
+        var inMemory = ctx.getAttribute(SIGNED_DOCUMENT_ATTRIBUTE, InMemorySignedDocument.class);
+        ctx.removeAttribute(SIGNED_DOCUMENT_ATTRIBUTE);
+        return inMemory != null && inMemory.dataToBeSigned == ctx.getDataToBeSigned()
+            ? inMemory.signedDocument
+            : null;
     }
 
     /**
@@ -108,4 +260,18 @@ public class XmlUtils {
             throw new IOException(e);
         }
     }
+
+    /**
+     * Pairs an in-memory {@link SignedDocumentType} with the DTBS it has been marshalled to
+     */
+    private static class InMemorySignedDocument {
+        private final DataToBeSigned dataToBeSigned;
+        private final SignedDocumentType signedDocument;
+
+        /** Constructor **/
+        InMemorySignedDocument(DataToBeSigned dataToBeSigned, SignedDocumentType signedDocument) {
+            this.dataToBeSigned = dataToBeSigned;
+            this.signedDocument = signedDocument;
+        }
+    }
 }
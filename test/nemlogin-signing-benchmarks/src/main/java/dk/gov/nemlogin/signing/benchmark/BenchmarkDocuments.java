@@ -0,0 +1,160 @@
+package dk.gov.nemlogin.signing.benchmark;
+
+import dk.gov.nemlogin.signing.SignersDocumentGenerator;
+import dk.gov.nemlogin.signing.exceptions.NemLogInException;
+import dk.gov.nemlogin.signing.format.DocumentFormat;
+import dk.gov.nemlogin.signing.model.FlowType;
+import dk.gov.nemlogin.signing.model.SignatureKeys;
+import dk.gov.nemlogin.signing.model.SignatureParameters;
+import dk.gov.nemlogin.signing.model.SignersDocument;
+import dk.gov.nemlogin.signing.model.SignersDocument.HtmlSignersDocument;
+import dk.gov.nemlogin.signing.model.SignersDocument.PdfSignersDocument;
+import dk.gov.nemlogin.signing.model.SignersDocument.PlainTextSignersDocument;
+import dk.gov.nemlogin.signing.model.SignersDocument.XmlSignersDocument;
+import dk.gov.nemlogin.signing.model.SignersDocumentFile;
+import dk.gov.nemlogin.signing.model.ValidTransformation;
+import dk.gov.nemlogin.signing.service.TransformationContext;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Provides the Signer's Documents and signature keys used by the benchmarks.
+ * <p>
+ * The Signer's Documents are generated once per scale using the {@link SignersDocumentGenerator},
+ * and the signature keys are a self-signed RSA key pair, so the benchmarks do not depend on any test key stores.
+ */
+public class BenchmarkDocuments {
+
+    /** Base name of the Kalliope text used for the benchmarks **/
+    static final String DOCUMENT_NAME = "petersen2017120113";
+    static final String ENTITY_ID = "https://saml.serviceprovider.dk/login";
+
+    private static final Map<Integer, Path> DOCUMENT_DIRS = new ConcurrentHashMap<>();
+    private static SignatureKeys signatureKeys;
+
+    private BenchmarkDocuments() {
+    }
+
+
+    /**
+     * Returns the Signer's Document of the given format and scale
+     * @param sdFormat the Signer's Document format
+     * @param scale the number of times the text is repeated in the document
+     * @return the Signer's Document, with its data loaded
+     */
+    public static SignersDocument signersDocument(DocumentFormat sdFormat, int scale) throws IOException, NemLogInException {
+        var dir = documentDir(scale);
+        SignersDocument sd;
+        switch (sdFormat) {
+            case PDF:
+                sd = new PdfSignersDocument(file(dir, ".pdf"));
+                break;
+            case HTML:
+                sd = new HtmlSignersDocument(file(dir, ".html"));
+                break;
+            case TEXT:
+                sd = new PlainTextSignersDocument(file(dir, ".txt"), false);
+                break;
+            case XML:
+                var xmlSd = new XmlSignersDocument(file(dir, ".xml"), file(dir, ".xsl"));
+                xmlSd.getXsltData();
+                sd = xmlSd;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown SD format: " + sdFormat.name());
+        }
+        // Load the data up-front, so that file I/O is not part of the measurements
+        sd.getData();
+        return sd;
+    }
+
+
+    /**
+     * Creates a new {@link TransformationContext} for the given Signer's Document
+     * @param sd the Signer's Document
+     * @param transformation the transformation
+     * @param flowType the flow type
+     * @return the new {@link TransformationContext}
+     */
+    public static TransformationContext transformationContext(
+        SignersDocument sd,
+        ValidTransformation transformation,
+        FlowType flowType) throws NemLogInException, GeneralSecurityException, OperatorCreationException {
+
+        var signatureParameters = SignatureParameters.builder()
+            .setFlowType(flowType)
+            .setEntityID(ENTITY_ID)
+            .setDocumentFormat(transformation.getSdFormat())
+            .setSignatureFormat(transformation.getSignatureFormat())
+            .setReferenceText(flowType == FlowType.ServiceProvider ? "Signing " + sd.getName() : null)
+            .build();
+        return new TransformationContext(sd, signatureKeys(), signatureParameters);
+    }
+
+
+    /**
+     * Returns a self-signed RSA key pair used for JWS-signing the signature parameters
+     * @return the signature keys
+     */
+    public static synchronized SignatureKeys signatureKeys() throws GeneralSecurityException, OperatorCreationException {
+        if (signatureKeys == null) {
+            var keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+            keyPairGenerator.initialize(2048);
+            var keyPair = keyPairGenerator.generateKeyPair();
+
+            var name = new X500Name("CN=SignSDK Benchmark");
+            var now = Instant.now();
+            var certificateHolder = new JcaX509v3CertificateBuilder(
+                name,
+                BigInteger.valueOf(now.toEpochMilli()),
+                Date.from(now.minus(1, ChronoUnit.DAYS)),
+                Date.from(now.plus(365, ChronoUnit.DAYS)),
+                name,
+                keyPair.getPublic())
+                .build(new JcaContentSignerBuilder("SHA256withRSA").build(keyPair.getPrivate()));
+            var certificate = new JcaX509CertificateConverter().getCertificate(certificateHolder);
+            signatureKeys = new SignatureKeys(keyPair.getPrivate(), Collections.singletonList(certificate));
+        }
+        return signatureKeys;
+    }
+
+
+    /**
+     * Returns the directory containing the Signer's Documents of the given scale, generating them if needed
+     * @param scale the number of times the text is repeated in the documents
+     * @return the directory containing the Signer's Documents
+     */
+    private static Path documentDir(int scale) throws IOException {
+        var dir = DOCUMENT_DIRS.get(scale);
+        if (dir == null) {
+            dir = Files.createTempDirectory("signers-documents-x" + scale);
+            new SignersDocumentGenerator(dir.toUri().toString(), scale).generateSignersDocuments();
+            DOCUMENT_DIRS.put(scale, dir);
+        }
+        return dir;
+    }
+
+
+    /** Returns the Signer's Document file with the given extension **/
+    private static SignersDocumentFile file(Path dir, String extension) throws NemLogInException {
+        return SignersDocumentFile.builder()
+            .setPath(dir.resolve(DOCUMENT_NAME + extension).toString())
+            .build();
+    }
+}
@@ -0,0 +1,65 @@
+package dk.gov.nemlogin.signing.benchmark;
+
+import dk.gov.nemlogin.signing.dto.SigningPayloadDTO;
+import dk.gov.nemlogin.signing.model.FlowType;
+import dk.gov.nemlogin.signing.model.SignersDocument;
+import dk.gov.nemlogin.signing.model.ValidTransformation;
+import dk.gov.nemlogin.signing.service.SigningPayloadService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the full {@link SigningPayloadService#produceSigningPayloadDTO} pipeline
+ * for every {@link ValidTransformation}, flow type and document scale.
+ * <p>
+ * Run e.g. using: {@code java -jar target/benchmarks.jar SigningPayloadBenchmark -p scale=1}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SigningPayloadBenchmark {
+
+    @Param({"A", "B", "C", "D", "E", "F", "G", "H"})
+    public ValidTransformation transformation;
+
+    @Param({"ServiceProvider", "Broker"})
+    public FlowType flowType;
+
+    @Param({"1", "10", "50"})
+    public int scale;
+
+    private final SigningPayloadService signingPayloadService = new SigningPayloadService();
+    private SignersDocument signersDocument;
+
+
+    /** Generates and loads the Signer's Document **/
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        signersDocument = BenchmarkDocuments.signersDocument(transformation.getSdFormat(), scale);
+        // Ensure that the signature keys are not generated as part of the first measurement
+        BenchmarkDocuments.signatureKeys();
+    }
+
+
+    /** Produces the signing payload from the Signer's Document **/
+    @Benchmark
+    public SigningPayloadDTO produceSigningPayloadDTO() throws Exception {
+        var ctx = BenchmarkDocuments.transformationContext(signersDocument, transformation, flowType);
+        return signingPayloadService.produceSigningPayloadDTO(ctx);
+    }
+}
@@ -0,0 +1,223 @@
+package dk.gov.nemlogin.signing.benchmark;
+
+import dk.gov.nemlogin.signing.exceptions.NemLogInException;
+import dk.gov.nemlogin.signing.model.FlowType;
+import dk.gov.nemlogin.signing.model.SignersDocument;
+import dk.gov.nemlogin.signing.model.ValidTransformation;
+import dk.gov.nemlogin.signing.service.ServiceLoaderFactory;
+import dk.gov.nemlogin.signing.service.TransformationContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the individual steps of the {@code SigningPayloadService} pipeline, using the Service Provider flow.
+ * <p>
+ * Each benchmark has its own state, which runs all preceding steps before each invocation,
+ * so that only the step itself is measured.
+ * <p>
+ * Run e.g. using: {@code java -jar target/benchmarks.jar SigningStageBenchmark.preSign -p transformation=F}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SigningStageBenchmark {
+
+    /** The steps of the pipeline, in order **/
+    public enum Stage {
+        VALIDATE, TRANSFORM, ATTACH, PRE_SIGN, SIGN
+    }
+
+
+    /** Validates the Signer's Document **/
+    @Benchmark
+    public TransformationContext validate(ValidateState state) throws NemLogInException {
+        return run(Stage.VALIDATE, state.ctx);
+    }
+
+
+    /** Transforms the Signer's Document to the DTBS **/
+    @Benchmark
+    public TransformationContext transform(TransformState state) throws NemLogInException {
+        return run(Stage.TRANSFORM, state.ctx);
+    }
+
+
+    /** Attaches the source documents to the DTBS **/
+    @Benchmark
+    public TransformationContext attach(AttachState state) throws NemLogInException {
+        return run(Stage.ATTACH, state.ctx);
+    }
+
+
+    /** Pre-signs the DTBS **/
+    @Benchmark
+    public TransformationContext preSign(PreSignState state) throws NemLogInException {
+        return run(Stage.PRE_SIGN, state.ctx);
+    }
+
+
+    /** JWS-signs the signature parameters **/
+    @Benchmark
+    public String sign(SignState state) throws NemLogInException {
+        return ServiceLoaderFactory
+            .getSignatureParameterSigningService()
+            .jwsSign(state.ctx.getSignatureParameters(), state.ctx.getSignatureKeys());
+    }
+
+
+    /**
+     * Runs the given step of the pipeline
+     * @param stage the step to run
+     * @param ctx the {@link TransformationContext}
+     * @return the {@link TransformationContext}
+     */
+    static TransformationContext run(Stage stage, TransformationContext ctx) throws NemLogInException {
+        switch (stage) {
+            case VALIDATE:
+                ServiceLoaderFactory
+                    .getSignersDocumentValidationService(ctx.getSignersDocument().getFormat())
+                    .validate(ctx);
+                break;
+            case TRANSFORM:
+                ServiceLoaderFactory
+                    .getFormatTransformationService(ctx.getTransformation())
+                    .transform(ctx);
+                break;
+            case ATTACH:
+                ServiceLoaderFactory
+                    .getSourceAttachmentService(ctx.getTransformation())
+                    .attachSourceFiles(ctx);
+                break;
+            case PRE_SIGN:
+                ServiceLoaderFactory
+                    .getSignatureStamperService(ctx.getDataToBeSigned().getFormat())
+                    .preSign(ctx);
+                break;
+            case SIGN:
+                ServiceLoaderFactory
+                    .getSignatureParameterSigningService()
+                    .jwsSign(ctx.getSignatureParameters(), ctx.getSignatureKeys());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown stage " + stage);
+        }
+        return ctx;
+    }
+
+
+    /**
+     * Base class of the per-step benchmark states.
+     * Before each invocation, a new {@link TransformationContext} is created, and all steps preceding
+     * the benchmarked step are run.
+     */
+    public abstract static class StageState {
+
+        @Param({"A", "B", "C", "D", "E", "F", "G", "H"})
+        public ValidTransformation transformation;
+
+        @Param({"1", "10", "50"})
+        public int scale;
+
+        private final Stage stage;
+        private SignersDocument signersDocument;
+        TransformationContext ctx;
+
+
+        /** Constructor **/
+        protected StageState(Stage stage) {
+            this.stage = stage;
+        }
+
+
+        /** Generates and loads the Signer's Document **/
+        @Setup(Level.Trial)
+        public void loadSignersDocument() throws Exception {
+            signersDocument = BenchmarkDocuments.signersDocument(transformation.getSdFormat(), scale);
+        }
+
+
+        /** Creates a new {@link TransformationContext} and runs the preceding steps **/
+        @Setup(Level.Invocation)
+        public void prepareContext() throws Exception {
+            ctx = BenchmarkDocuments.transformationContext(signersDocument, transformation, FlowType.ServiceProvider);
+            for (var s : Stage.values()) {
+                if (s.ordinal() >= stage.ordinal()) {
+                    break;
+                }
+                run(s, ctx);
+            }
+        }
+
+
+        /** Releases any intermediate artifacts of the {@link TransformationContext} **/
+        @TearDown(Level.Invocation)
+        public void clearContext() {
+            ctx.clearAttributes();
+        }
+    }
+
+
+    /** State of the {@link #validate} benchmark **/
+    @State(Scope.Thread)
+    public static class ValidateState extends StageState {
+        /** Constructor **/
+        public ValidateState() {
+            super(Stage.VALIDATE);
+        }
+    }
+
+
+    /** State of the {@link #transform} benchmark **/
+    @State(Scope.Thread)
+    public static class TransformState extends StageState {
+        /** Constructor **/
+        public TransformState() {
+            super(Stage.TRANSFORM);
+        }
+    }
+
+
+    /** State of the {@link #attach} benchmark **/
+    @State(Scope.Thread)
+    public static class AttachState extends StageState {
+        /** Constructor **/
+        public AttachState() {
+            super(Stage.ATTACH);
+        }
+    }
+
+
+    /** State of the {@link #preSign} benchmark **/
+    @State(Scope.Thread)
+    public static class PreSignState extends StageState {
+        /** Constructor **/
+        public PreSignState() {
+            super(Stage.PRE_SIGN);
+        }
+    }
+
+
+    /** State of the {@link #sign} benchmark **/
+    @State(Scope.Thread)
+    public static class SignState extends StageState {
+        /** Constructor **/
+        public SignState() {
+            super(Stage.SIGN);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package dk.gov.nemlogin.signing.benchmark;
+
+import dk.gov.nemlogin.signing.pdf.validation.WhiteList;
+import dk.gov.nemlogin.signing.pdf.validation.WhiteListMatcher;
+import org.apache.pdfbox.cos.COSName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Benchmarks matching PDF names against the whitelist, as done for every name of a PDF Signer's Document.
+ * <p>
+ * Compares the original matching (hash set look-up followed by streaming over the regular expressions) with the
+ * precompiled {@link WhiteListMatcher}, both with and without the cached verdicts.
+ * <p>
+ * The benchmarks are parameterised over the {@code nameLength} of the matched names. Run with the JMH GC profiler:
+ * {@code java -jar target/benchmarks.jar WhiteListBenchmark -prof gc}
+ * <p>
+ * The {@code gc.alloc.rate.norm} metric of the {@code precompiled} and {@code cached} benchmarks should be ~0 B/op
+ * for all name lengths, whereas the {@code legacy} matching allocates a stream and a {@link java.util.regex.Matcher}
+ * per name. The time of the {@code precompiled} matching should grow linearly with the name length, and the time of
+ * the {@code cached} matching should be independent of the name length.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class WhiteListBenchmark {
+
+    private static final Set<String> NAMES = Set.of("Type", "Page", "Font", "Resources", "MediaBox", "Contents");
+    private static final Set<Pattern> PATTERNS = Set.of(Pattern.compile("/F\\d+"));
+
+    /** The length of the matched names **/
+    @Param({"4", "32", "256"})
+    public int nameLength;
+
+    private final WhiteListMatcher matcher = new WhiteListMatcher(NAMES, PATTERNS, 10000);
+    private COSName[] names;
+
+
+    /**
+     * Sets up names of the given length: a name matching the regular expression, a name that only fails to match
+     * the regular expression at the last character, and non-whitelisted names
+     **/
+    @Setup(Level.Trial)
+    public void setup() {
+        var digits = "1".repeat(nameLength - 2);
+        names = new COSName[] {
+            COSName.getPDFName("/F" + digits),
+            COSName.getPDFName("/F" + digits.substring(1) + "x"),
+            COSName.getPDFName("T" + "y".repeat(nameLength - 1)),
+            COSName.getPDFName("U".repeat(nameLength))
+        };
+    }
+
+
+    /** Matches the names the way the whitelist originally did **/
+    @Benchmark
+    public int legacy() {
+        int count = 0;
+        for (COSName name : names) {
+            if (NAMES.contains(name.getName()) ||
+                PATTERNS.stream().anyMatch(p -> p.matcher(name.getName()).matches())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+
+    /** Matches the names using the precompiled matcher, without the cached verdicts **/
+    @Benchmark
+    public int precompiled() {
+        int count = 0;
+        for (COSName name : names) {
+            if (matcher.matches(name.getName())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+
+    /** Matches the names using the precompiled matcher and the cached verdicts **/
+    @Benchmark
+    public int cached() {
+        int count = 0;
+        for (COSName name : names) {
+            if (matcher.matches(name)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+
+    /** Matches the names using the actual whitelist **/
+    @Benchmark
+    public int whiteList() {
+        int count = 0;
+        for (COSName name : names) {
+            if (WhiteList.isNameWhitelisted(name)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -21,6 +21,7 @@ import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.function.UnaryOperator;
@@ -39,6 +40,9 @@ import java.util.stream.Stream;
  * CSS elements of the SignHTML specification.<br>
  * The produced PDF SD is created from the HTML, and the produced XML SD (incl XSL) will in turn produce the HTML.
  * <p>
+ * Larger documents can be produced by specifying a {@code scale}, in which case the lines of each text
+ * are repeated {@code scale} times.
+ * <p>
  * Credits: Test data for the Signer's Documents fetched from: https://kalliope.org
  */
 public class SignersDocumentGenerator {
@@ -56,6 +60,7 @@ public class SignersDocumentGenerator {
     private final String documentRoot;
     private final List<String> kalliopeUrls;
     private final Properties transformationProperties;
+    private final int scale;
     private final ResourceLoader resourceLoader = new DefaultResourceLoader();
 
     // NB: Use Saxon XSLT 3, since it allows for conversion of JSON -> XML.
@@ -83,12 +88,21 @@ public class SignersDocumentGenerator {
 
 
     /** Designated Constructor */
-    public SignersDocumentGenerator(String documentRoot, List<String> kalliopeUrls, Properties transformationProperties) {
+    public SignersDocumentGenerator(String documentRoot, List<String> kalliopeUrls, Properties transformationProperties, int scale) {
+        if (scale < 1) {
+            throw new IllegalArgumentException("Invalid scale: " + scale);
+        }
         this.kalliopeUrls = kalliopeUrls;
         this.documentRoot = Objects.requireNonNull(documentRoot);
         this.transformationProperties = transformationProperties;
-        LOG.info("Initialized with documentRoot: {}, kalliopeUrls: {}",
-            documentRoot, Collections.singletonList(kalliopeUrls));
+        this.scale = scale;
+        LOG.info("Initialized with documentRoot: {}, kalliopeUrls: {}, scale: {}",
+            documentRoot, Collections.singletonList(kalliopeUrls), scale);
+    }
+
+    /** Constructor */
+    public SignersDocumentGenerator(String documentRoot, List<String> kalliopeUrls, Properties transformationProperties) {
+        this(documentRoot, kalliopeUrls, transformationProperties, 1);
     }
 
     /** Constructor */
@@ -101,6 +115,11 @@ public class SignersDocumentGenerator {
         this(documentRoot, DEFAULT_KALLIOPE_URLS);
     }
 
+    /** Constructor */
+    public SignersDocumentGenerator(String documentRoot, int scale) {
+        this(documentRoot, DEFAULT_KALLIOPE_URLS, null, scale);
+    }
+
 
     /**
      * Generates Signer's Documents for all configured Kalliope URLs
@@ -129,6 +148,9 @@ public class SignersDocumentGenerator {
 
         // Produce xml, html and plain text from JSON
         var xml = xslt(xsltPath.apply("json-to-xml.xsl"), jsonXml);
+        if (scale > 1) {
+            xml = xslt(xsltPath.apply("scale-xml.xsl"), xml, Map.of("scale", scale));
+        }
         var html = xslt(xsltPath.apply("xml-to-html.xsl"), xml);
         var text = xslt(xsltPath.apply("xml-to-text.xsl"), xml);
 
@@ -202,13 +224,26 @@ public class SignersDocumentGenerator {
      * @return the XSLT result
      */
     private String xslt(String xsltPath, String xml) throws IOException {
+        return xslt(xsltPath, xml, Map.of());
+    }
+
+
+    /**
+     * Performs an XSLT with the given stylesheet parameters
+     * @param xsltPath path to XSLT
+     * @param xml the actual XML
+     * @param params the stylesheet parameters
+     * @return the XSLT result
+     */
+    private String xslt(String xsltPath, String xml, Map<String, Object> params) throws IOException {
         try (var in = resourceLoader.getResource(xsltPath).getInputStream()) {
             var xsltSource = new StreamSource(in);
             var xmlSource = new StreamSource(new StringReader(xml));
             var writer = new StringWriter();
             try {
-                factory.newTransformer(xsltSource)
-                    .transform(xmlSource, new StreamResult(writer));
+                var transformer = factory.newTransformer(xsltSource);
+                params.forEach(transformer::setParameter);
+                transformer.transform(xmlSource, new StreamResult(writer));
             } catch (TransformerException e) {
                 throw new IOException(e);
             }
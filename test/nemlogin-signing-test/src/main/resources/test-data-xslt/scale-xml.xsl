@@ -0,0 +1,21 @@
+<?xml version="1.0"?>
+<xsl:stylesheet xmlns:xsl="http://www.w3.org/1999/XSL/Transform"
+                xmlns:xs="http://www.w3.org/2001/XMLSchema"
+                xmlns:fn="http://www.w3.org/2005/xpath-functions"
+                exclude-result-prefixes="xs"
+                version="3.0">
+    <!-- Repeats the lines of the text "scale" times, in order to produce larger Signer's Documents -->
+    <xsl:param name="scale" as="xs:integer" select="1"/>
+    <xsl:output indent="yes" omit-xml-declaration="yes"/>
+    <xsl:mode on-no-match="shallow-copy"/>
+
+    <xsl:template match="fn:map[@key='text']/fn:array[@key='content_html']">
+        <xsl:variable name="lines" select="*"/>
+        <xsl:copy>
+            <xsl:copy-of select="@*"/>
+            <xsl:for-each select="1 to $scale">
+                <xsl:copy-of select="$lines"/>
+            </xsl:for-each>
+        </xsl:copy>
+    </xsl:template>
+</xsl:stylesheet>
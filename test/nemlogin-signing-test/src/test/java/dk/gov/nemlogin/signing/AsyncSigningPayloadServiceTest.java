@@ -0,0 +1,84 @@
+package dk.gov.nemlogin.signing;
+
+import dk.gov.nemlogin.signing.exceptions.ValidationException;
+import dk.gov.nemlogin.signing.format.DocumentFormat;
+import dk.gov.nemlogin.signing.format.SignatureFormat;
+import dk.gov.nemlogin.signing.model.SigningPayload;
+import dk.gov.nemlogin.signing.service.AsyncSigningPayloadService;
+import dk.gov.nemlogin.signing.service.TransformationContext;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Test the {@link AsyncSigningPayloadService}
+ */
+class AsyncSigningPayloadServiceTest extends AbstractSigningTest {
+
+    private static final AsyncSigningPayloadService ASYNC_SIGNING_PAYLOAD_SERVICE = AsyncSigningPayloadService.builder()
+        .setCpuThreads(2)
+        .setIoThreads(1)
+        .build();
+
+
+    @AfterAll
+    static void closeService() {
+        ASYNC_SIGNING_PAYLOAD_SERVICE.close();
+    }
+
+
+    /**
+     * Tests that an XML SD -> PDF DTBS signing payload is produced asynchronously
+     */
+    @Test
+    void testProduceSigningPayload() throws Exception {
+        TransformationContext ctx = prepareTransformationContext(
+            "/breakfast.xml",
+            DocumentFormat.XML,
+            SignatureFormat.PAdES);
+
+        SigningPayload signingPayload = ASYNC_SIGNING_PAYLOAD_SERVICE.produceSigningPayload(ctx)
+            .get(60, TimeUnit.SECONDS);
+
+        Assertions.assertNotNull(signingPayload.getSignatureParameters());
+        Assertions.assertNotNull(signingPayload.getDtbs());
+        Assertions.assertNotNull(ctx.getSignatureParameters().getDtbsDigest());
+    }
+
+
+    /**
+     * Tests that the returned future fails with the exception of the failing step
+     */
+    @Test
+    void testFailedStage() throws Exception {
+        TransformationContext ctx = prepareTransformationContext(
+            "/EmptyPage-signed.pdf",
+            DocumentFormat.PDF,
+            SignatureFormat.PAdES);
+
+        var future = ASYNC_SIGNING_PAYLOAD_SERVICE.produceSigningPayload(ctx);
+        var e = Assertions.assertThrows(ExecutionException.class, () -> future.get(60, TimeUnit.SECONDS));
+        Assertions.assertTrue(e.getCause() instanceof ValidationException);
+    }
+
+
+    /**
+     * Tests that the returned future fails when the deadline is exceeded
+     */
+    @Test
+    void testTimeout() throws Exception {
+        TransformationContext ctx = prepareTransformationContext(
+            "/breakfast.xml",
+            DocumentFormat.XML,
+            SignatureFormat.PAdES);
+
+        var future = ASYNC_SIGNING_PAYLOAD_SERVICE.produceSigningPayload(ctx, Duration.ofNanos(1));
+        var e = Assertions.assertThrows(ExecutionException.class, () -> future.get(60, TimeUnit.SECONDS));
+        Assertions.assertTrue(e.getCause() instanceof TimeoutException);
+    }
+}
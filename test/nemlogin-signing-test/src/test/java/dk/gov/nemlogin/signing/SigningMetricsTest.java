@@ -0,0 +1,133 @@
+package dk.gov.nemlogin.signing;
+
+import dk.gov.nemlogin.signing.exceptions.ErrorCode;
+import dk.gov.nemlogin.signing.exceptions.ValidationException;
+import dk.gov.nemlogin.signing.format.DocumentFormat;
+import dk.gov.nemlogin.signing.format.SignatureFormat;
+import dk.gov.nemlogin.signing.model.SigningStage;
+import dk.gov.nemlogin.signing.model.SigningStageEvent;
+import dk.gov.nemlogin.signing.model.ValidTransformation;
+import dk.gov.nemlogin.signing.service.ServiceLoaderFactory;
+import dk.gov.nemlogin.signing.service.SigningMetrics;
+import dk.gov.nemlogin.signing.service.SigningPayloadService;
+import dk.gov.nemlogin.signing.service.TransformationContext;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+/**
+ * Test that the {@link SigningPayloadService} reports the steps of the signing pipeline
+ * to the {@link SigningMetrics} service.
+ */
+class SigningMetricsTest extends AbstractSigningTest {
+
+    private static final RecordingSigningMetrics METRICS = new RecordingSigningMetrics();
+
+    private final SigningPayloadService signingPayloadService = new SigningPayloadService();
+
+
+    @BeforeAll
+    static void registerSigningMetrics() {
+        ServiceLoaderFactory.register(METRICS);
+    }
+
+
+    @AfterAll
+    static void unregisterSigningMetrics() {
+        ServiceLoaderFactory.unregister(METRICS);
+    }
+
+
+    @BeforeEach
+    void clearEvents() {
+        METRICS.events.clear();
+    }
+
+
+    /**
+     * Tests that all steps of a successful XML SD -> PDF DTBS transformation are reported
+     */
+    @Test
+    void testSuccessfulStages() throws Exception {
+        TransformationContext ctx = prepareTransformationContext(
+            "/breakfast.xml",
+            DocumentFormat.XML,
+            SignatureFormat.PAdES);
+
+        signingPayloadService.produceSigningPayload(ctx);
+
+        List<SigningStage> stages = METRICS.events.stream()
+            .map(SigningStageEvent::getStage)
+            .collect(Collectors.toList());
+        Assertions.assertEquals(List.of(
+            SigningStage.VALIDATE,
+            SigningStage.TRANSFORM,
+            SigningStage.ATTACH,
+            SigningStage.PRE_SIGN,
+            SigningStage.DTBS_DIGEST,
+            SigningStage.SIGN,
+            SigningStage.PAYLOAD), stages);
+
+        for (SigningStageEvent event : METRICS.events) {
+            Assertions.assertTrue(event.isSuccess());
+            Assertions.assertEquals(ValidTransformation.F, event.getTransformation());
+            Assertions.assertTrue(event.getDurationNanos() > 0);
+        }
+
+        // Attaching the XML and XSLT, and pre-signing the PDF, both increase the size of the DTBS
+        SigningStageEvent attach = METRICS.events.get(2);
+        SigningStageEvent preSign = METRICS.events.get(3);
+        Assertions.assertTrue(attach.getOutputBytes() > attach.getInputBytes());
+        Assertions.assertTrue(preSign.getOutputBytes() > preSign.getInputBytes());
+        Assertions.assertEquals(attach.getOutputBytes(), preSign.getInputBytes());
+    }
+
+
+    /**
+     * Tests that the failing step and the pipeline are reported with the error code as outcome
+     */
+    @Test
+    void testFailedStage() throws Exception {
+        TransformationContext ctx = prepareTransformationContext(
+            "/EmptyPage-signed.pdf",
+            DocumentFormat.PDF,
+            SignatureFormat.PAdES);
+
+        Assertions.assertThrows(
+            ValidationException.class,
+            () -> signingPayloadService.produceSigningPayload(ctx));
+
+        Assertions.assertEquals(2, METRICS.events.size());
+        Assertions.assertEquals(SigningStage.VALIDATE, METRICS.events.get(0).getStage());
+        Assertions.assertEquals(SigningStage.PAYLOAD, METRICS.events.get(1).getStage());
+        for (SigningStageEvent event : METRICS.events) {
+            Assertions.assertFalse(event.isSuccess());
+            Assertions.assertEquals(ErrorCode.SDK010.name(), event.getOutcome());
+        }
+    }
+
+
+    /**
+     * Records all reported events
+     */
+    static class RecordingSigningMetrics implements SigningMetrics {
+
+        final List<SigningStageEvent> events = new CopyOnWriteArrayList<>();
+
+        @Override
+        public int getPriority() {
+            return 1000;
+        }
+
+        @Override
+        public void stageCompleted(SigningStageEvent event) {
+            events.add(event);
+        }
+    }
+}
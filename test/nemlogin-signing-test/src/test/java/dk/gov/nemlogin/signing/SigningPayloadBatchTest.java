@@ -0,0 +1,54 @@
+package dk.gov.nemlogin.signing;
+
+import dk.gov.nemlogin.signing.exceptions.ValidationException;
+import dk.gov.nemlogin.signing.format.DocumentFormat;
+import dk.gov.nemlogin.signing.format.SignatureFormat;
+import dk.gov.nemlogin.signing.service.SigningPayloadResult;
+import dk.gov.nemlogin.signing.service.SigningPayloadService;
+import dk.gov.nemlogin.signing.service.TransformationContext;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Test producing a batch of signing payloads using the {@link SigningPayloadService}
+ */
+class SigningPayloadBatchTest extends AbstractSigningTest {
+
+    private final SigningPayloadService signingPayloadService = new SigningPayloadService();
+
+
+    /**
+     * Tests that all items of a batch are produced, and that a failing item is reported with its error
+     */
+    @Test
+    void testProduceSigningPayloads() throws Exception {
+        List<TransformationContext> contexts = new ArrayList<>();
+        for (var i = 0; i < 5; i++) {
+            contexts.add(prepareTransformationContext("/breakfast.xml", DocumentFormat.XML, SignatureFormat.PAdES));
+        }
+        contexts.add(prepareTransformationContext("/EmptyPage-signed.pdf", DocumentFormat.PDF, SignatureFormat.PAdES));
+
+        List<SigningPayloadResult> results = signingPayloadService.produceSigningPayloads(contexts, 3);
+
+        Assertions.assertEquals(contexts.size(), results.size());
+        Assertions.assertEquals(
+            List.of(0, 1, 2, 3, 4, 5),
+            results.stream().map(SigningPayloadResult::getIndex).sorted().collect(Collectors.toList()));
+
+        for (SigningPayloadResult result : results) {
+            Assertions.assertSame(contexts.get(result.getIndex()), result.getCtx());
+            if (result.getIndex() < 5) {
+                Assertions.assertTrue(result.isSuccess());
+                Assertions.assertNotNull(result.getSigningPayloadDTO().getDtbs());
+            } else {
+                Assertions.assertFalse(result.isSuccess());
+                Assertions.assertNull(result.getSigningPayload());
+                Assertions.assertTrue(result.getError() instanceof ValidationException);
+            }
+        }
+    }
+}
@@ -24,6 +24,9 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Collection;
 import java.util.Objects;
 import java.util.stream.Collectors;
@@ -42,6 +45,7 @@ import java.util.stream.Collectors;
  *   <li>Transform all SD's to DTBS of type PDF for Broker flow.</li>
  *   <li>Transform all SD's to DTBS of type XML for Broker flow.</li>
  * </ul>
+ * For Service Provider flow, the dtbsDigest computed while serializing the DTBS is verified against the DTBS.
  */
 @TestMethodOrder(MethodOrderer.OrderAnnotation.class)
 class SigningPayloadServiceTest extends AbstractSigningTest {
@@ -167,6 +171,11 @@ class SigningPayloadServiceTest extends AbstractSigningTest {
             Assertions.fail("Should not fail producing DTBS for " + file, e);
         }
 
+        // For SP flow, the dtbsDigest is computed while serializing the DTBS. Verify it against the DTBS bytes
+        if (flowType == FlowType.ServiceProvider) {
+            assertStreamedDtbsDigest(ctx, signingPayload);
+        }
+
         // Save the generated DTBS to a file. Prepend SD format to file name to get uniqueness
         DataToBeSigned dtbs = signingPayload.getDtbs();
         String dtbsFileName = String.format("%s_%s_%s", flowType, sd.getFormat(), dtbs.getName());
@@ -183,6 +192,21 @@ class SigningPayloadServiceTest extends AbstractSigningTest {
     }
 
 
+    /**
+     * Asserts that the dtbsDigest, which is computed while the PAdES or XAdES DTBS is serialized,
+     * equals the SHA-256 digest of the final DTBS bytes
+     * @param ctx the transformation context
+     * @param signingPayload the produced signing payload
+     */
+    private void assertStreamedDtbsDigest(TransformationContext ctx, SigningPayload signingPayload) throws NoSuchAlgorithmException {
+        Assertions.assertTrue(ctx.isDtbsDigestUpToDate());
+        byte[] expectedDigest = MessageDigest.getInstance("SHA-256").digest(signingPayload.getDtbs().getData());
+        Assertions.assertEquals(
+            Base64.getEncoder().encodeToString(expectedDigest),
+            ctx.getSignatureParameters().getDtbsDigest());
+    }
+
+
     /**
      * For XML files, look for a corresponding XSL file with the same file name but
      * or ".xsl" file extension
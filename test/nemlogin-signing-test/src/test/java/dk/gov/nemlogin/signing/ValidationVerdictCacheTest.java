@@ -0,0 +1,132 @@
+package dk.gov.nemlogin.signing;
+
+import dk.gov.nemlogin.signing.exceptions.ErrorCode;
+import dk.gov.nemlogin.signing.exceptions.TransformationException;
+import dk.gov.nemlogin.signing.exceptions.ValidationException;
+import dk.gov.nemlogin.signing.format.DocumentFormat;
+import dk.gov.nemlogin.signing.format.SignatureFormat;
+import dk.gov.nemlogin.signing.model.PdfMemoryPolicy;
+import dk.gov.nemlogin.signing.pdf.validation.PdfValidationLimits;
+import dk.gov.nemlogin.signing.pdf.validation.PdfValidationService;
+import dk.gov.nemlogin.signing.service.ServiceLoaderFactory;
+import dk.gov.nemlogin.signing.service.SignersDocumentValidationService;
+import dk.gov.nemlogin.signing.service.TransformationContext;
+import dk.gov.nemlogin.signing.service.impl.CachingSignersDocumentValidationService;
+import dk.gov.nemlogin.signing.service.impl.XmlValidationService;
+import dk.gov.nemlogin.signing.util.ValidationVerdictCache;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+/**
+ * Test that SD validation verdicts are cached by the {@link ValidationVerdictCache}
+ */
+class ValidationVerdictCacheTest extends AbstractSigningTest {
+
+    private static final String GENERATED_HTML_ATTRIBUTE = XmlValidationService.class.getName() + ".generatedHtml";
+
+
+    /**
+     * Tests that a successful validation is cached for a new context with the same SD
+     */
+    @Test
+    void testCachedValidVerdict() throws Exception {
+        SignersDocumentValidationService validationService = ServiceLoaderFactory.getSignersDocumentValidationService(DocumentFormat.XML);
+        Assertions.assertTrue(validationService instanceof CachingSignersDocumentValidationService);
+        Assertions.assertSame(validationService, ServiceLoaderFactory.getSignersDocumentValidationService(DocumentFormat.XML));
+
+        var cache = ValidationVerdictCache.getInstance().getCache();
+        validationService.validate(prepareTransformationContext("/breakfast.xml", DocumentFormat.XML, SignatureFormat.PAdES));
+        long hits = cache.getHitCount();
+
+        validationService.validate(prepareTransformationContext("/breakfast.xml", DocumentFormat.XML, SignatureFormat.XAdES));
+        Assertions.assertEquals(hits + 1, cache.getHitCount());
+    }
+
+
+    /**
+     * Tests that the HTML generated from an XML SD is handed on to the transformation upon a cache hit,
+     * so that the XSLT is not run again
+     */
+    @Test
+    void testCachedGeneratedHtml() throws Exception {
+        SignersDocumentValidationService validationService = ServiceLoaderFactory.getSignersDocumentValidationService(DocumentFormat.XML);
+        validationService.validate(prepareTransformationContext("/breakfast.xml", DocumentFormat.XML, SignatureFormat.PAdES));
+
+        var cache = ValidationVerdictCache.getInstance().getCache();
+        long hits = cache.getHitCount();
+        TransformationContext ctx = prepareTransformationContext("/breakfast.xml", DocumentFormat.XML, SignatureFormat.PAdES);
+        validationService.validate(ctx);
+
+        Assertions.assertEquals(hits + 1, cache.getHitCount());
+        Assertions.assertNotNull(ctx.getAttribute(GENERATED_HTML_ATTRIBUTE, Object.class));
+    }
+
+
+    /**
+     * Tests that verdicts are not shared between PDF validation services with different limits
+     */
+    @Test
+    void testPdfValidationLimits() throws Exception {
+        var cache = new ValidationVerdictCache(10, Duration.ZERO);
+        var unlimited = new CachingSignersDocumentValidationService(new PdfValidationService(PdfValidationLimits.UNLIMITED), cache);
+        var limited = new CachingSignersDocumentValidationService(new PdfValidationService(new PdfValidationLimits(false, 1, 0)), cache);
+
+        unlimited.validate(prepareTransformationContext("/EmptyPage.pdf", DocumentFormat.PDF, SignatureFormat.PAdES));
+        TransformationContext ctx = prepareTransformationContext("/EmptyPage.pdf", DocumentFormat.PDF, SignatureFormat.PAdES);
+        Assertions.assertThrows(ValidationException.class, () -> limited.validate(ctx));
+        Assertions.assertEquals(0, cache.getCache().getHitCount());
+    }
+
+
+    /**
+     * Tests that errors not caused by the SD content, such as an invalid PDF memory policy, are not cached
+     */
+    @Test
+    void testEnvironmentalErrorNotCached() throws Exception {
+        var cache = new ValidationVerdictCache(10, Duration.ZERO);
+        var validationService = new CachingSignersDocumentValidationService(new PdfValidationService(), cache);
+
+        TransformationContext invalidCtx = prepareTransformationContext("/EmptyPage.pdf", DocumentFormat.PDF, SignatureFormat.PAdES);
+        invalidCtx.getTransformationProperties().setProperty(PdfMemoryPolicy.KEY_MODE, "in-the-cloud");
+        Assertions.assertThrows(TransformationException.class, () -> validationService.validate(invalidCtx));
+        Assertions.assertEquals(0, cache.getCache().size());
+
+        validationService.validate(prepareTransformationContext("/EmptyPage.pdf", DocumentFormat.PDF, SignatureFormat.PAdES));
+        Assertions.assertEquals(0, cache.getCache().getHitCount());
+        Assertions.assertEquals(1, cache.getCache().size());
+    }
+
+
+    /**
+     * Tests that a failed validation is cached, and re-thrown for a new context with the same SD
+     */
+    @Test
+    void testCachedFailedVerdict() throws Exception {
+        SignersDocumentValidationService validationService = ServiceLoaderFactory.getSignersDocumentValidationService(DocumentFormat.PDF);
+        var cache = ValidationVerdictCache.getInstance().getCache();
+
+        var e1 = Assertions.assertThrows(ValidationException.class, () -> validationService.validate(
+            prepareTransformationContext("/whitelist-error.pdf", DocumentFormat.PDF, SignatureFormat.PAdES)));
+        long hits = cache.getHitCount();
+
+        TransformationContext ctx = prepareTransformationContext("/whitelist-error.pdf", DocumentFormat.PDF, SignatureFormat.PAdES);
+        var e2 = Assertions.assertThrows(ValidationException.class, () -> validationService.validate(ctx));
+
+        Assertions.assertEquals(hits + 1, cache.getHitCount());
+        Assertions.assertEquals(ErrorCode.SDK010, e2.getErrorCode());
+        Assertions.assertEquals(e1.getMessage(), e2.getMessage());
+        Assertions.assertSame(ctx, e2.getCtx());
+    }
+
+
+    /**
+     * Tests that plain text validation is not cached
+     */
+    @Test
+    void testNonCacheableService() throws Exception {
+        Assertions.assertFalse(ServiceLoaderFactory.getSignersDocumentValidationService(DocumentFormat.TEXT)
+            instanceof CachingSignersDocumentValidationService);
+    }
+}
@@ -7,14 +7,20 @@ import dk.gov.nemlogin.signing.AbstractSigningTest;
 import dk.gov.nemlogin.signing.dto.SigningPayloadDTO;
 import dk.gov.nemlogin.signing.exceptions.ErrorCode;
 import dk.gov.nemlogin.signing.exceptions.NemLogInException;
+import dk.gov.nemlogin.signing.exceptions.TransformationException;
 import dk.gov.nemlogin.signing.exceptions.ValidationException;
 import dk.gov.nemlogin.signing.format.SignatureFormat;
 import dk.gov.nemlogin.signing.format.DocumentFormat;
 import dk.gov.nemlogin.signing.model.FlowType;
+import dk.gov.nemlogin.signing.model.PdfMemoryPolicy;
 import dk.gov.nemlogin.signing.model.SignatureParameters;
 import dk.gov.nemlogin.signing.model.SignersDocument;
+import dk.gov.nemlogin.signing.model.SigningPayload;
+import dk.gov.nemlogin.signing.pades.attach.PdfSourceAttachmentService;
+import dk.gov.nemlogin.signing.pades.util.PdfDocumentSession;
 import dk.gov.nemlogin.signing.service.SigningPayloadService;
 import dk.gov.nemlogin.signing.service.TransformationContext;
+import org.apache.pdfbox.pdmodel.PDDocument;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.MethodOrderer;
 import org.junit.jupiter.api.Order;
@@ -31,6 +37,7 @@ class PdfSigningPayloadTest extends AbstractSigningTest {
 
     public static final String PDF_PATH = "/EmptyPage.pdf";
     public static final String SIGNED_PDF_PATH = "/EmptyPage-signed.pdf";
+    public static final String XML_PATH = "/breakfast.xml";
 
     private final SigningPayloadService signingPayloadService = new SigningPayloadService();
 
@@ -70,6 +77,67 @@ class PdfSigningPayloadTest extends AbstractSigningTest {
             () -> signingPayloadService.produceSigningPayloadDTO(ctx));
     }
 
+    /**
+     * Tests a full transformation of XML SD -> PDF DTBS, where the source files are attached and the PDF is
+     * pre-signed using a single PDF document session.
+     */
+    @Test
+    void testSingleSessionSigningPayloadService() throws Exception {
+        TransformationContext ctx = prepareTransformationContext(
+            XML_PATH,
+            DocumentFormat.XML,
+            SignatureFormat.PAdES);
+        ctx.getTransformationProperties().setProperty(PdfDocumentSession.KEY_SINGLE_SESSION, "true");
+
+        SigningPayload result = signingPayloadService.produceSigningPayload(ctx);
+
+        // Verify that the DTBS contains both the signature dictionary and the attachments
+        try (PDDocument pdDocument = PDDocument.load(result.getDtbs().getData())) {
+            Assertions.assertEquals(1, pdDocument.getSignatureDictionaries().size());
+            var embeddedFiles = pdDocument.getDocumentCatalog().getNames().getEmbeddedFiles().getNames();
+            Assertions.assertTrue(embeddedFiles.containsKey(PdfSourceAttachmentService.ATTACHMENT_XML_NAME));
+            Assertions.assertTrue(embeddedFiles.containsKey(PdfSourceAttachmentService.ATTACHMENT_XSL_NAME));
+        }
+    }
+
+
+    /**
+     * Tests a full transformation of XML SD -> PDF DTBS, where all PDF documents are buffered in temporary files
+     */
+    @Test
+    void testTempFileSigningPayloadService() throws Exception {
+        TransformationContext ctx = prepareTransformationContext(
+            XML_PATH,
+            DocumentFormat.XML,
+            SignatureFormat.PAdES);
+        ctx.getTransformationProperties().setProperty(PdfMemoryPolicy.KEY_MODE, "temp-file");
+
+        SigningPayload result = signingPayloadService.produceSigningPayload(ctx);
+
+        try (PDDocument pdDocument = PDDocument.load(result.getDtbs().getData())) {
+            Assertions.assertEquals(1, pdDocument.getSignatureDictionaries().size());
+        }
+    }
+
+
+    /**
+     * Tests that an invalid PDF memory policy transformation property fails the transformation with SDK007
+     */
+    @Test
+    void testInvalidPdfMemoryPolicy() throws Exception {
+        TransformationContext ctx = prepareTransformationContext(
+            XML_PATH,
+            DocumentFormat.XML,
+            SignatureFormat.PAdES);
+        ctx.getTransformationProperties().setProperty(PdfMemoryPolicy.KEY_MODE, "in-the-cloud");
+
+        var e = Assertions.assertThrows(TransformationException.class, () -> signingPayloadService.produceSigningPayload(ctx));
+        Assertions.assertEquals(ErrorCode.SDK007, e.getErrorCode());
+        Assertions.assertSame(ctx, e.getCtx());
+        Assertions.assertThrows(TransformationException.class, () -> PdfMemoryPolicy.of(ctx));
+    }
+
+
     /**
      * Test sanity check of missing transformation context
      */
@@ -5,11 +5,21 @@ import dk.gov.nemlogin.signing.exceptions.NemLogInException;
 import dk.gov.nemlogin.signing.exceptions.ValidationException;
 import dk.gov.nemlogin.signing.format.SignatureFormat;
 import dk.gov.nemlogin.signing.format.DocumentFormat;
+import dk.gov.nemlogin.signing.pdf.validation.PdfFontValidator;
+import dk.gov.nemlogin.signing.pdf.validation.PdfLimitExceededException;
+import dk.gov.nemlogin.signing.pdf.validation.PdfStructureValidator;
+import dk.gov.nemlogin.signing.pdf.validation.PdfValidationLimits;
+import dk.gov.nemlogin.signing.pdf.validation.PdfValidationResult;
+import dk.gov.nemlogin.signing.pdf.validation.PdfValidationService;
 import dk.gov.nemlogin.signing.service.SigningPayloadService;
 import dk.gov.nemlogin.signing.service.TransformationContext;
+import org.apache.pdfbox.cos.COSDocument;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Test generating a signing payload.
  */
@@ -37,4 +47,67 @@ class PdfValidationTest extends AbstractSigningTest {
         }
         Assertions.fail("Should throw ValidationException " + PDF_PATH);
     }
+
+
+    /**
+     * Tests that the single-pass validation finds the same violations as the legacy whitelist and font validation,
+     * both when validating sequentially, and when validating in parallel with the objects split into many tasks
+     */
+    @Test
+    void testParallelStructureValidation() throws Exception {
+        TransformationContext ctx = prepareTransformationContext(
+            PDF_PATH,
+            DocumentFormat.PDF,
+            SignatureFormat.PAdES);
+
+        var validationService = new PdfValidationService(PdfValidationLimits.UNLIMITED);
+        try (COSDocument pdf = validationService.parsePdf(ctx)) {
+            List<PdfValidationResult> legacy = new ArrayList<>(validationService.validateAgainstWhitelist(pdf));
+            legacy.addAll(PdfFontValidator.validateFonts(pdf));
+
+            List<PdfValidationResult> sequential = new PdfStructureValidator(Integer.MAX_VALUE, PdfValidationLimits.UNLIMITED)
+                .validate(pdf);
+            // Split the objects into tasks of 1-2 objects each
+            Assertions.assertTrue(pdf.getObjects().size() > 2);
+            List<PdfValidationResult> split = new PdfStructureValidator(1, 1, PdfValidationLimits.UNLIMITED)
+                .validate(pdf);
+
+            Assertions.assertFalse(legacy.isEmpty());
+            var expected = PdfValidationResult.toString(legacy, true, Integer.MAX_VALUE);
+            Assertions.assertEquals(expected, PdfValidationResult.toString(sequential, true, Integer.MAX_VALUE));
+            Assertions.assertEquals(expected, PdfValidationResult.toString(split, true, Integer.MAX_VALUE));
+            Assertions.assertEquals(legacy.size(), split.size());
+        }
+    }
+
+
+    /**
+     * Tests that the fail-fast mode stops upon the first violation, and that the limits are enforced
+     */
+    @Test
+    void testValidationLimits() throws Exception {
+        TransformationContext ctx = prepareTransformationContext(
+            PDF_PATH,
+            DocumentFormat.PDF,
+            SignatureFormat.PAdES);
+
+        int objectCount;
+        try (COSDocument pdf = new PdfValidationService(PdfValidationLimits.UNLIMITED).parsePdf(ctx)) {
+            objectCount = pdf.getObjects().size();
+            var failFast = new PdfValidationLimits(true, 0, 0);
+            Assertions.assertEquals(1, new PdfStructureValidator(Integer.MAX_VALUE, failFast).validate(pdf).size());
+
+            var maxDepth = new PdfValidationLimits(false, 0, 1);
+            var validator = new PdfStructureValidator(Integer.MAX_VALUE, maxDepth);
+            Assertions.assertThrows(PdfLimitExceededException.class, () -> validator.validate(pdf));
+        }
+
+        var maxObjects = new PdfValidationService(new PdfValidationLimits(false, 1, 0));
+        Assertions.assertThrows(ValidationException.class, () -> maxObjects.parsePdf(ctx));
+
+        // Objects in object streams must only be counted once
+        try (COSDocument pdf = new PdfValidationService(new PdfValidationLimits(false, objectCount, 0)).parsePdf(ctx)) {
+            Assertions.assertEquals(objectCount, pdf.getObjects().size());
+        }
+    }
 }
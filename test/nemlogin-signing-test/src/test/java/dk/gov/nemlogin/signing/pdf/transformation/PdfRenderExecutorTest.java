@@ -0,0 +1,136 @@
+package dk.gov.nemlogin.signing.pdf.transformation;
+
+import dk.gov.nemlogin.signing.exceptions.TransformationException;
+import dk.gov.nemlogin.signing.pdf.PdfRenderExecutor;
+import dk.gov.nemlogin.signing.pdf.PdfRenderExecutor.Policy;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the bounded executor used for rendering PDFs
+ */
+class PdfRenderExecutorTest {
+
+    /**
+     * Tests that renders are rejected when the executor is saturated using the "reject" policy
+     */
+    @Test
+    void testRejectPolicy() throws Exception {
+        try (var executor = new PdfRenderExecutor(1, 0, Policy.REJECT, 0L)) {
+            var started = new CountDownLatch(1);
+            var release = new CountDownLatch(1);
+            var blocked = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return executor.render(null, () -> {
+                        started.countDown();
+                        release.await();
+                        return new byte[] { 1 };
+                    });
+                } catch (TransformationException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            Assertions.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            Assertions.assertThrows(TransformationException.class, () -> executor.render(null, () -> new byte[0]));
+            Assertions.assertEquals(1, executor.getRejectedCount());
+
+            release.countDown();
+            Assertions.assertArrayEquals(new byte[] { 1 }, blocked.get(10, TimeUnit.SECONDS));
+            Assertions.assertArrayEquals(new byte[] { 2 }, executor.render(null, () -> new byte[] { 2 }));
+            Assertions.assertEquals(2, executor.getCompletedCount());
+        }
+    }
+
+
+    /**
+     * Tests that renders wait for a worker using the "wait" policy
+     */
+    @Test
+    void testWaitPolicy() throws Exception {
+        try (var executor = new PdfRenderExecutor(1, 0, Policy.WAIT, 10_000L)) {
+            var renders = new CompletableFuture<?>[4];
+            for (var x = 0; x < renders.length; x++) {
+                renders[x] = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return executor.render(null, () -> {
+                            Thread.sleep(20);
+                            return new byte[0];
+                        });
+                    } catch (TransformationException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+            }
+            CompletableFuture.allOf(renders).get(10, TimeUnit.SECONDS);
+            Assertions.assertEquals(0, executor.getRejectedCount());
+            Assertions.assertEquals(renders.length, executor.getCompletedCount());
+        }
+    }
+
+
+    /**
+     * Tests that the slot of an interrupted render is held until the render has actually stopped running
+     */
+    @Test
+    void testInterruptedRender() throws Exception {
+        try (var executor = new PdfRenderExecutor(1, 0, Policy.REJECT, 0L)) {
+            var started = new CountDownLatch(1);
+            var release = new CountDownLatch(1);
+            var caller = new CompletableFuture<Throwable>();
+            var callerThread = new Thread(() -> {
+                try {
+                    executor.render(null, () -> {
+                        started.countDown();
+                        awaitUninterruptibly(release);
+                        return new byte[0];
+                    });
+                    caller.complete(null);
+                } catch (Throwable e) {
+                    caller.complete(e);
+                }
+            });
+            callerThread.start();
+            Assertions.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            callerThread.interrupt();
+            Assertions.assertTrue(caller.get(10, TimeUnit.SECONDS) instanceof TransformationException);
+
+            // The interrupted render is still running, so the slot must not have been released
+            var rejected = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return executor.render(null, () -> new byte[0]);
+                } catch (TransformationException e) {
+                    return null;
+                }
+            });
+            Assertions.assertNull(rejected.get(10, TimeUnit.SECONDS));
+            Assertions.assertEquals(1, executor.getRejectedCount());
+
+            // A completed render has always released its slot
+            release.countDown();
+            long deadline = System.currentTimeMillis() + 10_000L;
+            while (executor.getCompletedCount() < 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assertions.assertArrayEquals(new byte[] { 1 }, executor.render(null, () -> new byte[] { 1 }));
+        }
+    }
+
+
+    /** Awaits the latch, ignoring interrupts **/
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        while (true) {
+            try {
+                latch.await();
+                return;
+            } catch (InterruptedException e) {
+                // Ignore, as a render not responding to interrupts
+            }
+        }
+    }
+}
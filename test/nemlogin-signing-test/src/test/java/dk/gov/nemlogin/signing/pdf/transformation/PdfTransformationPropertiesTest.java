@@ -1,6 +1,8 @@
 package dk.gov.nemlogin.signing.pdf.transformation;
 
 import dk.gov.nemlogin.signing.exceptions.NemLogInException;
+import dk.gov.nemlogin.signing.pdf.FontRegistry;
+import dk.gov.nemlogin.signing.pdf.RenderProfile;
 import dk.gov.nemlogin.signing.service.impl.Abstract2PdfFormatTransformationService;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.pdmodel.PDDocument;
@@ -82,6 +84,52 @@ class PdfTransformationPropertiesTest {
     }
 
 
+    /**
+     * Tests that embedded fonts are loaded once and shared between generated PDFs
+     **/
+    @Test
+    void testFontRegistry() throws IOException {
+        var fontRegistry = new FontRegistry(10, null);
+        byte[] font = fontRegistry.getFont("classpath:/Karla-Bold.ttf");
+        Assertions.assertSame(font, fontRegistry.getFont("classpath:/Karla-Bold.ttf"));
+        Assertions.assertEquals(1, fontRegistry.getCache().size());
+        Assertions.assertEquals(14, FontRegistry.getDefaultPdfFontSuppliers().length);
+    }
+
+
+    /**
+     * Tests that the render profile of a set of transformation properties is only created once
+     **/
+    @Test
+    void testRenderProfileCache() throws IOException, NemLogInException {
+        props.setProperty(KEY_PAGE_MARGIN, "17mm");
+        generatePdf(props, "body { font-family: Helvetica; }", "<p>test</p>");
+        long hits = RenderProfile.getCache().getHitCount();
+        long misses = RenderProfile.getCache().getMissCount();
+
+        generatePdf(props, "body { font-family: Helvetica; }", "<p>test</p>");
+        Assertions.assertEquals(hits + 1, RenderProfile.getCache().getHitCount());
+        Assertions.assertEquals(misses, RenderProfile.getCache().getMissCount());
+    }
+
+
+    /**
+     * Tests that distinct sets of transformation properties do not share a render profile,
+     * even if a property value contains a key-value separator
+     **/
+    @Test
+    void testRenderProfileCacheKey() throws IOException, NemLogInException {
+        props.setProperty(KEY_PREFIX + "a", "1, " + KEY_PREFIX + "b=2");
+        generatePdf(props, "body { font-family: Helvetica; }", "<p>test</p>");
+        long misses = RenderProfile.getCache().getMissCount();
+
+        props.setProperty(KEY_PREFIX + "a", "1");
+        props.setProperty(KEY_PREFIX + "b", "2");
+        generatePdf(props, "body { font-family: Helvetica; }", "<p>test</p>");
+        Assertions.assertEquals(misses + 1, RenderProfile.getCache().getMissCount());
+    }
+
+
     /**
      * Tests page size and margin.
      **/
@@ -0,0 +1,203 @@
+package dk.gov.nemlogin.signing.pdf.transformation;
+
+import dk.gov.nemlogin.signing.exceptions.NemLogInException;
+import dk.gov.nemlogin.signing.format.DocumentFormat;
+import dk.gov.nemlogin.signing.format.SignatureFormat;
+import dk.gov.nemlogin.signing.model.SignatureParameters;
+import dk.gov.nemlogin.signing.model.SignersDocument.PlainTextSignersDocument;
+import dk.gov.nemlogin.signing.model.SignersDocumentFile;
+import dk.gov.nemlogin.signing.model.ValidTransformation;
+import dk.gov.nemlogin.signing.pdf.Txt2PdfDirectFormatTransformationService;
+import dk.gov.nemlogin.signing.service.ServiceLoaderFactory;
+import dk.gov.nemlogin.signing.service.TransformationContext;
+import dk.gov.nemlogin.signing.service.impl.Txt2PdfFormatTransformationService;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.xmpbox.xml.DomXmpParser;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static dk.gov.nemlogin.signing.pdf.TransformationPropertiesHandler.*;
+
+/**
+ * Tests laying out plain-text SDs directly in PDF, using the "direct" text engine.
+ * <p>
+ * The properties are documented in the "nemlogin-signing-pdf-generator" module.
+ */
+class TextPdfTransformationTest {
+
+    Properties props;
+
+    @BeforeEach
+    void init() {
+        props = new Properties();
+        props.setProperty(KEY_TEXT_ENGINE, "direct");
+    }
+
+
+    /**
+     * Tests that the direct text engine generates a PDF/A-2b document using the monospace font
+     **/
+    @Test
+    void testDirectTextEngine() throws Exception {
+        try (PDDocument doc = generatePdf(props, "Hello\tWorld\n\nÆblegrød med fløde", true)) {
+            Assertions.assertEquals(1, doc.getNumberOfPages());
+            PDRectangle mediaBox = doc.getPage(0).getMediaBox();
+            Assertions.assertEquals(Math.round(PDRectangle.A4.getWidth()), Math.round(mediaBox.getWidth()));
+            Assertions.assertEquals(Math.round(PDRectangle.A4.getHeight()), Math.round(mediaBox.getHeight()));
+            Assertions.assertEquals(Set.of("Courier"), fontNames(doc));
+
+            String text = new PDFTextStripper().getText(doc);
+            Assertions.assertTrue(text.contains("Hello"));
+            Assertions.assertTrue(text.contains("Æblegrød med fløde"));
+
+            // PDF/A-2b
+            Assertions.assertEquals(1.7f, doc.getVersion());
+            var xmp = new DomXmpParser().parse(doc.getDocumentCatalog().getMetadata().toByteArray());
+            Assertions.assertEquals(2, xmp.getPDFIdentificationSchema().getPart().intValue());
+            Assertions.assertEquals("B", xmp.getPDFIdentificationSchema().getConformance());
+            Assertions.assertEquals(1, doc.getDocumentCatalog().getOutputIntents().size());
+            Assertions.assertEquals("sRGB IEC61966-2.1", doc.getDocumentCatalog().getOutputIntents().get(0).getInfo());
+        }
+    }
+
+
+    /**
+     * Tests that long lines are wrapped, and that new pages are added as the pages fill up
+     **/
+    @Test
+    void testLineWrappingAndPaging() throws Exception {
+        props.setProperty(KEY_PAGE_SIZE, "a5 portrait");
+        StringBuilder sd = new StringBuilder();
+        for (int x = 1; x <= 200; x++) {
+            sd.append("Line ").append(x).append('\n');
+        }
+        sd.append("a".repeat(500));
+
+        try (PDDocument doc = generatePdf(props, sd.toString(), false)) {
+            Assertions.assertTrue(doc.getNumberOfPages() > 1);
+            Assertions.assertEquals(Math.round(PDRectangle.A5.getWidth()), Math.round(doc.getPage(0).getMediaBox().getWidth()));
+            Assertions.assertEquals(Set.of("Helvetica"), fontNames(doc));
+
+            String text = new PDFTextStripper().getText(doc);
+            Assertions.assertTrue(text.contains("Line 1"));
+            Assertions.assertTrue(text.contains("Line 200"));
+            // The long word is broken over multiple lines
+            Assertions.assertEquals(500, text.chars().filter(c -> c == 'a').count());
+            Assertions.assertFalse(text.contains("a".repeat(500)));
+        }
+    }
+
+
+    /**
+     * Tests that plain-text SDs are rendered as HTML when the properties are not supported by the direct text engine
+     **/
+    @Test
+    void testFallbackToHtml() throws Exception {
+        props.setProperty(KEY_PAGE_STYLE, "@page { size: a5 portrait; margin: 10mm; }");
+        try (PDDocument doc = generatePdf(props, "Hello World", false)) {
+            Assertions.assertEquals(Math.round(PDRectangle.A5.getWidth()), Math.round(doc.getPage(0).getMediaBox().getWidth()));
+            Assertions.assertEquals("Hello World", new PDFTextStripper().getText(doc).trim());
+        }
+    }
+
+
+    /**
+     * Tests that plain-text SDs are rendered as HTML, rather than altered, when containing characters
+     * not supported by the font of the direct text engine
+     **/
+    @Test
+    void testUnsupportedCharacterFallbackToHtml() throws Exception {
+        String sd = "Hello Ā World";
+
+        String directText;
+        try (PDDocument doc = generatePdf(props, sd, false)) {
+            directText = new PDFTextStripper().getText(doc);
+        }
+        Assertions.assertTrue(directText.contains("Hello"));
+        Assertions.assertFalse(directText.contains("?"));
+
+        props.setProperty(KEY_TEXT_ENGINE, "html");
+        try (PDDocument doc = generatePdf(props, sd, false)) {
+            Assertions.assertEquals(new PDFTextStripper().getText(doc), directText);
+        }
+    }
+
+
+    /**
+     * Tests that plain-text SDs are written as escaped HTML lines, when rendered as HTML
+     **/
+    @Test
+    void testTextToHtml() throws IOException {
+        Assertions.assertEquals("<html lang=\"da\"><body><pre>a&lt;b<br>c &amp; d<br><br></pre></body></html>",
+            textToHtml("a<b\r\nc & d\n\n", true));
+        Assertions.assertEquals("<html lang=\"da\"><body><div>Æblegrød &gt;<br></div></body></html>",
+            textToHtml("Æblegrød >", false));
+        Assertions.assertEquals("<html lang=\"da\"><body><div></div></body></html>",
+            textToHtml("", false));
+    }
+
+
+    /** Writes the plain text as HTML **/
+    private String textToHtml(String text, boolean useMonoSpaceFont) throws IOException {
+        StringBuilder html = new StringBuilder();
+        Txt2PdfFormatTransformationService.writeHtml(new BufferedReader(new StringReader(text)), useMonoSpaceFont, html);
+        return html.toString();
+    }
+
+
+    /**
+     * Generates a PDF from the plain text using the given transformation properties
+     * @param props the transformation properties
+     * @param text the plain text
+     * @param useMonoSpaceFont whether to use the monospace font
+     * @return the PDF
+     */
+    private PDDocument generatePdf(Properties props, String text, boolean useMonoSpaceFont) throws IOException, NemLogInException {
+        var transformation = ValidTransformation.transformationFor(DocumentFormat.TEXT, SignatureFormat.PAdES);
+        var pdfService = ServiceLoaderFactory.getFormatTransformationService(transformation);
+        Assertions.assertTrue(pdfService instanceof Txt2PdfDirectFormatTransformationService);
+
+        var sdFile = SignersDocumentFile.builder()
+            .setData(text.getBytes(StandardCharsets.UTF_8))
+            .setName("test.txt")
+            .build();
+        var signatureParameters = SignatureParameters.builder()
+            .setValidTransformation(transformation)
+            .build();
+        var ctx = new TransformationContext(
+            new PlainTextSignersDocument(sdFile, useMonoSpaceFont),
+            null,
+            signatureParameters,
+            props);
+
+        pdfService.transform(ctx);
+        return PDDocument.load(ctx.getDataToBeSigned().getData());
+    }
+
+
+    /** Extract the distinct font names from the pdf **/
+    private Set<String> fontNames(PDDocument doc) throws IOException {
+        Set<String> fontNames = new TreeSet<>();
+        for (PDPage page : doc.getPages()) {
+            PDResources res = page.getResources();
+            for (COSName fontName : res.getFontNames()) {
+                fontNames.add(res.getFont(fontName).getName());
+            }
+        }
+        return fontNames;
+    }
+}
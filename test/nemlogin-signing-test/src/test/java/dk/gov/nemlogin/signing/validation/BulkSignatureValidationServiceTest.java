@@ -0,0 +1,231 @@
+package dk.gov.nemlogin.signing.validation;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dk.gov.nemlogin.signing.exceptions.NemLogInException;
+import dk.gov.nemlogin.signing.validation.model.BulkValidationResult;
+import dk.gov.nemlogin.signing.validation.model.SignatureValidationContext;
+import dk.gov.nemlogin.signing.validation.service.BulkSignatureValidationService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Test the {@link BulkSignatureValidationService} against a local stub of the Signature Validation API
+ */
+class BulkSignatureValidationServiceTest {
+
+    private static final String SLOW_DOCUMENT = "slow.pdf";
+    private static final String ERROR_DOCUMENT = "error.pdf";
+
+    private static HttpServer server;
+    private static final AtomicInteger CURRENT_REQUESTS = new AtomicInteger();
+    private static final AtomicInteger MAX_CONCURRENT_REQUESTS = new AtomicInteger();
+    private static final Map<String, AtomicInteger> REQUEST_COUNTS = new ConcurrentHashMap<>();
+    private static final Map<String, String> REQUEST_BODIES = new ConcurrentHashMap<>();
+
+
+    @BeforeAll
+    static void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/validate", BulkSignatureValidationServiceTest::handle);
+        server.setExecutor(java.util.concurrent.Executors.newCachedThreadPool());
+        server.start();
+    }
+
+
+    @AfterAll
+    static void stopServer() {
+        server.stop(0);
+    }
+
+
+    /**
+     * Stub of the Signature Validation API.
+     * Returns a validation report for the uploaded document name, after a short delay.
+     * The first request for the slow document is delayed, and the error document results in a 500 status.
+     */
+    private static void handle(HttpExchange exchange) throws IOException {
+        int current = CURRENT_REQUESTS.incrementAndGet();
+        MAX_CONCURRENT_REQUESTS.accumulateAndGet(current, Math::max);
+        try {
+            var body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            var fileName = body.replaceAll("(?s).*filename=\"([^\"]+)\".*", "$1");
+            REQUEST_BODIES.put(fileName, body);
+            int count = REQUEST_COUNTS.computeIfAbsent(fileName, k -> new AtomicInteger()).incrementAndGet();
+
+            sleep(SLOW_DOCUMENT.equals(fileName) && count == 1 ? 5000 : 50);
+
+            if (ERROR_DOCUMENT.equals(fileName)) {
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+            var json = String.format(
+                "{\"result\":{\"documentName\":\"%s\",\"signaturesCount\":1,\"validSignaturesCount\":1}}",
+                fileName).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, json.length);
+            exchange.getResponseBody().write(json);
+        } finally {
+            CURRENT_REQUESTS.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+
+    /**
+     * Tests that all documents are validated, without exceeding the max number of requests in flight
+     */
+    @Test
+    void testBulkValidation() {
+        MAX_CONCURRENT_REQUESTS.set(0);
+        try (var service = BulkSignatureValidationService.builder().setMaxInFlight(4).build();
+             Stream<BulkValidationResult> results = service.validate(IntStream.range(0, 20)
+                 .mapToObj(i -> context("document-" + i + ".pdf")))) {
+
+            List<BulkValidationResult> resultList = results.collect(Collectors.toList());
+
+            Assertions.assertEquals(20, resultList.size());
+            for (BulkValidationResult result : resultList) {
+                Assertions.assertTrue(result.isSuccess());
+                Assertions.assertEquals(
+                    result.getCtx().getDocumentName(),
+                    result.getReport().getResult().getDocumentName());
+            }
+            Assertions.assertTrue(MAX_CONCURRENT_REQUESTS.get() <= 4);
+        }
+    }
+
+
+    /**
+     * Tests that failing validations are returned with the error
+     */
+    @Test
+    void testFailedValidation() {
+        try (var service = BulkSignatureValidationService.builder().build()) {
+            List<BulkValidationResult> results = service.validate(Stream.of(context(ERROR_DOCUMENT), context("ok.pdf")))
+                .collect(Collectors.toList());
+
+            Assertions.assertEquals(2, results.size());
+            var failed = results.stream().filter(r -> !r.isSuccess()).collect(Collectors.toList());
+            Assertions.assertEquals(1, failed.size());
+            Assertions.assertEquals(ERROR_DOCUMENT, failed.get(0).getCtx().getDocumentName());
+            Assertions.assertTrue(failed.get(0).getError() instanceof IOException);
+            Assertions.assertTrue(failed.get(0).getError().getCause() instanceof NemLogInException);
+        }
+    }
+
+
+    /**
+     * Tests that a slow request is hedged, and that the first response is used
+     */
+    @Test
+    void testHedging() throws Exception {
+        REQUEST_COUNTS.remove(SLOW_DOCUMENT);
+        try (var service = BulkSignatureValidationService.builder().setHedgeDelay(Duration.ofMillis(200)).build()) {
+            long t0 = System.currentTimeMillis();
+            var report = service.validateAsync(context(SLOW_DOCUMENT)).get(10, TimeUnit.SECONDS);
+
+            Assertions.assertEquals(SLOW_DOCUMENT, report.getResult().getDocumentName());
+            Assertions.assertTrue(System.currentTimeMillis() - t0 < 4000);
+            Assertions.assertEquals(2, REQUEST_COUNTS.get(SLOW_DOCUMENT).get());
+        }
+    }
+
+
+    /**
+     * Tests that hedged requests count against the max number of requests in flight
+     */
+    @Test
+    void testHedgingWithinMaxInFlight() throws Exception {
+        REQUEST_COUNTS.remove(SLOW_DOCUMENT);
+        try (var service = BulkSignatureValidationService.builder()
+            .setMaxInFlight(1)
+            .setHedgeDelay(Duration.ofMillis(200))
+            .build()) {
+            var report = service.validateAsync(context(SLOW_DOCUMENT)).get(10, TimeUnit.SECONDS);
+
+            Assertions.assertEquals(SLOW_DOCUMENT, report.getResult().getDocumentName());
+            Assertions.assertEquals(1, REQUEST_COUNTS.get(SLOW_DOCUMENT).get());
+        }
+    }
+
+
+    /**
+     * Tests that a request fails when its deadline is exceeded
+     */
+    @Test
+    void testDeadline() {
+        REQUEST_COUNTS.remove(SLOW_DOCUMENT);
+        try (var service = BulkSignatureValidationService.builder().build()) {
+            var ctx = SignatureValidationContext.builder()
+                .setValidationServiceUrl(validationServiceUrl())
+                .setDocumentName(SLOW_DOCUMENT)
+                .setDocumentData(new byte[] { 1, 2, 3 })
+                .setTimeout(200)
+                .build();
+            var future = service.validateAsync(ctx);
+            var e = Assertions.assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+            Assertions.assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+
+    /**
+     * Tests that a Base64-encoded document source is decoded while streamed into the request
+     */
+    @Test
+    void testStreamedDocument() throws Exception {
+        var data = "Signed document data";
+        var ctx = SignatureValidationContext.builder()
+            .setValidationServiceUrl(validationServiceUrl())
+            .setDocumentName("streamed.pdf")
+            .setBase64DocumentData(Base64.getEncoder().encodeToString(data.getBytes(StandardCharsets.UTF_8)))
+            .build();
+        Assertions.assertEquals(data, new String(ctx.getDocumentData(), StandardCharsets.UTF_8));
+
+        try (var service = BulkSignatureValidationService.builder().build()) {
+            service.validateAsync(ctx).get(10, TimeUnit.SECONDS);
+            Assertions.assertTrue(REQUEST_BODIES.get("streamed.pdf").contains("\r\n\r\n" + data + "\r\n--"));
+        }
+    }
+
+
+    private static SignatureValidationContext context(String documentName) {
+        return SignatureValidationContext.builder()
+            .setValidationServiceUrl(validationServiceUrl())
+            .setDocumentName(documentName)
+            .setDocumentData(new byte[] { 1, 2, 3 })
+            .build();
+    }
+
+
+    private static String validationServiceUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/validate";
+    }
+
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package dk.gov.nemlogin.signing.validation;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import dk.gov.nemlogin.signing.exceptions.NemLogInException;
+import dk.gov.nemlogin.signing.validation.model.SignatureValidationContext;
+import dk.gov.nemlogin.signing.validation.service.SignatureValidationService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Test the pooled HTTP clients of the {@link SignatureValidationService} against local stubs of the
+ * Signature Validation API, served over HTTP and over HTTPS using the self-signed test certificate
+ */
+class SignatureValidationServiceTest {
+
+    private static final String KEYSTORE_PATH = "/TU-Test.p12";
+    private static final char[] KEYSTORE_PASSWORD = "Test1234".toCharArray();
+
+    private static HttpServer server;
+    private static HttpsServer httpsServer;
+    private static final AtomicInteger CURRENT_REQUESTS = new AtomicInteger();
+    private static final AtomicInteger MAX_CONCURRENT_REQUESTS = new AtomicInteger();
+    private static final Set<Integer> CLIENT_PORTS = ConcurrentHashMap.newKeySet();
+
+
+    @BeforeAll
+    static void startServers() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/validate", SignatureValidationServiceTest::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        httpsServer = HttpsServer.create(new InetSocketAddress("localhost", 0), 0);
+        httpsServer.setHttpsConfigurator(new HttpsConfigurator(serverSslContext()));
+        httpsServer.createContext("/validate", SignatureValidationServiceTest::handle);
+        httpsServer.setExecutor(Executors.newCachedThreadPool());
+        httpsServer.start();
+    }
+
+
+    @AfterAll
+    static void stopServers() {
+        server.stop(0);
+        httpsServer.stop(0);
+    }
+
+
+    @BeforeEach
+    void reset() {
+        MAX_CONCURRENT_REQUESTS.set(0);
+        CLIENT_PORTS.clear();
+    }
+
+
+    /**
+     * Stub of the Signature Validation API.
+     * Records the client port of the connection, and returns a validation report after a short delay.
+     */
+    private static void handle(HttpExchange exchange) throws IOException {
+        int current = CURRENT_REQUESTS.incrementAndGet();
+        MAX_CONCURRENT_REQUESTS.accumulateAndGet(current, Math::max);
+        try {
+            CLIENT_PORTS.add(exchange.getRemoteAddress().getPort());
+            var body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            var fileName = body.replaceAll("(?s).*filename=\"([^\"]+)\".*", "$1");
+
+            sleep(100);
+
+            var json = String.format(
+                "{\"result\":{\"documentName\":\"%s\",\"signaturesCount\":1,\"validSignaturesCount\":1}}",
+                fileName).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, json.length);
+            exchange.getResponseBody().write(json);
+        } finally {
+            CURRENT_REQUESTS.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+
+    /**
+     * Tests that sequential validations re-use the same pooled connection
+     */
+    @Test
+    void testPooledConnection() throws Exception {
+        try (var service = new SignatureValidationService()) {
+            for (var x = 0; x < 5; x++) {
+                var report = service.validate(context(validationServiceUrl(), "document-" + x + ".pdf", false));
+                Assertions.assertEquals("document-" + x + ".pdf", report.getResult().getDocumentName());
+            }
+        }
+        Assertions.assertEquals(1, CLIENT_PORTS.size());
+    }
+
+
+    /**
+     * Tests that concurrent validations do not exceed the max number of pooled connections per route
+     */
+    @Test
+    void testMaxConnectionsPerRoute() throws Exception {
+        var executor = Executors.newFixedThreadPool(8);
+        try (var service = SignatureValidationService.builder().setMaxConnectionsPerRoute(2).build()) {
+            var futures = IntStream.range(0, 8)
+                .mapToObj(x -> executor.submit(() ->
+                    service.validate(context(validationServiceUrl(), "document-" + x + ".pdf", false))))
+                .collect(Collectors.toList());
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assertions.assertTrue(MAX_CONCURRENT_REQUESTS.get() <= 2);
+        Assertions.assertTrue(CLIENT_PORTS.size() <= 2);
+    }
+
+
+    /**
+     * Tests that the self-signed certificate is only accepted by the client that ignores SSL validation,
+     * and that the ignore-SSL client also pools its connections
+     */
+    @Test
+    void testIgnoreSslClient() throws Exception {
+        try (var service = new SignatureValidationService()) {
+            var ctx = context(httpsValidationServiceUrl(), "secure.pdf", false);
+            var e = Assertions.assertThrows(IOException.class, () -> service.validate(ctx));
+            Assertions.assertTrue(e.getCause() instanceof NemLogInException);
+
+            for (var x = 0; x < 3; x++) {
+                var report = service.validate(context(httpsValidationServiceUrl(), "secure.pdf", true));
+                Assertions.assertEquals("secure.pdf", report.getResult().getDocumentName());
+            }
+        }
+        Assertions.assertEquals(1, CLIENT_PORTS.size());
+    }
+
+
+    /**
+     * Tests that the service cannot be used once closed, and that closing it twice has no effect
+     */
+    @Test
+    void testClose() throws Exception {
+        var service = new SignatureValidationService();
+        service.validate(context(validationServiceUrl(), "document.pdf", false));
+        service.validate(context(httpsValidationServiceUrl(), "document.pdf", true));
+        service.close();
+        service.close();
+
+        var e = Assertions.assertThrows(IOException.class,
+            () -> service.validate(context(validationServiceUrl(), "document.pdf", false)));
+        Assertions.assertTrue(e.getCause() instanceof NemLogInException);
+        Assertions.assertTrue(e.getCause().getCause() instanceof IllegalStateException);
+    }
+
+
+    /**
+     * Tests that the builder rejects invalid connection pool settings
+     */
+    @Test
+    void testBuilder() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> SignatureValidationService.builder().setMaxConnectionsTotal(0).build());
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> SignatureValidationService.builder().setMaxConnectionsPerRoute(0).build());
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> SignatureValidationService.builder().setKeepAlive(Duration.ofSeconds(-1)).build());
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> SignatureValidationService.builder().setIdleTimeout(null).build());
+    }
+
+
+    /** Returns an SSL context using the self-signed test certificate **/
+    private static SSLContext serverSslContext() throws Exception {
+        var keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = SignatureValidationServiceTest.class.getResourceAsStream(KEYSTORE_PATH)) {
+            keyStore.load(in, KEYSTORE_PASSWORD);
+        }
+        var keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, KEYSTORE_PASSWORD);
+        var sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+        return sslContext;
+    }
+
+
+    private static SignatureValidationContext context(String validationServiceUrl, String documentName, boolean ignoreSsl) {
+        return SignatureValidationContext.builder()
+            .setValidationServiceUrl(validationServiceUrl)
+            .setDocumentName(documentName)
+            .setDocumentData(new byte[] { 1, 2, 3 })
+            .setIgnoreSsl(ignoreSsl)
+            .build();
+    }
+
+
+    private static String validationServiceUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/validate";
+    }
+
+
+    private static String httpsValidationServiceUrl() {
+        return "https://localhost:" + httpsServer.getAddress().getPort() + "/validate";
+    }
+
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}